@@ -0,0 +1,176 @@
+package com.example.btl_chess;
+
+/**
+ * Các bảng bitboard tính sẵn. Ô được đánh số sq = row * 8 + col (a1 = 0, h8 = 63).
+ */
+public final class Bitboards {
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+    public static final long RANK_1 = 0xFFL;
+    public static final long RANK_8 = RANK_1 << 56;
+
+    public static final long[] KNIGHT_ATTACKS = new long[64];
+    public static final long[] KING_ATTACKS = new long[64];
+
+    // Hướng của các tia: N, NE, E, NW tăng chỉ số ô; S, SW, W, SE giảm chỉ số ô
+    private static final int NORTH = 0, NORTH_EAST = 1, EAST = 2, NORTH_WEST = 3;
+    private static final int SOUTH = 4, SOUTH_WEST = 5, WEST = 6, SOUTH_EAST = 7;
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 1}, {1, 0}, {-1, 1}, {0, -1}, {-1, -1}, {-1, 0}, {1, -1}};
+
+    // Tia từ một ô theo từng hướng tới mép bàn cờ, chỉ số dir * 64 + sq
+    private static final long[] RAYS = new long[8 * 64];
+
+    // Ô bị tốt ăn chéo, chỉ số color * 64 + sq
+    private static final long[] PAWN_ATTACKS = new long[2 * 64];
+
+    // Các ô nằm giữa hai ô trên cùng hàng, cột hoặc đường chéo (không tính hai đầu)
+    private static final long[] BETWEEN = new long[64 * 64];
+
+    // Cả đường thẳng đi qua hai ô thẳng hàng (gồm hai đầu và kéo dài tới mép bàn cờ)
+    private static final long[] LINE = new long[64 * 64];
+
+    static {
+        int[][] knightOffsets = {{2, 1}, {2, -1}, {-2, 1}, {-2, -1}, {1, 2}, {1, -2}, {-1, 2}, {-1, -2}};
+        for (int sq = 0; sq < 64; sq++) {
+            int col = col(sq);
+            int row = row(sq);
+            for (int[] offset : knightOffsets) {
+                KNIGHT_ATTACKS[sq] |= bitIfValid(col + offset[0], row + offset[1]);
+            }
+            for (int dc = -1; dc <= 1; dc++) {
+                for (int dr = -1; dr <= 1; dr++) {
+                    if (dc != 0 || dr != 0) {
+                        KING_ATTACKS[sq] |= bitIfValid(col + dc, row + dr);
+                    }
+                }
+            }
+            for (int dir = 0; dir < 8; dir++) {
+                long ray = 0L;
+                for (int c = col + DIRECTIONS[dir][0], r = row + DIRECTIONS[dir][1];
+                     isValid(c, r); c += DIRECTIONS[dir][0], r += DIRECTIONS[dir][1]) {
+                    ray |= bit(square(c, r));
+                }
+                RAYS[dir * 64 + sq] = ray;
+            }
+            PAWN_ATTACKS[sq] = bitIfValid(col - 1, row + 1) | bitIfValid(col + 1, row + 1);
+            PAWN_ATTACKS[64 + sq] = bitIfValid(col - 1, row - 1) | bitIfValid(col + 1, row - 1);
+        }
+
+        for (int from = 0; from < 64; from++) {
+            for (int to = 0; to < 64; to++) {
+                int dc = col(to) - col(from);
+                int dr = row(to) - row(from);
+                if ((dc == 0 && dr == 0) || (dc != 0 && dr != 0 && Math.abs(dc) != Math.abs(dr))) {
+                    continue;
+                }
+                int stepCol = Integer.signum(dc);
+                int stepRow = Integer.signum(dr);
+                long between = 0L;
+                int c = col(from) + stepCol;
+                int r = row(from) + stepRow;
+                while (c != col(to) || r != row(to)) {
+                    between |= bit(square(c, r));
+                    c += stepCol;
+                    r += stepRow;
+                }
+                BETWEEN[from * 64 + to] = between;
+                int dir = direction(stepCol, stepRow);
+                LINE[from * 64 + to] = bit(from) | RAYS[dir * 64 + from] | RAYS[((dir + 4) & 7) * 64 + from];
+            }
+        }
+    }
+
+    private Bitboards() {
+    }
+
+    public static int square(int col, int row) {
+        return row * 8 + col;
+    }
+
+    public static int col(int sq) {
+        return sq & 7;
+    }
+
+    public static int row(int sq) {
+        return sq >>> 3;
+    }
+
+    public static long bit(int sq) {
+        return 1L << sq;
+    }
+
+    public static boolean isValid(int col, int row) {
+        return col >= 0 && col < 8 && row >= 0 && row < 8;
+    }
+
+    public static long between(int from, int to) {
+        return BETWEEN[from * 64 + to];
+    }
+
+    public static long line(int a, int b) {
+        return LINE[a * 64 + b];
+    }
+
+    public static long pawnAttacks(int color, int sq) {
+        return PAWN_ATTACKS[color * 64 + sq];
+    }
+
+    public static long rookAttacks(int sq, long occupied) {
+        return positiveRay(NORTH, sq, occupied) | positiveRay(EAST, sq, occupied)
+                | negativeRay(SOUTH, sq, occupied) | negativeRay(WEST, sq, occupied);
+    }
+
+    public static long bishopAttacks(int sq, long occupied) {
+        return positiveRay(NORTH_EAST, sq, occupied) | positiveRay(NORTH_WEST, sq, occupied)
+                | negativeRay(SOUTH_WEST, sq, occupied) | negativeRay(SOUTH_EAST, sq, occupied);
+    }
+
+    public static long queenAttacks(int sq, long occupied) {
+        return rookAttacks(sq, occupied) | bishopAttacks(sq, occupied);
+    }
+
+    // Các ô bị quân (không phải tốt) ở sq tấn công, tính cả ô có quân chặn đầu tiên trên mỗi tia
+    public static long attacks(int type, int sq, long occupied) {
+        switch (type) {
+            case Piece.KING: return KING_ATTACKS[sq];
+            case Piece.QUEEN: return queenAttacks(sq, occupied);
+            case Piece.BISHOP: return bishopAttacks(sq, occupied);
+            case Piece.ROOK: return rookAttacks(sq, occupied);
+            case Piece.KNIGHT: return KNIGHT_ATTACKS[sq];
+            default: return 0L;
+        }
+    }
+
+    // Đi theo tia tới quân chặn đầu tiên: quân chặn gần nhất là bit thấp nhất
+    private static long positiveRay(int dir, int sq, long occupied) {
+        long ray = RAYS[dir * 64 + sq];
+        long blockers = ray & occupied;
+        if (blockers != 0) {
+            ray ^= RAYS[dir * 64 + Long.numberOfTrailingZeros(blockers)];
+        }
+        return ray;
+    }
+
+    // Với các hướng giảm chỉ số ô, quân chặn gần nhất là bit cao nhất
+    private static long negativeRay(int dir, int sq, long occupied) {
+        long ray = RAYS[dir * 64 + sq];
+        long blockers = ray & occupied;
+        if (blockers != 0) {
+            ray ^= RAYS[dir * 64 + 63 - Long.numberOfLeadingZeros(blockers)];
+        }
+        return ray;
+    }
+
+    private static int direction(int stepCol, int stepRow) {
+        for (int dir = 0; dir < 8; dir++) {
+            if (DIRECTIONS[dir][0] == stepCol && DIRECTIONS[dir][1] == stepRow) {
+                return dir;
+            }
+        }
+        throw new IllegalArgumentException("Not a direction: " + stepCol + "," + stepRow);
+    }
+
+    private static long bitIfValid(int col, int row) {
+        return isValid(col, row) ? bit(square(col, row)) : 0L;
+    }
+}
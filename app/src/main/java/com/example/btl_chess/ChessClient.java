@@ -0,0 +1,254 @@
+package com.example.btl_chess;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Kết nối từ ứng dụng tới ChessServer: một luồng đọc giải mã khung và gọi handler,
+ * các khung gửi đi đi qua một {@link FrameWriter}. Luồng đọc và luồng ghi sống và chết cùng kết nối.
+ *
+ * <p>Client ghi nhớ mã phiên server giao và số thứ tự nước cuối đã nhận. Khi kết nối bị đứt
+ * (không phải do close() hay server chủ động đóng), client tự kết nối lại với thời gian chờ tăng dần
+ * và gửi HELLO nối lại phiên để server chỉ gửi bù các nước bị lỡ. Người xem dùng {@link #watch(int)};
+ * khi kết nối lại họ nhận lại toàn bộ ván qua SYNC. Khi không có gì để gửi (chờ ghép cặp, chờ đối thủ
+ * nghĩ) client gửi PING định kỳ; nếu server vẫn đóng vì im lặng quá lâu ({@link WireProtocol#ERR_IDLE})
+ * thì client nối lại như khi mất kết nối.
+ */
+public class ChessClient {
+    private static final String TAG = "ChessClient";
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int QUEUE_CAPACITY = 256;
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+    private static final int MAX_RECONNECT_ATTEMPTS = 8;
+    private static final long MAX_BACKOFF_MILLIS = 30 * 1000L;
+    // Nhỏ hơn nhiều so với ChessServer.DEFAULT_IDLE_TIMEOUT_MILLIS
+    private static final long KEEPALIVE_MILLIS = 60 * 1000L;
+
+    public interface Listener {
+        // Gọi mỗi lần kết nối thành công, kể cả khi kết nối lại
+        void onConnected(ChessClient client);
+
+        // Kết nối đã dừng hẳn; error là null khi đóng bằng close() hoặc server đóng bình thường
+        void onDisconnected(ChessClient client, IOException error);
+    }
+
+    private final String host;
+    private final int port;
+    private final WireProtocol.Handler handler;
+    private final Listener listener;
+
+    private volatile SocketChannel channel;
+    private volatile FrameWriter writer;
+    private volatile boolean closed;
+    private Thread reader;
+
+    // Chỉ được ghi trên luồng đọc
+    private volatile long session;
+    // Phòng đang xem, -1 khi là người chơi
+    private volatile int watchRoom = -1;
+    private volatile int lastSeq;
+    // Server đã báo ERR_IDLE trong lần kết nối hiện tại
+    private volatile boolean idleKicked;
+    private int failures;
+
+    public ChessClient(String host, int port, WireProtocol.Handler handler, Listener listener) {
+        this.host = host;
+        this.port = port;
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    // Kết nối trên luồng riêng, không chặn luồng gọi
+    public synchronized void connect() {
+        if (reader != null) return;
+        reader = new Thread(this::run, "chess-client");
+        reader.start();
+    }
+
+    // Kết nối như người xem của phòng room, 0 là phòng mới nhất
+    public synchronized void watch(int room) {
+        if (reader != null) return;
+        watchRoom = room;
+        connect();
+    }
+
+    public boolean isConnected() {
+        return writer != null;
+    }
+
+    // Số thứ tự của nước cuối cùng đã nhận từ server
+    public int getLastSeq() {
+        return lastSeq;
+    }
+
+    // frame ở chế độ ghi, có thể chứa nhiều khung liền nhau; trả về false nếu chưa kết nối hoặc hàng đợi đầy
+    public boolean send(ByteBuffer frame) {
+        FrameWriter w = writer;
+        if (w == null) return false;
+        frame.flip();
+        return w.offer(frame);
+    }
+
+    // Gửi nốt các khung đang chờ rồi đóng kết nối, không kết nối lại
+    public void close() {
+        closed = true;
+        FrameWriter w = writer;
+        if (w != null) {
+            w.close(CLOSE_TIMEOUT_MILLIS);
+        }
+        SocketChannel ch = channel;
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException ignored) {
+                // Luồng đọc sẽ tự kết thúc
+            }
+        }
+        Thread t;
+        synchronized (this) {
+            t = reader;
+        }
+        if (t != null) {
+            // Đánh thức luồng đọc nếu đang chờ để kết nối lại
+            t.interrupt();
+        }
+    }
+
+    private void run() {
+        IOException error = null;
+        while (!closed) {
+            try {
+                runSession();
+                error = null;
+                // Server chủ động đóng kết nối: ván đã kết thúc, không nối lại. Riêng khi bị đóng vì
+                // im lặng thì ván vẫn còn, nối lại như mất kết nối
+                if (!idleKicked) break;
+            } catch (IOException e) {
+                if (closed) break;
+                error = e;
+            }
+            // Chỉ kết nối lại khi đã có phiên để nối lại, đang xem, hoặc bị đóng lúc đang chờ ghép cặp
+            if ((session == 0 && watchRoom < 0 && !idleKicked) || ++failures > MAX_RECONNECT_ATTEMPTS) break;
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, 500L << failures);
+            Log.d(TAG, "Connection lost, retrying in " + backoff + " ms");
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        listener.onDisconnected(this, closed ? null : error);
+    }
+
+    // Một lần kết nối, tới khi server đóng hoặc có lỗi
+    private void runSession() throws IOException {
+        try (SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port))) {
+            ch.socket().setTcpNoDelay(true);
+            channel = ch;
+            ByteBuffer ping = ByteBuffer.allocate(WireProtocol.PING_SIZE);
+            WireProtocol.putPing(ping);
+            ping.flip();
+            writer = new FrameWriter(ch, QUEUE_CAPACITY, "chess-client-writer", ping, KEEPALIVE_MILLIS);
+            idleKicked = false;
+            failures = 0;
+            if (watchRoom >= 0) {
+                ByteBuffer watch = ByteBuffer.allocate(WireProtocol.WATCH_SIZE);
+                WireProtocol.putWatch(watch, watchRoom);
+                send(watch);
+            } else if (session != 0) {
+                ByteBuffer hello = ByteBuffer.allocate(WireProtocol.RESUME_SIZE);
+                WireProtocol.putResume(hello, session, lastSeq);
+                send(hello);
+            } else {
+                ByteBuffer hello = ByteBuffer.allocate(WireProtocol.HELLO_SIZE);
+                WireProtocol.putHello(hello);
+                send(hello);
+            }
+            listener.onConnected(this);
+
+            ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            while (!closed && ch.read(in) >= 0) {
+                in.flip();
+                WireProtocol.decode(in, tracker);
+                in.compact();
+            }
+        } finally {
+            FrameWriter w = writer;
+            writer = null;
+            channel = null;
+            if (w != null) {
+                w.close(CLOSE_TIMEOUT_MILLIS);
+            }
+        }
+    }
+
+    // Ghi nhận phiên và số thứ tự nước rồi chuyển tiếp mọi khung cho handler của ứng dụng
+    private final WireProtocol.Handler tracker = new WireProtocol.Handler() {
+        @Override
+        public void onHello(int version, long s, int seq) throws ProtocolException {
+            handler.onHello(version, s, seq);
+        }
+
+        @Override
+        public void onMove(int seq, int move) throws ProtocolException {
+            if (seq == lastSeq + 1) {
+                lastSeq = seq;
+            }
+            handler.onMove(seq, move);
+        }
+
+        @Override
+        public void onClock(long whiteMillis, long blackMillis) throws ProtocolException {
+            handler.onClock(whiteMillis, blackMillis);
+        }
+
+        @Override
+        public void onResign(int color) throws ProtocolException {
+            handler.onResign(color);
+        }
+
+        @Override
+        public void onSync(int color, ByteBuffer buffer, int offset, int count) throws ProtocolException {
+            lastSeq = count;
+            handler.onSync(color, buffer, offset, count);
+        }
+
+        @Override
+        public void onAck(int ply) throws ProtocolException {
+            handler.onAck(ply);
+        }
+
+        @Override
+        public void onError(int code, int ply) throws ProtocolException {
+            if (code == WireProtocol.ERR_IDLE) {
+                idleKicked = true;
+            } else if (code == WireProtocol.ERR_NO_SESSION) {
+                // Phiên cũ đã hết hạn, server sẽ ghép ván mới
+                session = 0;
+                lastSeq = 0;
+            }
+            handler.onError(code, ply);
+        }
+
+        @Override
+        public void onSession(long s, int color) throws ProtocolException {
+            if (s != session) {
+                session = s;
+                lastSeq = 0;
+            }
+            handler.onSession(s, color);
+        }
+
+        @Override
+        public void onSnapshot(int seq, int color, ByteBuffer buffer, int offset) throws ProtocolException {
+            lastSeq = seq;
+            handler.onSnapshot(seq, color, buffer, offset);
+        }
+    };
+}
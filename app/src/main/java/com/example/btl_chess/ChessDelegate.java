@@ -2,5 +2,11 @@ package com.example.btl_chess;
 
 public interface ChessDelegate {
     ChessPiece pieceAt(Square square);
+    // Thế cờ hiện tại để vẽ, không được sửa
+    Position position();
+    // Tính gợi ý cho quân tại from ngoài luồng UI, kết quả gửi về callback trên luồng UI
+    void requestHints(Square from, GameController.HintCallback callback);
+    void cancelHints();
+    // Có thể trả về ngay; nước đi được kiểm tra và áp dụng ngoài luồng UI
     void movePiece(Square from, Square to);
 }
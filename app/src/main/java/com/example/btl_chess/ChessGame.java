@@ -1,244 +1,203 @@
 package com.example.btl_chess;
 import java.util.HashSet;
 import java.util.Set;
-import static java.lang.Math.abs;
 
+/**
+ * Một ván cờ. Mọi thay đổi đi qua các phương thức synchronized trên thể hiện này,
+ * sau mỗi thay đổi một bản sao bất biến của bàn cờ được công bố qua {@link #snapshot()}
+ * nên các luồng đọc (UI, mạng) không cần khoá.
+ */
 public class ChessGame {
-    private static Set<ChessPiece> piecesBox;
-    private static Set<Square> possibleMoves = new HashSet<>();
+    private final Position position = new Position();
+    // Thế cờ lúc bắt đầu ván, để dựng lại lịch sử nước đi (ví dụ khi ghi PGN)
+    private final Position start = new Position();
+    private volatile Position snapshot;
 
     public ChessGame() {
-        piecesBox = new HashSet<>();
         reset();
     }
-    public static Set<Square> getPossibleMoves(Square from) {
-        possibleMoves.clear();
-        ChessPiece piece = pieceAt(from);
 
-        if (piece == null) return possibleMoves;
+    // Bản sao chỉ đọc của bàn cờ tại thời điểm gọi, không được sửa
+    public Position snapshot() {
+        return snapshot;
+    }
 
-        // Kiểm tra tất cả các ô trên bàn cờ
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                Square to = new Square(col, row);
-                if (canMove(from, to)) {
-                    possibleMoves.add(to);
-                }
-            }
-        }
+    private void publish() {
+        snapshot = position.copy();
+    }
 
+    public Set<Square> getPossibleMoves(Square from) {
+        Set<Square> possibleMoves = new HashSet<>();
+        if (!from.isValid()) return possibleMoves;
+
+        long targets = MoveGenerator.legalTargets(snapshot, from.getIndex());
+        while (targets != 0) {
+            possibleMoves.add(Square.of(Long.numberOfTrailingZeros(targets)));
+            targets &= targets - 1;
+        }
         return possibleMoves;
     }
 
-    // Phương thức kiểm tra xem một ô có phải là nước đi hợp lệ không
-    public static boolean isValidMove(Square square) {
-        return possibleMoves.contains(square);
+    public synchronized void clear() {
+        position.clear();
+        restart();
     }
 
-    // Phương thức xóa gợi ý
-    public static void clearPossibleMoves() {
-        possibleMoves.clear();
+    public synchronized void addPiece(ChessPiece piece) {
+        position.put(piece.getPiece(), Bitboards.square(piece.getCol(), piece.getRow()));
+        restart();
     }
 
-    public static void clear() {
-        piecesBox.clear();
+    // Thế cờ hiện tại trở thành thế bắt đầu ván. Lịch sử nước đi cũ không còn khớp với bàn cờ đã sửa
+    // nên bị bỏ (copyFrom đặt lại ply), để moves() và takeback() tính từ thế bắt đầu mới
+    private void restart() {
+        start.copyFrom(position);
+        position.copyFrom(start);
+        publish();
     }
 
-    public static void addPiece(ChessPiece piece) {
-        piecesBox.add(piece);
+    // Bản sao thế cờ lúc bắt đầu ván. Gọi trong synchronized (game) cùng moves() để hai kết quả khớp nhau
+    public synchronized Position startPosition() {
+        return start.copy();
     }
 
-    private static boolean canKnightMove(Square from, Square to) {
-        return (abs(from.getCol() - to.getCol()) == 2 && abs(from.getRow() - to.getRow()) == 1) ||
-                (abs(from.getCol() - to.getCol()) == 1 && abs(from.getRow() - to.getRow()) == 2);
+    // Các nước đã đi từ thế bắt đầu ván, theo thứ tự
+    public synchronized int[] moves() {
+        int[] moves = new int[position.ply()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = position.moveAt(i);
+        }
+        return moves;
     }
 
-    private static boolean canRookMove(Square from, Square to) {
-        return (from.getCol() == to.getCol() && isClearVerticallyBetween(from, to)) ||
-                (from.getRow() == to.getRow() && isClearHorizontallyBetween(from, to));
+    public boolean canMove(Square from, Square to) {
+        if (!from.isValid() || !to.isValid()) return false;
+        return canMove(snapshot, from.getIndex(), to.getIndex());
     }
 
-    private static boolean isClearVerticallyBetween(Square from, Square to) {
-        if (from.getCol() != to.getCol()) return false;
-        int gap = abs(from.getRow() - to.getRow()) - 1;
-        if (gap == 0) return true;
-
-        for (int i = 1; i <= gap; i++) {
-            int nextRow = to.getRow() > from.getRow() ? from.getRow() + i : from.getRow() - i;
-            if (pieceAt(new Square(from.getCol(), nextRow)) != null) {
-                return false;
-            }
-        }
-        return true;
+    private static boolean canMove(Position p, int from, int to) {
+        return (MoveGenerator.legalTargets(p, from) & Bitboards.bit(to)) != 0;
     }
 
-    private static boolean isClearHorizontallyBetween(Square from, Square to) {
-        if (from.getRow() != to.getRow()) return false;
-        int gap = abs(from.getCol() - to.getCol()) - 1;
-        if (gap == 0) return true;
+    // Trả về true nếu nước đi hợp lệ và đã được thực hiện; tốt tới hàng cuối được phong hậu
+    public boolean movePiece(Square from, Square to) {
+        return movePiece(from, to, Chessman.QUEEN);
+    }
 
-        for (int i = 1; i <= gap; i++) {
-            int nextCol = to.getCol() > from.getCol() ? from.getCol() + i : from.getCol() - i;
-            if (pieceAt(new Square(nextCol, from.getRow())) != null) {
-                return false;
-            }
-        }
+    public synchronized boolean movePiece(Square from, Square to, Chessman promotion) {
+        if (!from.isValid() || !to.isValid()) return false;
+        int move = MoveGenerator.findLegalMove(position, from.getIndex(), to.getIndex(), promotion.ordinal());
+        if (move == Move.NONE) return false;
+        position.makeMove(move);
+        publish();
         return true;
     }
 
-    private static boolean isClearDiagonally(Square from, Square to) {
-        if (abs(from.getCol() - to.getCol()) != abs(from.getRow() - to.getRow())) return false;
-        int gap = abs(from.getCol() - to.getCol()) - 1;
+    // Nước đi dạng Move từ from tới to ở thế cờ hiện tại (phong hậu), hoặc Move.NONE nếu không hợp lệ
+    public int findMove(Square from, Square to) {
+        if (!from.isValid() || !to.isValid()) return Move.NONE;
+        return MoveGenerator.findLegalMove(snapshot, from.getIndex(), to.getIndex(), Piece.QUEEN);
+    }
 
-        for (int i = 1; i <= gap; i++) {
-            int nextCol = to.getCol() > from.getCol() ? from.getCol() + i : from.getCol() - i;
-            int nextRow = to.getRow() > from.getRow() ? from.getRow() + i : from.getRow() - i;
-            if (pieceAt(nextCol, nextRow) != null) {
-                return false;
-            }
+    // Thực hiện nước đi dạng Move (ví dụ do máy tìm ra) nếu nó hợp lệ ở thế cờ hiện tại
+    public synchronized boolean makeMove(int move) {
+        int promotion = Move.isPromotion(move) ? Move.promotionType(move) : Piece.QUEEN;
+        if (move == Move.NONE
+                || MoveGenerator.findLegalMove(position, Move.from(move), Move.to(move), promotion) != move) {
+            return false;
         }
+        position.makeMove(move);
+        publish();
         return true;
     }
 
-    private static boolean canBishopMove(Square from, Square to) {
-        return abs(from.getCol() - to.getCol()) == abs(from.getRow() - to.getRow()) &&
-                isClearDiagonally(from, to);
+    // Thay cả ván bằng thế cờ p (không có lịch sử nước đi), ví dụ ảnh chụp nhận từ server
+    public synchronized void setPosition(Position p) {
+        position.copyFrom(p);
+        restart();
     }
 
-    private static boolean canQueenMove(Square from, Square to) {
-        return canRookMove(from, to) || canBishopMove(from, to);
+    // Hoàn tác nước đi gần nhất; trả về false nếu chưa có nước nào
+    public synchronized boolean takeback() {
+        if (position.ply() == 0) return false;
+        position.unmakeMove();
+        publish();
+        return true;
     }
 
-    private static boolean canKingMove(Square from, Square to) {
-        int deltaCol = abs(from.getCol() - to.getCol());
-        int deltaRow = abs(from.getRow() - to.getRow());
-
-        // Vua chỉ có thể di chuyển 1 ô theo mọi hướng
-        return deltaCol <= 1 && deltaRow <= 1 && (deltaCol + deltaRow > 0);
+    // Số nước đã đi kể từ thế xuất phát hoặc từ lần reset gần nhất
+    public synchronized int ply() {
+        return position.ply();
     }
 
-    private static boolean canPawnMove(Square from, Square to) {
-        ChessPiece movingPiece = pieceAt(from);
-        if (movingPiece == null) return false;
-
-        int direction = (movingPiece.getPlayer() == Player.WHITE) ? 1 : -1;
-        int startRow = (movingPiece.getPlayer() == Player.WHITE) ? 1 : 6;
-
-        // Di chuyển thẳng
-        if (from.getCol() == to.getCol()) {
-            // Di chuyển 1 ô
-            if (to.getRow() == from.getRow() + direction) {
-                return pieceAt(to) == null;
-            }
-            // Di chuyển 2 ô từ vị trí khởi đầu
-            if (from.getRow() == startRow && to.getRow() == from.getRow() + 2 * direction) {
-                Square intermediate = new Square(from.getCol(), from.getRow() + direction);
-                return pieceAt(to) == null && pieceAt(intermediate) == null;
-            }
-        }
-        // Ăn chéo
-        else if (abs(from.getCol() - to.getCol()) == 1 && to.getRow() == from.getRow() + direction) {
-            ChessPiece targetPiece = pieceAt(to);
-            return targetPiece != null && targetPiece.getPlayer() != movingPiece.getPlayer();
-        }
-        return false;
+    // Khoá Zobrist 64 bit của thế cờ hiện tại
+    public long positionKey() {
+        return snapshot.key();
     }
 
-
-    public static boolean canMove(Square from, Square to) {
-        if (from.getCol() == to.getCol() && from.getRow() == to.getRow()) {
-            return false;
-        }
-
-        ChessPiece movingPiece = pieceAt(from);
-        ChessPiece targetPiece = pieceAt(to);
-
-        // Kiểm tra có quân cờ để di chuyển không
-        if (movingPiece == null) return false;
-
-        // Kiểm tra nếu ô đích có quân cùng màu
-        if (targetPiece != null && targetPiece.getPlayer() == movingPiece.getPlayer()) {
-            return false;
-        }
-
-        switch (movingPiece.getChessman()) {
-            case KNIGHT: return canKnightMove(from, to);
-            case ROOK: return canRookMove(from, to);
-            case BISHOP: return canBishopMove(from, to);
-            case QUEEN: return canQueenMove(from, to);
-            case KING: return canKingMove(from, to);
-            case PAWN: return canPawnMove(from, to);
-            default: return false;
-        }
+    // Lịch sử nước đi chỉ có ở bàn cờ gốc, không có trong các bản snapshot
+    public synchronized boolean isThreefoldRepetition() {
+        return position.repetitionCount() >= 2;
     }
 
-    public static void movePiece(Square from, Square to) {
-        if (canMove(from, to)) {
-            movePiece(from.getCol(), from.getRow(), to.getCol(), to.getRow());
-        }
+    // 50 nước (100 nửa nước) liên tiếp không ăn quân, không đi tốt
+    public boolean isFiftyMoveRule() {
+        return snapshot.halfmoveClock() >= 100;
     }
 
-    private static void movePiece(int fromCol, int fromRow, int toCol, int toRow) {
-        if (fromCol == toCol && fromRow == toRow) return;
-        ChessPiece movingPiece = pieceAt(fromCol, fromRow);
-        if (movingPiece == null) return;
-
-        ChessPiece targetPiece = pieceAt(toCol, toRow);
-        if (targetPiece != null) {
-            if (targetPiece.getPlayer() == movingPiece.getPlayer()) {
-                return;
-            }
-            piecesBox.remove(targetPiece);
-        }
+    public Player getTurn() {
+        return snapshot.sideToMove() == Piece.WHITE ? Player.WHITE : Player.BLACK;
+    }
 
-        piecesBox.remove(movingPiece);
-        addPiece(new ChessPiece(toCol, toRow, movingPiece.getPlayer(),
-                movingPiece.getChessman(), movingPiece.getResID()));
+    public boolean isCheck() {
+        return snapshot.inCheck();
     }
 
-    public static void reset() {
-        clear();
-        for (int i = 0; i < 2; i++) {
-            addPiece(new ChessPiece(0 + i * 7, 0, Player.WHITE, Chessman.ROOK, R.drawable.rook_white));
-            addPiece(new ChessPiece(0 + i * 7, 7, Player.BLACK, Chessman.ROOK, R.drawable.rook_black));
+    public boolean isCheckmate() {
+        Position p = snapshot;
+        return p.inCheck() && !MoveGenerator.hasLegalMoves(p);
+    }
 
-            addPiece(new ChessPiece(1 + i * 5, 0, Player.WHITE, Chessman.KNIGHT, R.drawable.knight_white));
-            addPiece(new ChessPiece(1 + i * 5, 7, Player.BLACK, Chessman.KNIGHT, R.drawable.knight_black));
+    public boolean isStalemate() {
+        Position p = snapshot;
+        return !p.inCheck() && !MoveGenerator.hasLegalMoves(p);
+    }
 
-            addPiece(new ChessPiece(2 + i * 3, 0, Player.WHITE, Chessman.BISHOP, R.drawable.bishop_white));
-            addPiece(new ChessPiece(2 + i * 3, 7, Player.BLACK, Chessman.BISHOP, R.drawable.bishop_black));
-        }
+    // Số nút lá ở độ sâu depth tính từ thế cờ hiện tại
+    public long perft(int depth) {
+        return MoveGenerator.perft(snapshot, depth);
+    }
 
-        for (int i = 0; i < 8; i++) {
-            addPiece(new ChessPiece(i, 1, Player.WHITE, Chessman.PAWN, R.drawable.pawn_white));
-            addPiece(new ChessPiece(i, 6, Player.BLACK, Chessman.PAWN, R.drawable.pawn_black));
-        }
+    public synchronized void reset() {
+        position.setStartPosition();
+        restart();
+    }
 
-        addPiece(new ChessPiece(3, 0, Player.WHITE, Chessman.QUEEN, R.drawable.queen_white));
-        addPiece(new ChessPiece(3, 7, Player.BLACK, Chessman.QUEEN, R.drawable.queen_black));
-        addPiece(new ChessPiece(4, 0, Player.WHITE, Chessman.KING, R.drawable.king_white));
-        addPiece(new ChessPiece(4, 7, Player.BLACK, Chessman.KING, R.drawable.king_black));
+    public ChessPiece pieceAt(Square square) {
+        if (!square.isValid()) return null;
+        int sq = square.getIndex();
+        return ChessPiece.of(snapshot.pieceAt(sq), sq);
     }
 
-    public static ChessPiece pieceAt(Square square) {
-        return pieceAt(square.getCol(), square.getRow());
+    // Thế cờ hiện tại dạng FEN
+    public String toFen() {
+        return snapshot.toFen();
     }
 
-    private static ChessPiece pieceAt(int col, int row) {
-        for (ChessPiece piece : piecesBox) {
-            if (col == piece.getCol() && row == piece.getRow()) {
-                return piece;
-            }
-        }
-        return null;
+    // Bắt đầu ván từ thế cờ FEN; ném FenException và giữ nguyên ván nếu FEN sai
+    public synchronized void setFen(CharSequence fen) {
+        Position parsed = Position.fromFen(fen);
+        position.copyFrom(parsed);
+        restart();
     }
 
     public String pgnBoard() {
+        Position p = snapshot;
         StringBuilder desc = new StringBuilder(" \n");
         desc.append("  a b c d e f g h\n");
         for (int row = 7; row >= 0; row--) {
             desc.append(row + 1);
-            desc.append(boardRow(row));
+            appendRow(desc, p, row);
             desc.append(" ").append(row + 1);
             desc.append("\n");
         }
@@ -248,35 +207,23 @@ public class ChessGame {
 
     @Override
     public String toString() {
+        Position p = snapshot;
         StringBuilder desc = new StringBuilder(" \n");
         for (int row = 7; row >= 0; row--) {
             desc.append(row);
-            desc.append(boardRow(row));
+            appendRow(desc, p, row);
             desc.append("\n");
         }
         desc.append("  0 1 2 3 4 5 6 7");
         return desc.toString();
     }
 
-    private String boardRow(int row) {
-        StringBuilder desc = new StringBuilder();
+    private static void appendRow(StringBuilder desc, Position p, int row) {
         for (int col = 0; col < 8; col++) {
             desc.append(" ");
-            ChessPiece piece = pieceAt(col, row);
-            if (piece != null) {
-                boolean white = piece.getPlayer() == Player.WHITE;
-                switch (piece.getChessman()) {
-                    case KING: desc.append(white ? "k" : "K"); break;
-                    case QUEEN: desc.append(white ? "q" : "Q"); break;
-                    case BISHOP: desc.append(white ? "b" : "B"); break;
-                    case ROOK: desc.append(white ? "r" : "R"); break;
-                    case KNIGHT: desc.append(white ? "n" : "N"); break;
-                    case PAWN: desc.append(white ? "p" : "P"); break;
-                }
-            } else {
-                desc.append(".");
-            }
+            int piece = p.pieceAt(Bitboards.square(col, row));
+            // Theo quy ước FEN: chữ hoa cho quân trắng
+            desc.append(piece == Piece.NONE ? '.' : Piece.toChar(piece));
         }
-        return desc.toString();
     }
-}
\ No newline at end of file
+}
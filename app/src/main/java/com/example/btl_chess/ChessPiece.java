@@ -7,6 +7,26 @@ public class ChessPiece {
     private final Chessman chessman;
     private final int resID;
 
+    // Ảnh của từng mã quân, theo thứ tự của Piece
+    private static final int[] RES_IDS = {
+            R.drawable.king_white, R.drawable.queen_white, R.drawable.bishop_white,
+            R.drawable.rook_white, R.drawable.knight_white, R.drawable.pawn_white,
+            R.drawable.king_black, R.drawable.queen_black, R.drawable.bishop_black,
+            R.drawable.rook_black, R.drawable.knight_black, R.drawable.pawn_black
+    };
+
+    // Các view dựng sẵn cho mọi cặp (quân, ô) để pieceAt không phải cấp phát
+    private static final ChessPiece[] VIEWS = new ChessPiece[Piece.COUNT * 64];
+
+    static {
+        for (int piece = 0; piece < Piece.COUNT; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                VIEWS[piece * 64 + sq] = new ChessPiece(Bitboards.col(sq), Bitboards.row(sq),
+                        Piece.player(piece), Piece.chessman(piece), RES_IDS[piece]);
+            }
+        }
+    }
+
     public ChessPiece(int col, int row, Player player, Chessman chessman, int resID) {
         this.col = col;
         this.row = row;
@@ -74,6 +94,18 @@ public class ChessPiece {
         return new ChessPiece(col, row, this.player, this.chessman, this.resID);
     }
 
+    public int getPiece() {
+        return Piece.make(player, chessman);
+    }
+
+    public static ChessPiece of(int piece, int sq) {
+        return piece == Piece.NONE ? null : VIEWS[piece * 64 + sq];
+    }
+
+    public static int resIdOf(int piece) {
+        return RES_IDS[piece];
+    }
+
 
 }
 
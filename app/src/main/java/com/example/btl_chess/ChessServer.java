@@ -1,86 +1,578 @@
 package com.example.btl_chess;
 
 import android.util.Log;
+
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
-import java.util.Scanner;
-import java.util.concurrent.Executors;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Server nhiều ván cờ chạy trên một luồng selector (NIO không chặn).
+ * Các kết nối được ghép cặp theo thứ tự vào phòng, mỗi phòng có một ChessGame riêng;
+ * server giữ ván cờ gốc, kiểm tra lượt đi và luật cho từng nước rồi phát nước được chấp nhận
+ * kèm số thứ tự cho cả hai bên; nước sai bị trả về khung ERROR. Dữ liệu theo {@link WireProtocol}.
+ * Kết nối không gửi gì (kể cả PING) quá idleTimeoutMillis bị đóng sau khung ERROR
+ * {@link WireProtocol#ERR_IDLE}. Người chơi mất kết nối có resumeTimeoutMillis để nối lại bằng mã phiên; hết thời gian đó mà chưa quay lại thì phòng bị đóng.
+ * Đồng hồ do server giữ: thời gian mỗi bên đã dùng được tính khi server nhận nước và gửi kèm sau mỗi
+ * nước; khung CLOCK từ client bị bỏ qua. Ván kết thúc khi chiếu hết, hết nước, lặp lại ba lần,
+ * đủ 50 nước không ăn quân không đi tốt, hoặc một bên xin thua.
+ * Người xem nhận cùng các khung với người chơi: mỗi khung được mã hoá một lần rồi dùng chung cho mọi
+ * kết nối, người xem đọc quá chậm bị ngắt thay vì làm chậm ván cờ.
+ */
 public class ChessServer {
     private static final String TAG = "ChessServer";
+
+    public static final int DEFAULT_PORT = 50000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000L;
+    public static final long DEFAULT_RESUME_TIMEOUT_MILLIS = 60 * 1000L;
+
+    // Lỡ nhiều hơn số nước này thì gửi ảnh chụp thế cờ thay vì gửi bù từng nước
+    private static final int MAX_REPLAY = 64;
+
+    // Người xem dồn quá số byte này chưa nhận thì bị ngắt
+    private static final int SPECTATOR_OUTPUT_LIMIT = 16 * 1024;
+
+    // Chu kỳ tối đa giữa hai lần quét kết nối quá hạn
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
     private final int port;
-    private ServerSocket serverSocket;
-    private PrintWriter printWriter;
+    private final long idleTimeoutMillis;
+    private final long resumeTimeoutMillis;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running;
+
+    // Các trường dưới đây chỉ được dùng trên luồng selector
+    private final Set<Connection> connections = new HashSet<>();
+    private final Map<Integer, GameRoom> rooms = new HashMap<>();
+    private final Map<Long, GameRoom> sessions = new HashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private Connection waiting;
+    private int nextConnectionId;
+    private int nextRoomId;
+    private volatile int roomCount;
+    private final FrameHandler handler = new FrameHandler();
 
     public ChessServer(int port) {
+        this(port, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public ChessServer(int port, long idleTimeoutMillis) {
+        this(port, idleTimeoutMillis, DEFAULT_RESUME_TIMEOUT_MILLIS);
+    }
+
+    public ChessServer(int port, long idleTimeoutMillis, long resumeTimeoutMillis) {
         this.port = port;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.resumeTimeoutMillis = resumeTimeoutMillis;
+    }
+
+    // Mở cổng và chạy luồng selector; port = 0 để hệ điều hành chọn cổng
+    public synchronized void start() throws IOException {
+        if (running) return;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this::run, "chess-server");
+        thread.start();
+        Log.d(TAG, "Server started on port " + getLocalPort());
+    }
+
+    public int getLocalPort() {
+        ServerSocketChannel channel = serverChannel;
+        return channel == null ? -1 : channel.socket().getLocalPort();
     }
 
-    public void startServer(ChessDelegate delegate) {
-        Executors.newSingleThreadExecutor().execute(() -> {
-            try (ServerSocket srvSkt = new ServerSocket(50000)) {
-                serverSocket = srvSkt;
-                Log.d(TAG, "Server started, waiting for connection on port " + port);
-                Socket socket = srvSkt.accept();
-                Log.d(TAG, "Client connected!");
-                receiveMove(socket, delegate);
-            } catch (SocketException e) {
-                Log.e(TAG, "Socket closed", e);
+    public int getRoomCount() {
+        return roomCount;
+    }
+
+    // Dừng luồng selector, đóng mọi kết nối và chờ luồng kết thúc
+    public synchronized void shutdown() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    private void run() {
+        long lastSweep = System.currentTimeMillis();
+        try {
+            while (running) {
+                selector.select(SWEEP_INTERVAL_MILLIS);
+                long now = System.currentTimeMillis();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept(now);
+                    } else {
+                        handle((Connection) key.attachment(), key, now);
+                    }
+                }
+                if (now - lastSweep >= SWEEP_INTERVAL_MILLIS) {
+                    closeIdle(now);
+                    closeAbandoned(now);
+                    lastSweep = now;
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Selector error", e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept(long now) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            SelectionKey key;
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                key = channel.register(selector, SelectionKey.OP_READ);
             } catch (IOException e) {
-                Log.e(TAG, "Server socket error", e);
+                // Chỉ bỏ kết nối này (ví dụ client reset giữa chừng), server vẫn nhận tiếp
+                Log.w(TAG, "Accept failed", e);
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                continue;
             }
-        });
+            Connection c = new Connection(++nextConnectionId, channel, key, now);
+            key.attach(c);
+            connections.add(c);
+            ByteBuffer out = c.output(WireProtocol.HELLO_SIZE);
+            WireProtocol.putHello(out);
+        }
+    }
+
+    // Ghép kết nối mới với người đang chờ, hoặc để nó chờ người kế tiếp
+    private void pair(Connection c) {
+        if (waiting == null || !waiting.isOpen()) {
+            waiting = c;
+            return;
+        }
+        GameRoom room = new GameRoom(++nextRoomId, newSession(), newSession(), System.currentTimeMillis());
+        room.attach(waiting, Piece.WHITE);
+        room.attach(c, Piece.BLACK);
+        waiting = null;
+        rooms.put(room.id, room);
+        sessions.put(room.sessions[Piece.WHITE], room);
+        sessions.put(room.sessions[Piece.BLACK], room);
+        roomCount = rooms.size();
+        for (Connection p : room.players) {
+            sendSession(p);
+            sendSync(p);
+            sendClock(p, room);
+        }
+        Log.d(TAG, "Room " + room.id + " started");
     }
 
+    private long newSession() {
+        long session;
+        do {
+            session = random.nextLong();
+        } while (session == 0 || sessions.containsKey(session));
+        return session;
+    }
 
-    private void receiveMove(Socket socket, ChessDelegate delegate) {
+    // Đưa c vào lại chỗ của phiên session và gửi bù các nước sau lastSeq
+    private void resume(Connection c, long session, int lastSeq) {
+        GameRoom room = sessions.get(session);
+        if (room == null) {
+            reject(c, WireProtocol.ERR_NO_SESSION);
+            pair(c);
+            return;
+        }
+        int color = room.colorOf(session);
+        Connection old = room.players[color];
+        if (old != null) {
+            // Kết nối cũ chưa bị phát hiện là đã chết
+            room.detach(old, System.currentTimeMillis());
+            close(old);
+        }
+        room.attach(c, color);
+        sendSession(c);
+        int missed = room.moveCount - lastSeq;
+        if (missed < 0 || missed > MAX_REPLAY) {
+            ByteBuffer out = output(c, WireProtocol.SNAPSHOT_SIZE);
+            if (out != null) {
+                WireProtocol.putSnapshot(out, room.moveCount, color, room.game.snapshot());
+            }
+        } else {
+            for (int seq = lastSeq + 1; seq <= room.moveCount; seq++) {
+                ByteBuffer out = output(c, WireProtocol.MOVE_SIZE);
+                if (out == null) return;
+                WireProtocol.putMove(out, seq, room.moves[seq - 1]);
+            }
+        }
+        sendClock(c, room);
+        Log.d(TAG, "Connection " + c.id + " resumed room " + room.id + ", missed " + missed);
+    }
+
+    private void handle(Connection c, SelectionKey key, long now) {
         try {
-            Scanner scanner = new Scanner(socket.getInputStream());
-            printWriter = new PrintWriter(socket.getOutputStream(), true);
-            while (scanner.hasNextLine()) {
-                String[] move = scanner.nextLine().split(",");
-                int fromCol = Integer.parseInt(move[0]);
-                int fromRow = Integer.parseInt(move[1]);
-                int toCol = Integer.parseInt(move[2]);
-                int toRow = Integer.parseInt(move[3]);
-
-                // Gọi hàm movePiece của ChessDelegate để di chuyển quân cờ
-                delegate.movePiece(new Square(fromCol, fromRow), new Square(toCol, toRow));
+            if (key.isReadable()) {
+                if (c.read(now) < 0) {
+                    close(c);
+                    return;
+                }
+                processInput(c);
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Error receiving move", e);
+            if (key.isValid() && key.isWritable()) {
+                c.flush();
+                if (c.closing && !c.hasPendingOutput()) {
+                    close(c);
+                }
+            }
+        } catch (ProtocolException e) {
+            // Báo lỗi rồi ngắt sau khi khung ERROR đã được gửi đi
+            Log.d(TAG, "Connection " + c.id + " protocol error: " + e.getMessage());
+            reject(c, WireProtocol.ERR_PROTOCOL);
+            c.closeAfterFlush();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Connection " + c.id + " error", e);
+            close(c);
+        }
+    }
+
+    private void processInput(Connection c) throws ProtocolException {
+        ByteBuffer in = c.readBuffer;
+        in.flip();
+        handler.connection = c;
+        try {
+            WireProtocol.decode(in, handler);
         } finally {
-            closeSocket(socket); // Đảm bảo socket được đóng sau khi sử dụng
+            handler.connection = null;
+            in.compact();
         }
     }
 
-    public void sendMove(String moveStr) {
-        if (printWriter != null) {
-            Executors.newSingleThreadExecutor().execute(() -> printWriter.println(moveStr));
+    // Chỗ ghi một khung cho c; bên nhận quá chậm bị ngắt và trả về null
+    private ByteBuffer output(Connection c, int size) {
+        if (!c.isOpen()) return null;
+        ByteBuffer out = c.output(size);
+        if (out == null) {
+            Log.d(TAG, "Connection " + c.id + " output full, closing");
+            close(c);
         }
+        return out;
     }
 
-    private void closeSocket(Socket socket) {
-        if (socket != null && !socket.isClosed()) {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Error closing socket", e);
+    private void reject(Connection c, int code) {
+        ByteBuffer out = output(c, WireProtocol.ERROR_SIZE);
+        if (out != null) {
+            WireProtocol.putError(out, code, c.room == null ? 0 : c.room.moveCount);
+        }
+    }
+
+    private void sendSync(Connection c) {
+        sendSync(c, c.room, c.color);
+    }
+
+    private void sendSync(Connection c, GameRoom room, int color) {
+        int count = Math.min(room.moveCount, WireProtocol.MAX_SYNC_MOVES);
+        ByteBuffer out = output(c, WireProtocol.syncSize(count));
+        if (out != null) {
+            WireProtocol.putSync(out, color, room.moves, count);
+        }
+    }
+
+    // Gửi frame (chế độ ghi, đã mã hoá một lần) cho người chơi và người xem của room
+    private void broadcast(GameRoom room, ByteBuffer frame) {
+        frame.flip();
+        ByteBuffer shared = frame.asReadOnlyBuffer();
+        for (Connection c : room.players) {
+            if (c != null && !c.share(shared)) {
+                Log.d(TAG, "Connection " + c.id + " output full, closing");
+                close(c);
             }
         }
+        share(room, shared);
     }
 
-    public void closeServerSocket() {
-        if (serverSocket != null) {
-            try {
-                serverSocket.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Error closing server socket", e);
+    // Chỉ gửi cho người xem; người xem không kịp nhận bị bỏ, ván cờ không phải chờ
+    private void share(GameRoom room, ByteBuffer shared) {
+        List<Connection> watchers = room.watchers;
+        for (int i = watchers.size() - 1; i >= 0; i--) {
+            Connection c = watchers.get(i);
+            if (!c.share(shared)) {
+                Log.d(TAG, "Spectator " + c.id + " too slow, dropping");
+                close(c);
+            }
+        }
+    }
+
+    private void sendClock(Connection c, GameRoom room) {
+        ByteBuffer out = output(c, WireProtocol.CLOCK_SIZE);
+        if (out != null) {
+            WireProtocol.putClock(out, room.clockMillis[Piece.WHITE], room.clockMillis[Piece.BLACK]);
+        }
+    }
+
+    private void sendSession(Connection c) {
+        ByteBuffer out = output(c, WireProtocol.SESSION_SIZE);
+        if (out != null) {
+            WireProtocol.putSession(out, c.room.sessions[c.color], c.color);
+        }
+    }
+
+    /** Xử lý các khung từ một kết nối; chỉ chạy trên luồng selector. */
+    private final class FrameHandler implements WireProtocol.Handler {
+        Connection connection;
+
+        @Override
+        public void onHello(int version, long session, int lastSeq) throws ProtocolException {
+            if (version != WireProtocol.VERSION) {
+                throw new ProtocolException("Unsupported protocol version " + version);
+            }
+            if (connection.version != 0) {
+                throw new ProtocolException("Duplicate HELLO");
+            }
+            connection.version = version;
+            if (session != 0) {
+                resume(connection, session, lastSeq);
+            } else {
+                pair(connection);
+            }
+        }
+
+        @Override
+        public void onMove(int seq, int move) throws ProtocolException {
+            GameRoom room = room();
+            int code = validate(room, seq);
+            if (code == 0 && !room.game.makeMove(move)) {
+                code = WireProtocol.ERR_ILLEGAL_MOVE;
+            }
+            if (code != 0) {
+                reject(connection, code);
+                return;
+            }
+            room.addMove(move, connection.color, System.currentTimeMillis());
+            if (room.game.isCheckmate() || room.game.isStalemate() || room.isDrawByRule()) {
+                room.finished = true;
+            }
+            // Người đi cũng nhận lại nước của mình, đó là xác nhận của server; đồng hồ đi cùng một lần gửi
+            ByteBuffer frame = ByteBuffer.allocate(WireProtocol.MOVE_SIZE + WireProtocol.CLOCK_SIZE);
+            WireProtocol.putMove(frame, seq, move);
+            WireProtocol.putClock(frame, room.clockMillis[Piece.WHITE], room.clockMillis[Piece.BLACK]);
+            broadcast(room, frame);
+        }
+
+        // Mã lỗi nếu connection không được đi nước thứ seq, 0 nếu hợp lệ về lượt và thứ tự
+        private int validate(GameRoom room, int seq) {
+            if (room == null) return WireProtocol.ERR_NO_GAME;
+            if (room.finished) return WireProtocol.ERR_GAME_OVER;
+            if (seq != room.moveCount + 1) return WireProtocol.ERR_OUT_OF_SEQUENCE;
+            if (room.game.snapshot().sideToMove() != connection.color) return WireProtocol.ERR_NOT_YOUR_TURN;
+            return 0;
+        }
+
+        // Đồng hồ do server tính, client không được tự báo thời gian
+        @Override
+        public void onClock(long whiteMillis, long blackMillis) throws ProtocolException {
+            room();
+        }
+
+        @Override
+        public void onResign(int color) throws ProtocolException {
+            GameRoom room = room();
+            if (room == null || room.finished) {
+                reject(connection, room == null ? WireProtocol.ERR_NO_GAME : WireProtocol.ERR_GAME_OVER);
+                return;
+            }
+            room.finished = true;
+            ByteBuffer frame = ByteBuffer.allocate(WireProtocol.RESIGN_SIZE);
+            WireProtocol.putResign(frame, connection.color);
+            broadcast(room, frame);
+        }
+
+        // Client gửi SYNC để xin lại toàn bộ ván
+        @Override
+        public void onSync(int color, ByteBuffer buffer, int offset, int count) throws ProtocolException {
+            if (room() != null) {
+                sendSync(connection);
+            } else if (connection.watching != null) {
+                sendSync(connection, connection.watching, WireProtocol.SPECTATOR);
+            }
+        }
+
+        // Người xem gửi WATCH thay cho HELLO
+        @Override
+        public void onWatch(int version, int roomId) throws ProtocolException {
+            if (version != WireProtocol.VERSION) {
+                throw new ProtocolException("Unsupported protocol version " + version);
+            }
+            if (connection.version != 0) {
+                throw new ProtocolException("Duplicate HELLO");
+            }
+            connection.version = version;
+            GameRoom room = roomId == 0 ? newestRoom() : rooms.get(roomId);
+            if (room == null) {
+                reject(connection, WireProtocol.ERR_NO_GAME);
+                connection.closeAfterFlush();
+                return;
+            }
+            connection.watching = room;
+            connection.outputLimit = SPECTATOR_OUTPUT_LIMIT;
+            room.watchers.add(connection);
+            sendSync(connection, room, WireProtocol.SPECTATOR);
+            sendClock(connection, room);
+        }
+
+        @Override
+        public void onAck(int ply) throws ProtocolException {
+            room();
+            connection.ackedPly = ply;
+        }
+
+        // Mọi khung trừ HELLO chỉ hợp lệ sau HELLO
+        private GameRoom room() throws ProtocolException {
+            if (connection.version == 0) {
+                throw new ProtocolException("Expected HELLO");
             }
-            serverSocket = null;
+            return connection.room;
+        }
+    }
+
+    private GameRoom newestRoom() {
+        GameRoom newest = null;
+        for (GameRoom room : rooms.values()) {
+            if (newest == null || room.id > newest.id) {
+                newest = room;
+            }
+        }
+        return newest;
+    }
+
+    private void closeIdle(long now) {
+        List<Connection> idle = new ArrayList<>();
+        for (Connection c : connections) {
+            // Người xem không gửi gì, họ bị đóng cùng phòng
+            if (c.watching != null) continue;
+            if (now - c.lastActivity > idleTimeoutMillis) {
+                idle.add(c);
+            }
+        }
+        for (Connection c : idle) {
+            // Có thể đã bị đóng cùng đối thủ ở vòng trước
+            if (!connections.contains(c)) continue;
+            if (c.closing) {
+                // Đã được báo từ lần quét trước mà vẫn chưa nhận hết, đóng hẳn
+                close(c);
+                continue;
+            }
+            // Client còn sống gửi PING định kỳ; báo lý do trước khi đóng để client nối lại phiên
+            // thay vì coi đây là ván đã kết thúc. Chỗ trong phòng vẫn được giữ resumeTimeoutMillis
+            Log.d(TAG, "Connection " + c.id + " idle, closing");
+            reject(c, WireProtocol.ERR_IDLE);
+            if (connections.contains(c)) {
+                c.closeAfterFlush();
+            }
+        }
+    }
+
+    // Phòng có người mất kết nối quá resumeTimeoutMillis thì kết thúc
+    private void closeAbandoned(long now) {
+        List<GameRoom> abandoned = new ArrayList<>();
+        for (GameRoom room : rooms.values()) {
+            for (int color = Piece.WHITE; color <= Piece.BLACK; color++) {
+                if (room.players[color] == null && now - room.leftAt[color] > resumeTimeoutMillis) {
+                    abandoned.add(room);
+                    break;
+                }
+            }
+        }
+        for (GameRoom room : abandoned) {
+            Log.d(TAG, "Room " + room.id + " abandoned");
+            closeRoom(room);
+        }
+    }
+
+    // Đóng kết nối; chỗ của người chơi trong phòng được giữ để nối lại, trừ khi ván đã xong.
+    // Phòng không còn ai (ví dụ mạng rớt cùng lúc) vẫn được giữ cho tới closeAbandoned
+    private void close(Connection c) {
+        if (!connections.remove(c)) return;
+        c.close();
+        if (waiting == c) {
+            waiting = null;
+        }
+        if (c.watching != null) {
+            c.watching.watchers.remove(c);
+            c.watching = null;
+        }
+        GameRoom room = c.room;
+        if (room != null) {
+            room.detach(c, System.currentTimeMillis());
+            if (room.finished) {
+                closeRoom(room);
+            }
+        }
+    }
+
+    private void closeRoom(GameRoom room) {
+        if (rooms.remove(room.id) == null) return;
+        sessions.remove(room.sessions[Piece.WHITE]);
+        sessions.remove(room.sessions[Piece.BLACK]);
+        roomCount = rooms.size();
+        Log.d(TAG, "Room " + room.id + " closed");
+        for (Connection p : room.players) {
+            if (p != null) {
+                p.room = null;
+                close(p);
+            }
+        }
+        // Người xem nhận nốt các khung đang chờ, ví dụ RESIGN, rồi mới bị đóng
+        for (Connection w : room.watchers) {
+            w.watching = null;
+            w.closeAfterFlush();
+        }
+        room.watchers.clear();
+    }
+
+    private void closeAll() {
+        for (Connection c : connections) {
+            c.close();
+        }
+        connections.clear();
+        rooms.clear();
+        sessions.clear();
+        waiting = null;
+        roomCount = 0;
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing server socket", e);
         }
+        Log.d(TAG, "Server stopped");
     }
 }
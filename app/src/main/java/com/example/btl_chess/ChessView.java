@@ -6,14 +6,19 @@ import android.util.AttributeSet;
 import android.view.MotionEvent;
 import android.view.View;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 public class ChessView extends View {
     private Square selectedSquare = null;
+    // Các ô đích hợp lệ của quân đang chọn, theo bit của chỉ số ô; được tính ngoài luồng UI mỗi
+    // lần chọn quân hoặc có thế cờ mới rồi dùng lại qua các khung hình. Chỉ đúng khi hintKey
+    // bằng khoá của thế cờ đang vẽ
+    private long hintMask;
+    private long hintKey;
+    private final GameController.HintCallback hintCallback = this::showHints;
     private Paint hintPaint;
+    private Paint hintStrokePaint;
     private final float scaleFactor = 1.0f;
     private float originX = 20f;
     private float originY = 200f;
@@ -21,22 +26,28 @@ public class ChessView extends View {
     private final int lightColor = Color.parseColor("#EEEEEE");
     private final int darkColor = Color.parseColor("#BBBBBB");
     private final int highlightColor = Color.YELLOW; // Màu cho ô được nổi bật
-    private final int[] imgResIDs = {
-            R.drawable.bishop_black,
-            R.drawable.bishop_white,
-            R.drawable.king_black,
-            R.drawable.king_white,
-            R.drawable.queen_black,
-            R.drawable.queen_white,
-            R.drawable.rook_black,
-            R.drawable.rook_white,
-            R.drawable.knight_black,
-            R.drawable.knight_white,
-            R.drawable.pawn_black,
-            R.drawable.pawn_white
-    };
-    private final Map<Integer, Bitmap> bitmaps = new HashMap<>();
-    private final Paint paint = new Paint();
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    // RectF dùng lại trong onDraw để không cấp phát khi vẽ
+    private final RectF dragRect = new RectF();
+    // Cạnh ảnh quân trong PieceAtlas, bằng cellSide làm tròn
+    private int pieceSize;
+    // Ảnh quân cỡ pieceSize, null khi đang được giải mã; onDraw chỉ đọc trường này
+    private Bitmap[] pieceBitmaps;
+    private final PieceAtlas.Callback atlasCallback = (size, bitmaps) -> post(() -> {
+        // Kích thước view có thể đã đổi trong lúc giải mã
+        if (size == pieceSize && getWindowVisibility() == VISIBLE) {
+            pieceBitmaps = bitmaps;
+            invalidate();
+        }
+    });
+
+    // Bàn cờ không có quân, vẽ sẵn một lần cho mỗi kích thước view
+    private Bitmap boardBitmap;
+
+    // Quân trên từng ô theo lần cập nhật gần nhất, để không vẽ lại khi không có ô nào đổi
+    private final int[] shownPieces = new int[64];
+    private Position shownPosition;
+    private final Runnable positionChangedTask = this::invalidateChangedSquares;
 
     private Bitmap movingPieceBitmap;
     private ChessPiece movingPiece;
@@ -51,7 +62,7 @@ public class ChessView extends View {
 
     public ChessView(Context context, AttributeSet attrs) {
         super(context, attrs);
-        loadBitmaps();
+        PieceAtlas.register(context);
         init();
     }
     private void init() {
@@ -59,11 +70,76 @@ public class ChessView extends View {
         hintPaint = new Paint();
         hintPaint.setColor(Color.argb(128, 0, 255, 0)); // Màu xanh lá trong suốt
         hintPaint.setStyle(Paint.Style.FILL);
+
+        hintStrokePaint = new Paint();
+        hintStrokePaint.setColor(Color.argb(128, 255, 0, 0)); // Màu đỏ trong suốt
+        hintStrokePaint.setStyle(Paint.Style.STROKE);
+        hintStrokePaint.setStrokeWidth(5);
     }
 
 
     public void setChessDelegate(ChessDelegate chessDelegate) {
         this.chessDelegate = chessDelegate;
+        shownPosition = null;
+        Arrays.fill(shownPieces, Piece.NONE);
+        invalidate();
+    }
+
+    // Thế cờ của delegate đã đổi; gọi được từ mọi luồng, chỉ vẽ lại khi có ô bị đổi
+    public void positionChanged() {
+        removeCallbacks(positionChangedTask);
+        post(positionChangedTask);
+    }
+
+    private void invalidateChangedSquares() {
+        if (chessDelegate == null) return;
+        Position position = chessDelegate.position();
+        if (position == shownPosition) return;
+        shownPosition = position;
+        // Ô đi, ô đến, quân bị bắt (kể cả bắt tốt qua đường) và xe khi nhập thành đều hiện ra ở đây
+        long changed = 0L;
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = position.pieceAt(sq);
+            if (piece != shownPieces[sq]) {
+                shownPieces[sq] = piece;
+                changed |= 1L << sq;
+            }
+        }
+        if (selectedSquare != null) {
+            changed |= hintMask;
+            hintMask = 0L;
+            if ((changed & 1L << selectedSquare.getIndex()) != 0) {
+                // Quân đang chọn đã đi hoặc bị bắt
+                selectedSquare = null;
+                chessDelegate.cancelHints();
+            } else {
+                chessDelegate.requestHints(selectedSquare, hintCallback);
+            }
+        }
+        invalidateSquares(changed);
+    }
+
+    // Kết quả gợi ý từ GameController, trên luồng UI
+    private void showHints(int from, long key, long targets) {
+        if (selectedSquare == null || selectedSquare.getIndex() != from) return;
+        if (key != chessDelegate.position().key()) {
+            // Được tính cho thế cờ cũ
+            chessDelegate.requestHints(selectedSquare, hintCallback);
+            return;
+        }
+        long stale = hintMask;
+        hintKey = key;
+        hintMask = targets;
+        invalidateSquares(stale ^ targets);
+    }
+
+    // Vẽ lại cả view nếu có ô trong mask bị đổi. Không dùng vùng bẩn invalidate(l, t, r, b): với tăng
+    // tốc phần cứng (mặc định) vùng đó bị bỏ qua và cả view được vẽ lại, còn phần tiết kiệm thật là
+    // bàn cờ vẽ sẵn thành một bitmap và quân được duyệt theo bitboard
+    private void invalidateSquares(long mask) {
+        if (mask != 0) {
+            invalidate();
+        }
     }
 
     @Override
@@ -74,37 +150,78 @@ public class ChessView extends View {
     }
 
     @Override
-    protected void onDraw(Canvas canvas) {
-        if (canvas == null) return;
-
-        float chessBoardSide = Math.min(getWidth(), getHeight()) * scaleFactor;
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float chessBoardSide = Math.min(w, h) * scaleFactor;
         cellSide = chessBoardSide / 8f;
-        originX = (getWidth() - chessBoardSide) / 2f;
-        originY = (getHeight() - chessBoardSide) / 2f;
+        originX = (w - chessBoardSide) / 2f;
+        originY = (h - chessBoardSide) / 2f;
+        pieceSize = Math.round(cellSide);
+        loadPieceBitmaps();
+
+        if (boardBitmap != null) {
+            boardBitmap.recycle();
+            boardBitmap = null;
+        }
+        int side = Math.round(chessBoardSide);
+        if (side > 0) {
+            boardBitmap = Bitmap.createBitmap(side, side, Bitmap.Config.RGB_565);
+            drawChessboard(new Canvas(boardBitmap));
+        }
+    }
+
+    // Lấy ảnh quân đúng cỡ từ PieceAtlas nếu đã có, không thì giải mã trên luồng nền
+    private void loadPieceBitmaps() {
+        pieceBitmaps = pieceSize > 0 ? PieceAtlas.peek(pieceSize) : null;
+        if (pieceBitmaps == null && pieceSize > 0) {
+            PieceAtlas.load(getResources(), pieceSize, atlasCallback);
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        if (visibility == VISIBLE) {
+            if (pieceBitmaps == null) {
+                loadPieceBitmaps();
+            }
+        } else {
+            // Thả ảnh để onTrimMemory của PieceAtlas thật sự trả lại bộ nhớ khi giao diện ẩn
+            pieceBitmaps = null;
+        }
+    }
 
-        drawChessboard(canvas);
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (canvas == null || boardBitmap == null) return;
+
+        canvas.drawBitmap(boardBitmap, originX, originY, null);
         drawPieces(canvas);
-        if (selectedSquare != null) {
-            drawMoveHints(canvas);
+        if (selectedSquare != null && chessDelegate != null) {
+            Position position = chessDelegate.position();
+            // Thế cờ đổi nhưng gợi ý mới chưa về thì không vẽ gợi ý cũ
+            if (position.key() == hintKey) {
+                drawMoveHints(canvas, position);
+            }
         }
 //        drawHighlightedSquares(canvas); // Vẽ các ô được nổi bật
     }
-    private void drawMoveHints(Canvas canvas) {
-        Set<Square> possibleMoves = ChessGame.getPossibleMoves(selectedSquare);
-        float squareSize = getWidth() / 8f;
+    private void drawMoveHints(Canvas canvas, Position position) {
+        float squareSize = cellSide;
 
-        for (Square square : possibleMoves) {
-            float left = square.getCol() * squareSize;
-            float top = (7 - square.getRow()) * squareSize;
+        for (long hints = hintMask; hints != 0; hints &= hints - 1) {
+            int sq = Long.numberOfTrailingZeros(hints);
+            float left = originX + Bitboards.col(sq) * squareSize;
+            float top = originY + (7 - Bitboards.row(sq)) * squareSize;
 
             // Vẽ hình tròn gợi ý
-            if (ChessGame.pieceAt(square) != null) {
+            if (!position.isEmpty(sq)) {
                 // Nếu có quân đối phương, vẽ viền để chỉ ra có thể ăn
                 canvas.drawCircle(
                         left + squareSize/2,
                         top + squareSize/2,
                         squareSize/2,
-                        getHintStrokePaint()
+                        hintStrokePaint
                 );
             } else {
                 // Nếu ô trống, vẽ chấm tròn nhỏ
@@ -117,79 +234,77 @@ public class ChessView extends View {
             }
         }
     }
-    private Paint getHintStrokePaint() {
-        Paint strokePaint = new Paint();
-        strokePaint.setColor(Color.argb(128, 255, 0, 0)); // Màu đỏ trong suốt
-        strokePaint.setStyle(Paint.Style.STROKE);
-        strokePaint.setStrokeWidth(5);
-        return strokePaint;
-    }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        if (event.getAction() == MotionEvent.ACTION_DOWN) {
-            float squareSize = getWidth() / 8f;
-            int col = (int)(event.getX() / squareSize);
-            int row = 7 - (int)(event.getY() / squareSize);
+        if (event.getAction() == MotionEvent.ACTION_DOWN && chessDelegate != null) {
+            float x = event.getX() - originX;
+            float y = event.getY() - originY;
+            // Chạm ngoài bàn cờ
+            if (x < 0 || y < 0 || x >= 8 * cellSide || y >= 8 * cellSide) return true;
+            int col = (int)(x / cellSide);
+            int row = 7 - (int)(y / cellSide);
 
             Square touchedSquare = new Square(col, row);
 
             if (selectedSquare == null) {
                 // Nếu chưa có quân được chọn và ô chạm vào có quân
-                if (ChessGame.pieceAt(touchedSquare) != null) {
+                Position position = chessDelegate.position();
+                if (!position.isEmpty(touchedSquare.getIndex())) {
                     selectedSquare = touchedSquare;
-                    invalidate(); // Vẽ lại để hiện gợi ý
+                    hintMask = 0L;
+                    // Gợi ý hiện ra khi showHints nhận kết quả
+                    chessDelegate.requestHints(touchedSquare, hintCallback);
                 }
             } else {
                 // Nếu đã có quân được chọn
-                if (ChessGame.isValidMove(touchedSquare)) {
-                    // Thực hiện nước đi nếu hợp lệ
-                    ChessGame.movePiece(selectedSquare, touchedSquare);
+                boolean hintsReady = hintKey == chessDelegate.position().key();
+                if (!hintsReady || (hintMask & 1L << touchedSquare.getIndex()) != 0) {
+                    // Gợi ý chưa về thì vẫn gửi, nước đi được kiểm tra lại ngoài luồng UI
+                    chessDelegate.movePiece(selectedSquare, touchedSquare);
                 }
                 // Xóa chọn và gợi ý
+                long stale = hintMask;
                 selectedSquare = null;
-                ChessGame.clearPossibleMoves();
-                invalidate();
+                hintMask = 0L;
+                chessDelegate.cancelHints();
+                invalidateSquares(stale);
             }
             return true;
         }
         return super.onTouchEvent(event);
     }
 
+    // Chỉ duyệt các ô có quân của thế cờ hiện tại
     private void drawPieces(Canvas canvas) {
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                if (chessDelegate != null) {
-                    ChessPiece piece = chessDelegate.pieceAt(new Square(col, row));
-                    if (piece != null && piece != movingPiece) {
-                        drawPieceAt(canvas, col, row, piece.getResID());
-                    }
-                }
+        // Ảnh đã đúng cỡ ô nên được vẽ thẳng, không phải co giãn mỗi khung hình
+        Bitmap[] pieceBitmaps = this.pieceBitmaps;
+        if (chessDelegate != null && pieceBitmaps != null) {
+            Position position = chessDelegate.position();
+            long occupied = position.occupied();
+            if (movingPiece != null) {
+                occupied &= ~(1L << Bitboards.square(fromCol, fromRow));
+            }
+            for (; occupied != 0; occupied &= occupied - 1) {
+                int sq = Long.numberOfTrailingZeros(occupied);
+                drawPieceAt(canvas, Bitboards.col(sq), Bitboards.row(sq), pieceBitmaps[position.pieceAt(sq)]);
             }
         }
 
         if (movingPieceBitmap != null) {
-            canvas.drawBitmap(movingPieceBitmap, null,
-                    new RectF(movingPieceX - cellSide / 2, movingPieceY - cellSide / 2,
-                            movingPieceX + cellSide / 2, movingPieceY + cellSide / 2), paint);
+            dragRect.set(movingPieceX - cellSide / 2, movingPieceY - cellSide / 2,
+                    movingPieceX + cellSide / 2, movingPieceY + cellSide / 2);
+            canvas.drawBitmap(movingPieceBitmap, null, dragRect, paint);
         }
     }
 
-    private void drawPieceAt(Canvas canvas, int col, int row, int resID) {
-        Bitmap bitmap = bitmaps.get(resID);
+    private void drawPieceAt(Canvas canvas, int col, int row, Bitmap bitmap) {
         if (bitmap != null) {
-            canvas.drawBitmap(bitmap, null, new RectF(
-                    originX + col * cellSide, originY + (7 - row) * cellSide,
-                    originX + (col + 1) * cellSide, originY + ((7 - row) + 1) * cellSide), paint);
-        }
-    }
-
-    private void loadBitmaps() {
-        for (int imgResID : imgResIDs) {
-            bitmaps.put(imgResID, BitmapFactory.decodeResource(getResources(), imgResID));
+            canvas.drawBitmap(bitmap, originX + col * cellSide, originY + (7 - row) * cellSide, paint);
         }
     }
 
+    // Vẽ vào boardBitmap (gốc toạ độ ở góc bàn cờ), chỉ khi kích thước view thay đổi
     private void drawChessboard(Canvas canvas) {
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
@@ -200,97 +315,7 @@ public class ChessView extends View {
 
     private void drawSquareAt(Canvas canvas, int col, int row, boolean isDark) {
         paint.setColor(isDark ? darkColor : lightColor);
-        canvas.drawRect(originX + col * cellSide, originY + row * cellSide,
-                originX + (col + 1) * cellSide, originY + (row + 1) * cellSide, paint);
-    }
-
-    // Tính toán các ô có thể di chuyển
-    private List<Square> calculatePossibleMoves(ChessPiece piece, Square position) {
-        List<Square> possibleMoves = new ArrayList<>();
-
-        switch (piece.getChessman()) { // Sử dụng getChessman() thay vì getType()
-            case KING:
-                for (int row = -1; row <= 1; row++) {
-                    for (int col = -1; col <= 1; col++) {
-                        if (row == 0 && col == 0) continue; // Bỏ qua ô hiện tại
-                        Square newSquare = new Square(position.getCol() + col, position.getRow() + row);
-                        if (isValidSquare(newSquare)) {
-                            possibleMoves.add(newSquare);
-                        }
-                    }
-                }
-                break;
-            case QUEEN:
-                for (int dir = -1; dir <= 1; dir++) {
-                    for (int row = -1; row <= 1; row++) {
-                        if (dir == 0 && row == 0) continue; // Bỏ qua ô hiện tại
-                        for (int i = 1; i < 8; i++) {
-                            Square newSquare = new Square(position.getCol() + dir * i, position.getRow() + row * i);
-                            if (!isValidSquare(newSquare)) break; // Ra ngoài bàn cờ
-                            possibleMoves.add(newSquare);
-                        }
-                    }
-                }
-                break;
-            case ROOK:
-                for (int dir = -1; dir <= 1; dir += 2) {
-                    for (int i = 1; i < 8; i++) {
-                        Square newSquare = new Square(position.getCol() + dir * i, position.getRow());
-                        if (!isValidSquare(newSquare)) break; // Ra ngoài bàn cờ
-                        possibleMoves.add(newSquare);
-                    }
-                    for (int i = 1; i < 8; i++) {
-                        Square newSquare = new Square(position.getCol(), position.getRow() + dir * i);
-                        if (!isValidSquare(newSquare)) break; // Ra ngoài bàn cờ
-                        possibleMoves.add(newSquare);
-                    }
-                }
-                break;
-            case BISHOP:
-                for (int dir = -1; dir <= 1; dir += 2) {
-                    for (int row = -1; row <= 1; row += 2) {
-                        for (int i = 1; i < 8; i++) {
-                            Square newSquare = new Square(position.getCol() + dir * i, position.getRow() + row * i);
-                            if (!isValidSquare(newSquare)) break; // Ra ngoài bàn cờ
-                            possibleMoves.add(newSquare);
-                        }
-                    }
-                }
-                break;
-            case KNIGHT:
-                int[][] knightMoves = {
-                        {2, 1}, {2, -1}, {-2, 1}, {-2, -1},
-                        {1, 2}, {1, -2}, {-1, 2}, {-1, -2}
-                };
-                for (int[] move : knightMoves) {
-                    Square newSquare = new Square(position.getCol() + move[0], position.getRow() + move[1]);
-                    if (isValidSquare(newSquare)) {
-                        possibleMoves.add(newSquare);
-                    }
-                }
-                break;
-            case PAWN:
-                int direction = piece.getPlayer().isWhite() ? 1 : -1; // Tùy thuộc vào màu sắc
-                Square forwardMove = new Square(position.getCol(), position.getRow() + direction);
-                if (isValidSquare(forwardMove)) {
-                    possibleMoves.add(forwardMove);
-                }
-                Square leftCapture = new Square(position.getCol() - 1, position.getRow() + direction);
-                Square rightCapture = new Square(position.getCol() + 1, position.getRow() + direction);
-                if (isValidSquare(leftCapture)) {
-                    possibleMoves.add(leftCapture);
-                }
-                if (isValidSquare(rightCapture)) {
-                    possibleMoves.add(rightCapture);
-                }
-                break;
-        }
-
-        return possibleMoves;
-    }
-
-    private boolean isValidSquare(Square square) {
-        return square.getCol() >= 0 && square.getCol() < 8 && square.getRow() >= 0 && square.getRow() < 8;
+        canvas.drawRect(col * cellSide, row * cellSide, (col + 1) * cellSide, (row + 1) * cellSide, paint);
     }
 
 //    private void drawHighlightedSquares(Canvas canvas) {
@@ -0,0 +1,147 @@
+package com.example.btl_chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Một kết nối tới server. Chỉ được dùng trên luồng selector của ChessServer.
+ */
+final class Connection {
+    // Đủ chứa khung lớn nhất của WireProtocol
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int INITIAL_OUTPUT = 1024;
+    // Bên nhận đọc quá chậm để dồn tới mức này thì bị ngắt
+    static final int MAX_OUTPUT = 256 * 1024;
+
+    final int id;
+    final SocketChannel channel;
+    final SelectionKey key;
+    final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    // Bộ đệm ghi (chế độ ghi); các khung được gộp lại và gửi bằng một lần write khi socket sẵn sàng
+    private ByteBuffer output = ByteBuffer.allocate(INITIAL_OUTPUT);
+    // Khung dùng chung với các kết nối khác (chế độ đọc), gửi trước output để giữ đúng thứ tự
+    private final ArrayDeque<ByteBuffer> shared = new ArrayDeque<>();
+    private int sharedBytes;
+    // Tổng số byte chờ gửi tối đa trước khi bị coi là bên nhận quá chậm
+    int outputLimit = MAX_OUTPUT;
+
+    GameRoom room;
+    // Phòng đang xem, chỉ với kết nối người xem
+    GameRoom watching;
+    // Màu quân trong room, chỉ có nghĩa khi room khác null
+    int color;
+    long lastActivity;
+    // Phiên bản giao thức từ HELLO của client, 0 khi chưa nhận
+    int version;
+    // Số nước client báo đã áp dụng qua ACK
+    int ackedPly;
+    // Đóng ngay sau khi gửi hết dữ liệu đang chờ
+    boolean closing;
+
+    Connection(int id, SocketChannel channel, SelectionKey key, long now) {
+        this.id = id;
+        this.channel = channel;
+        this.key = key;
+        this.lastActivity = now;
+    }
+
+    // Đọc thêm dữ liệu vào readBuffer (đang ở chế độ ghi); trả về -1 khi phía kia đã đóng
+    int read(long now) throws IOException {
+        int n = channel.read(readBuffer);
+        if (n > 0) {
+            lastActivity = now;
+        }
+        return n;
+    }
+
+    // Chỗ trống để ghi một khung size byte, hoặc null nếu bộ đệm ghi đã đầy
+    ByteBuffer output(int size) {
+        if (sharedBytes + output.position() + size > outputLimit) return null;
+        if (output.remaining() < size) {
+            int needed = output.position() + size;
+            int capacity = output.capacity();
+            while (capacity < needed) {
+                capacity *= 2;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(capacity, MAX_OUTPUT));
+            output.flip();
+            bigger.put(output);
+            output = bigger;
+        }
+        wantWrite();
+        return output;
+    }
+
+    // Xếp frame (chế độ đọc, không bị sửa nữa) vào hàng gửi mà không sao chép nội dung;
+    // trả về false nếu vượt outputLimit
+    boolean share(ByteBuffer frame) {
+        int size = frame.remaining();
+        if (sharedBytes + output.position() + size > outputLimit) return false;
+        if (output.position() > 0) {
+            // Các khung riêng đã ghi trước phải đi trước khung chung
+            output.flip();
+            shared.add(output);
+            sharedBytes += output.remaining();
+            output = ByteBuffer.allocate(INITIAL_OUTPUT);
+        }
+        shared.add(frame.duplicate());
+        sharedBytes += size;
+        wantWrite();
+        return true;
+    }
+
+    private void wantWrite() {
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    // Ghi các khung đang chờ; bỏ OP_WRITE khi đã ghi hết
+    void flush() throws IOException {
+        while (!shared.isEmpty()) {
+            ByteBuffer head = shared.peek();
+            sharedBytes -= channel.write(head);
+            // Socket đầy, gửi tiếp ở lần sẵn sàng sau
+            if (head.hasRemaining()) return;
+            shared.poll();
+        }
+        output.flip();
+        channel.write(output);
+        output.compact();
+        if (output.position() == 0 && key.isValid() && !closing) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    boolean hasPendingOutput() {
+        return sharedBytes > 0 || output.position() > 0;
+    }
+
+    // Ngừng đọc và đóng khi bộ đệm ghi đã trống
+    void closeAfterFlush() {
+        closing = true;
+        if (key.isValid()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    void close() {
+        output.clear();
+        shared.clear();
+        sharedBytes = 0;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Không còn gì để làm với một kết nối đang đóng
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.btl_chess;
+
+/**
+ * Chuỗi FEN sai định dạng. {@link #getIndex()} là vị trí ký tự gây lỗi tính từ đầu chuỗi FEN.
+ */
+public class FenException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final int index;
+
+    public FenException(String reason, int index, CharSequence fen) {
+        super(reason + " at " + index + ": \"" + fen + "\"");
+        this.index = index;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+}
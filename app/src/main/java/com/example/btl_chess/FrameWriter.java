@@ -0,0 +1,136 @@
+package com.example.btl_chess;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Luồng ghi duy nhất của một kết nối. Nhiều luồng đưa khung vào một hàng đợi có giới hạn,
+ * luồng ghi lấy hết các khung đang chờ, gộp vào một bộ đệm và ghi bằng một lần write
+ * nên thứ tự gửi luôn là thứ tự offer. Vòng đời gắn với kết nối: close() gửi nốt rồi dừng luồng.
+ * Nếu có khung giữ kết nối, luồng ghi tự gửi nó mỗi khi hàng đợi trống quá keepaliveMillis.
+ */
+public final class FrameWriter {
+    private static final String TAG = "FrameWriter";
+    private static final int STAGING_SIZE = 16 * 1024;
+
+    // Đánh dấu kết thúc trong hàng đợi
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final WritableByteChannel channel;
+    private final ArrayBlockingQueue<ByteBuffer> queue;
+    private final Thread thread;
+    // Khung giữ kết nối (chế độ đọc), null nếu không gửi
+    private final ByteBuffer keepalive;
+    private final long keepaliveMillis;
+    private volatile boolean closed;
+
+    public FrameWriter(WritableByteChannel channel, int capacity, String name) {
+        this(channel, capacity, name, null, 0);
+    }
+
+    // keepalive ở chế độ đọc, được gửi lại nguyên vẹn mỗi lần kết nối im lặng keepaliveMillis
+    public FrameWriter(WritableByteChannel channel, int capacity, String name,
+                       ByteBuffer keepalive, long keepaliveMillis) {
+        this.channel = channel;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.keepalive = keepalive;
+        this.keepaliveMillis = keepaliveMillis;
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // frame ở chế độ đọc và không được sửa sau khi gọi; trả về false nếu hàng đợi đầy hoặc đã đóng
+    public boolean offer(ByteBuffer frame) {
+        return !closed && queue.offer(frame);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Gửi các khung đã nhận rồi dừng luồng ghi, chờ tối đa timeoutMillis
+    public void close(long timeoutMillis) {
+        if (closed) return;
+        closed = true;
+        if (!queue.offer(END)) {
+            thread.interrupt();
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        ByteBuffer staging = ByteBuffer.allocateDirect(STAGING_SIZE);
+        List<ByteBuffer> batch = new ArrayList<>();
+        try {
+            boolean end = false;
+            while (!end) {
+                ByteBuffer first = next();
+                if (first == null) {
+                    writeDirect(keepalive.duplicate());
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                for (int i = 0; i < batch.size() && !end; i++) {
+                    ByteBuffer frame = batch.get(i);
+                    if (frame == END) {
+                        end = true;
+                    } else if (frame.remaining() > staging.capacity()) {
+                        writeFully(staging);
+                        writeDirect(frame);
+                    } else {
+                        if (frame.remaining() > staging.remaining()) {
+                            writeFully(staging);
+                        }
+                        staging.put(frame);
+                    }
+                }
+                writeFully(staging);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // close() hết thời gian chờ
+        } catch (IOException e) {
+            if (!closed) {
+                Log.e(TAG, "Write failed", e);
+            }
+        } finally {
+            closed = true;
+            queue.clear();
+        }
+    }
+
+    // Khung kế tiếp trong hàng đợi, hoặc null khi đã tới lúc gửi khung giữ kết nối
+    private ByteBuffer next() throws InterruptedException {
+        if (keepalive == null) return queue.take();
+        return queue.poll(keepaliveMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // staging ở chế độ ghi; được xoá sau khi ghi xong
+    private void writeFully(ByteBuffer staging) throws IOException {
+        staging.flip();
+        writeDirect(staging);
+        staging.clear();
+    }
+
+    private void writeDirect(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
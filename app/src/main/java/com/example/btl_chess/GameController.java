@@ -0,0 +1,146 @@
+package com.example.btl_chess;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.example.btl_chess.db.OpeningBook;
+import com.example.btl_chess.engine.Engine;
+import com.example.btl_chess.engine.SearchResult;
+
+/**
+ * Chạy phần tính toán của ván cờ ngoài luồng UI: kiểm tra luật và gợi ý nước đi trên luồng
+ * "game", engine suy nghĩ trên luồng "engine" riêng để không chặn các yêu cầu gợi ý. Kết quả
+ * được gửi về luồng UI kèm khoá của thế cờ đã dùng để tính, bên nhận bỏ qua kết quả cũ.
+ * Mọi phương thức public gọi từ luồng UI.
+ */
+public final class GameController {
+    // Kết quả gợi ý, gọi trên luồng UI
+    public interface HintCallback {
+        void onHints(int from, long key, long targets);
+    }
+
+    public interface Listener {
+        // Người chơi chọn một nước hợp lệ; gọi trên luồng game, bên nhận tự áp dụng hoặc gửi đi
+        void onMoveChosen(int move);
+
+        // Engine đã tìm xong cho đúng thế cờ hiện tại; gọi trên luồng game
+        void onEngineMove(int move, SearchResult result);
+    }
+
+    private final ChessGame game;
+    private final Listener listener;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread gameThread;
+    private final Handler gameHandler;
+    private final HandlerThread engineThread;
+    private final Handler engineHandler;
+
+    // Tăng mỗi lần chọn lại quân; yêu cầu gợi ý mang số cũ bị bỏ
+    private volatile int hintGeneration;
+    // Tăng mỗi lần bắt đầu hoặc dừng suy nghĩ; kết quả mang số cũ bị bỏ
+    private volatile int thinkGeneration;
+    // Tạo trên luồng engine ở lần suy nghĩ đầu tiên
+    private volatile Engine engine;
+    private volatile OpeningBook book;
+
+    public GameController(ChessGame game, Listener listener) {
+        this.game = game;
+        this.listener = listener;
+        gameThread = new HandlerThread("game");
+        gameThread.start();
+        gameHandler = new Handler(gameThread.getLooper());
+        engineThread = new HandlerThread("engine", Process.THREAD_PRIORITY_BACKGROUND);
+        engineThread.start();
+        engineHandler = new Handler(engineThread.getLooper());
+    }
+
+    // Tính các ô đích hợp lệ của quân tại from; yêu cầu trước đó chưa xong bị huỷ
+    public void requestHints(int from, HintCallback callback) {
+        int generation = ++hintGeneration;
+        gameHandler.post(() -> {
+            if (generation != hintGeneration) return;
+            Position position = game.snapshot();
+            long targets = MoveGenerator.legalTargets(position, from);
+            long key = position.key();
+            uiHandler.post(() -> {
+                if (generation == hintGeneration) {
+                    callback.onHints(from, key, targets);
+                }
+            });
+        });
+    }
+
+    // Người chơi bỏ chọn hoặc chọn quân khác
+    public void cancelHints() {
+        hintGeneration++;
+    }
+
+    // Kiểm tra nước from-to trên luồng game; nước hợp lệ được chuyển cho Listener.onMoveChosen
+    public void submitMove(Square from, Square to) {
+        gameHandler.post(() -> {
+            int move = game.findMove(from, to);
+            if (move != Move.NONE) {
+                listener.onMoveChosen(move);
+            }
+        });
+    }
+
+    // Engine tìm nước cho thế cờ hiện tại trong tối đa timeMillis
+    public void think(long timeMillis) {
+        int generation = ++thinkGeneration;
+        engineHandler.post(() -> {
+            Engine e = engine;
+            if (e == null) {
+                e = new Engine();
+                engine = e;
+            }
+            // stopThinking() tăng thinkGeneration rồi mới gọi stop(): lấy token trước khi kiểm tra
+            // generation thì lệnh dừng đến sau lần kiểm tra vẫn làm search dừng ngay
+            int stopToken = e.stopToken();
+            if (generation != thinkGeneration) return;
+            e.setBook(book);
+            Position position = game.snapshot();
+            SearchResult result = e.search(position, timeMillis, Engine.MAX_DEPTH, stopToken);
+            gameHandler.post(() -> {
+                // Bị dừng, hoặc thế cờ đã đổi trong lúc engine nghĩ thì nước này không còn đúng
+                if (generation != thinkGeneration || game.positionKey() != position.key()) return;
+                if (result.getBestMove() != Move.NONE) {
+                    listener.onEngineMove(result.getBestMove(), result);
+                }
+            });
+        });
+    }
+
+    // Sách khai cuộc cho engine từ lần suy nghĩ sau, null để tắt; bên gọi giữ và đóng sách
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    // Dừng engine ngay, bỏ kết quả đang tìm
+    public void stopThinking() {
+        thinkGeneration++;
+        Engine e = engine;
+        if (e != null) {
+            e.stop();
+        }
+    }
+
+    // Dừng cả hai luồng; không dùng lại được sau khi gọi
+    public void shutdown() {
+        cancelHints();
+        stopThinking();
+        gameHandler.removeCallbacksAndMessages(null);
+        engineHandler.removeCallbacksAndMessages(null);
+        uiHandler.removeCallbacksAndMessages(null);
+        engineHandler.post(() -> {
+            Engine e = engine;
+            if (e != null) {
+                e.shutdown();
+            }
+        });
+        engineThread.quitSafely();
+        gameThread.quitSafely();
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.btl_chess;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Một phòng chơi trên server: hai người chơi và ván cờ riêng của họ.
+ * Kết nối vào trước cầm quân trắng. Mỗi người chơi có một mã phiên; khi mất kết nối,
+ * chỗ của họ được giữ một thời gian để nối lại. Người xem chỉ nhận các nước đã được chấp nhận.
+ */
+final class GameRoom {
+    final int id;
+    final ChessGame game = new ChessGame();
+    // Kết nối hiện tại theo màu quân, null khi người chơi đó đang mất kết nối
+    final Connection[] players = new Connection[2];
+    final long[] sessions = new long[2];
+    // Thời điểm mất kết nối theo màu quân
+    final long[] leftAt = new long[2];
+    final List<Connection> watchers = new ArrayList<>();
+
+    // Các nước đã được chấp nhận theo thứ tự, để gửi lại khi client cần đồng bộ
+    int[] moves = new int[64];
+    int moveCount;
+    // Ván đã kết thúc (chiếu hết, hết nước, hoà theo luật hoặc xin thua), không nhận thêm nước
+    boolean finished;
+
+    // Đồng hồ do server giữ: thời gian mỗi bên đã dùng, tính từ lúc server nhận nước
+    final long[] clockMillis = new long[2];
+    // Thời điểm bên đang tới lượt bắt đầu nghĩ
+    long turnStartedAt;
+
+    GameRoom(int id, long whiteSession, long blackSession, long now) {
+        this.id = id;
+        sessions[Piece.WHITE] = whiteSession;
+        sessions[Piece.BLACK] = blackSession;
+        turnStartedAt = now;
+    }
+
+    void attach(Connection c, int color) {
+        players[color] = c;
+        c.room = this;
+        c.color = color;
+    }
+
+    void detach(Connection c, long now) {
+        players[c.color] = null;
+        leftAt[c.color] = now;
+        c.room = null;
+    }
+
+    // Màu quân của phiên session, hoặc -1 nếu không thuộc phòng này
+    int colorOf(long session) {
+        if (sessions[Piece.WHITE] == session) return Piece.WHITE;
+        if (sessions[Piece.BLACK] == session) return Piece.BLACK;
+        return -1;
+    }
+
+    // Ghi nhận nước vừa được chấp nhận của bên color và tính thời gian bên đó đã nghĩ
+    void addMove(int move, int color, long now) {
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, moveCount * 2);
+        }
+        moves[moveCount++] = move;
+        clockMillis[color] += now - turnStartedAt;
+        turnStartedAt = now;
+    }
+
+    // Ván hoà theo luật: lặp lại ba lần hoặc 50 nước không ăn quân, không đi tốt
+    boolean isDrawByRule() {
+        return game.isThreefoldRepetition() || game.isFiftyMoveRule();
+    }
+}
@@ -5,22 +5,38 @@ import android.util.Log;
 import android.widget.Button;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import com.example.btl_chess.db.OpeningBook;
+import com.example.btl_chess.engine.SearchResult;
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.net.ConnectException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Scanner;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity implements ChessDelegate {
     private static final String TAG = "MainActivity";
     private final String socketHost = "10.0.2.2"; // Địa chỉ IP cho emulator
-    private final int socketGuestPort = 50000; // Cổng cho socket client
+    private final int socketGuestPort = ChessServer.DEFAULT_PORT; // Cổng cho socket client
+    // Sách khai cuộc trong thư mục riêng của ứng dụng, dựng bằng OpeningBook.main từ tệp PGN
+    private static final String BOOK_FILE = "book.bin";
+    // Thời gian engine nghĩ cho mỗi nước
+    private static final long ENGINE_MILLIS = 2000;
     private ChessView chessView;
     private ChessServer chessServer; // Khai báo ChessServer instance
     private ChessGame chessGame;
-    private PrintWriter printWriter;
+    // Luật, gợi ý và engine chạy ngoài luồng UI
+    private GameController gameController;
+    private volatile ChessClient chessClient;
+    // Một luồng cho các thao tác chặn (mở/đóng server, đóng kết nối, mở sách khai cuộc), dừng cùng Activity
+    private final ExecutorService networkExecutor = Executors.newSingleThreadExecutor();
+    // Chỉ được dùng trên networkExecutor
+    private OpeningBook openingBook;
+    // Màu quân server giao cho máy này, -1 khi chưa vào phòng, WireProtocol.SPECTATOR khi chỉ xem
+    private volatile int myColor = -1;
+    // Số thứ tự nước cuối đã áp dụng từ server; ván có thể bắt đầu từ ảnh chụp nên không dùng chessGame.ply()
+    private volatile int appliedSeq;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -28,67 +44,227 @@ public class MainActivity extends AppCompatActivity implements ChessDelegate {
         setContentView(R.layout.activity_main);
 
         chessGame = new ChessGame();
+        gameController = new GameController(chessGame, gameListener);
         chessView = findViewById(R.id.chess_view);
         Button resetButton = findViewById(R.id.reset_button);
         Button listenButton = findViewById(R.id.listen_button);
         Button connectButton = findViewById(R.id.connect_button);
+        Button watchButton = findViewById(R.id.watch_button);
+        Button engineButton = findViewById(R.id.engine_button);
         chessView.setChessDelegate(this);
 
         resetButton.setOnClickListener(v -> resetGame());
-//        listenButton.setOnClickListener(v -> startServer());
+        listenButton.setOnClickListener(v -> startServer());
         connectButton.setOnClickListener(v -> connectClient());
+        watchButton.setOnClickListener(v -> watchGame());
+        // Engine đi cho bên tới lượt; qua mạng chỉ gửi khi đó là lượt của máy này
+        engineButton.setOnClickListener(v -> gameController.think(ENGINE_MILLIS));
+        networkExecutor.execute(this::openBook);
+    }
+
+    // Không có sách thì engine luôn tìm kiếm
+    private void openBook() {
+        File path = new File(getFilesDir(), BOOK_FILE);
+        if (!path.exists()) return;
+        try {
+            openingBook = OpeningBook.open(path);
+            gameController.setBook(openingBook);
+            Log.d(TAG, "Opening book: " + openingBook.size() + " entries");
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open opening book", e);
+        }
+    }
+
+    private void closeBook() {
+        OpeningBook book = openingBook;
+        openingBook = null;
+        if (book == null) return;
+        try {
+            // Vùng ánh xạ vẫn đọc được sau khi đóng tệp nên engine đang tra sách không bị lỗi
+            book.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot close opening book", e);
+        }
     }
 
     private void resetGame() {
+        gameController.stopThinking();
         chessGame.reset();
-        chessView.invalidate();
-        if (chessServer != null) {
-            chessServer.closeServerSocket(); // Đóng server socket
-        }
+        chessView.positionChanged();
+        disconnect();
+        stopServer();
     }
 
-//    private void startServer() {
-//        Toast.makeText(this, "Listening on port " + socketGuestPort, Toast.LENGTH_SHORT).show();
-//        chessServer = new ChessServer(socketGuestPort, this);
-//        chessServer.startServer();
-//    }
+    @Override
+    protected void onDestroy() {
+        disconnect();
+        stopServer();
+        gameController.setBook(null);
+        networkExecutor.execute(this::closeBook);
+        networkExecutor.shutdown();
+        gameController.shutdown();
+        super.onDestroy();
+    }
+
+    // Máy này làm server cho các máy khác và tự kết nối vào như một người chơi
+    private void startServer() {
+        if (chessServer != null) return;
+        Toast.makeText(this, "Listening on port " + socketGuestPort, Toast.LENGTH_SHORT).show();
+        ChessServer server = new ChessServer(socketGuestPort);
+        chessServer = server;
+        networkExecutor.execute(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                Log.e(TAG, "Server start failed", e);
+                runOnUiThread(() -> Toast.makeText(this, "Server start failed", Toast.LENGTH_SHORT).show());
+                return;
+            }
+            connectTo("127.0.0.1", false);
+        });
+    }
+
+    private void stopServer() {
+        ChessServer server = chessServer;
+        chessServer = null;
+        if (server != null) {
+            networkExecutor.execute(server::shutdown);
+        }
+    }
 
     private void connectClient() {
         Log.d(TAG, "Socket client connecting ...");
-        Executors.newSingleThreadExecutor().execute(() -> {
-            try {
-                Log.d(TAG, "Connecting to " + socketHost + " on port " + socketGuestPort);
-                Socket socket = new Socket(socketHost, socketGuestPort);
-                receiveMove(socket);
+        connectTo(socketHost, false);
+    }
+
+    // Chỉ xem ván mới nhất trên server, không đi quân
+    private void watchGame() {
+        Log.d(TAG, "Socket client watching ...");
+        connectTo(socketHost, true);
+    }
+
+    private void connectTo(String host, boolean watch) {
+        if (chessClient != null) return;
+        Log.d(TAG, "Connecting to " + host + " on port " + socketGuestPort);
+        ChessClient client = new ChessClient(host, socketGuestPort, frameHandler, new ChessClient.Listener() {
+            @Override
+            public void onConnected(ChessClient client) {
                 Log.d(TAG, "Connected to server!");
-            } catch (ConnectException e) {
-                Log.d(TAG, "Connection failed ...");
-                runOnUiThread(() -> Toast.makeText(this, "Connection failed", Toast.LENGTH_SHORT).show());
-            } catch (IOException e) {
-                Log.e(TAG, "Socket client error", e);
+            }
+
+            @Override
+            public void onDisconnected(ChessClient client, IOException error) {
+                if (chessClient == client) {
+                    chessClient = null;
+                    myColor = -1;
+                    appliedSeq = 0;
+                }
+                if (error instanceof ConnectException) {
+                    Log.d(TAG, "Connection failed ...");
+                    runOnUiThread(() -> Toast.makeText(MainActivity.this, "Connection failed", Toast.LENGTH_SHORT).show());
+                } else if (error != null) {
+                    Log.e(TAG, "Error receiving from server", error);
+                }
             }
         });
+        chessClient = client;
+        if (watch) {
+            client.watch(0);
+        } else {
+            client.connect();
+        }
     }
 
-    private void receiveMove(Socket socket) {
-        try {
-            Scanner scanner = new Scanner(socket.getInputStream());
-            printWriter = new PrintWriter(socket.getOutputStream(), true);
-            while (scanner.hasNextLine()) {
-                String[] move = scanner.nextLine().split(",");
-                int fromCol = Integer.parseInt(move[0]);
-                int fromRow = Integer.parseInt(move[1]);
-                int toCol = Integer.parseInt(move[2]);
-                int toRow = Integer.parseInt(move[3]);
-
-                runOnUiThread(() -> {
-                    chessGame.movePiece(new Square(fromCol, fromRow), new Square(toCol, toRow));
-                    chessView.invalidate();
-                });
+    private void disconnect() {
+        ChessClient client = chessClient;
+        chessClient = null;
+        if (client != null) {
+            networkExecutor.execute(client::close);
+        }
+    }
+
+    // Chạy trên luồng nhận của socket
+    private final WireProtocol.Handler frameHandler = new WireProtocol.Handler() {
+        // Nước đã được server chấp nhận, kể cả nước của chính mình
+        @Override
+        public void onMove(int seq, int move) {
+            int applied = appliedSeq;
+            if (seq <= applied) return;
+            if (seq != applied + 1 || !chessGame.makeMove(move)) {
+                // Lệch với server, xin lại toàn bộ ván
+                requestSync();
+                return;
+            }
+            appliedSeq = seq;
+            chessView.positionChanged();
+            ByteBuffer ack = ByteBuffer.allocate(WireProtocol.ACK_SIZE);
+            WireProtocol.putAck(ack, seq);
+            send(ack);
+        }
+
+        @Override
+        public void onSync(int color, ByteBuffer buffer, int offset, int count) {
+            myColor = color;
+            chessGame.reset();
+            for (int i = 0; i < count; i++) {
+                chessGame.makeMove(WireProtocol.syncMove(buffer, offset, i));
+            }
+            appliedSeq = count;
+            chessView.positionChanged();
+        }
+
+        @Override
+        public void onSession(long session, int color) {
+            myColor = color;
+        }
+
+        // Lỡ quá nhiều nước khi mất kết nối: server gửi thẳng thế cờ hiện tại
+        @Override
+        public void onSnapshot(int seq, int color, ByteBuffer buffer, int offset) throws ProtocolException {
+            Position position = new Position();
+            try {
+                position.readCompact(buffer, offset);
+            } catch (IllegalArgumentException e) {
+                throw new ProtocolException("Bad snapshot: " + e.getMessage());
+            }
+            myColor = color;
+            chessGame.setPosition(position);
+            appliedSeq = seq;
+            chessView.positionChanged();
+        }
+
+        @Override
+        public void onResign(int color) {
+            String text;
+            if (myColor == WireProtocol.SPECTATOR) {
+                text = (color == Piece.WHITE ? "White" : "Black") + " resigned";
+            } else {
+                text = color == myColor ? "You resigned" : "Opponent resigned";
+            }
+            runOnUiThread(() -> Toast.makeText(MainActivity.this, text, Toast.LENGTH_SHORT).show());
+        }
+
+        @Override
+        public void onError(int code, int ply) {
+            Log.d(TAG, "Server rejected: " + code + " at ply " + ply);
+            if (code == WireProtocol.ERR_NO_SESSION) {
+                // Phiên cũ đã hết hạn, server ghép ván mới và gửi SYNC
+                return;
+            }
+            if (code == WireProtocol.ERR_IDLE) {
+                // Kết nối sắp bị đóng, ChessClient tự nối lại phiên và nhận bù các nước bị lỡ
+                return;
+            }
+            if (code == WireProtocol.ERR_OUT_OF_SEQUENCE || ply != appliedSeq) {
+                requestSync();
             }
-        } catch (IOException e) {
-            Log.e(TAG, "Error receiving move from server", e);
         }
+    };
+
+    private void requestSync() {
+        ByteBuffer frame = ByteBuffer.allocate(WireProtocol.syncSize(0));
+        WireProtocol.putSync(frame, 0, new int[0], 0);
+        send(frame);
     }
 
     @Override
@@ -96,87 +272,56 @@ public class MainActivity extends AppCompatActivity implements ChessDelegate {
         return chessGame.pieceAt(square);
     }
 
+    @Override
+    public Position position() {
+        return chessGame.snapshot();
+    }
+
+    @Override
+    public void requestHints(Square from, GameController.HintCallback callback) {
+        gameController.requestHints(from.getIndex(), callback);
+    }
+
+    @Override
+    public void cancelHints() {
+        gameController.cancelHints();
+    }
+
     @Override
     public void movePiece(Square from, Square to) {
-        chessGame.movePiece(from, to);
-        chessView.invalidate();
+        gameController.submitMove(from, to);
+    }
+
+    // Chạy trên luồng game của GameController
+    private final GameController.Listener gameListener = new GameController.Listener() {
+        @Override
+        public void onMoveChosen(int move) {
+            if (chessClient == null) {
+                // Chơi trên một máy: đi ngay
+                if (chessGame.makeMove(move)) {
+                    chessView.positionChanged();
+                }
+                return;
+            }
+            // Khi chơi qua mạng, nước đi chỉ được áp dụng khi server gửi lại xác nhận
+            if (chessGame.getTurn().ordinal() != myColor) return;
+            ByteBuffer frame = ByteBuffer.allocate(WireProtocol.MOVE_SIZE);
+            WireProtocol.putMove(frame, appliedSeq + 1, move);
+            send(frame);
+        }
+
+        @Override
+        public void onEngineMove(int move, SearchResult result) {
+            Log.d(TAG, (result.isBookMove() ? "Book: " : "Engine: ") + result);
+            onMoveChosen(move);
+        }
+    };
 
-        // Gửi nước đi tới client qua ChessServer
-        String moveStr = from.getCol() + "," + from.getRow() + "," + to.getCol() + "," + to.getRow();
-        if (chessServer != null) {
-            chessServer.sendMove(moveStr);
+    // frame ở chế độ ghi, chứa một hoặc nhiều khung liền nhau
+    private void send(ByteBuffer frame) {
+        ChessClient client = chessClient;
+        if (client != null && !client.send(frame)) {
+            Log.d(TAG, "Send queue full, frame dropped");
         }
     }
 }
-
-//class ChessServer {
-//    private static final String TAG = "ChessServer";
-//    private final int port;
-//    private ServerSocket serverSocket;
-//    private PrintWriter printWriter;
-//    private final ChessDelegate delegate;
-//
-//    public ChessServer(int port, ChessDelegate delegate) {
-//        this.port = port;
-//        this.delegate = delegate;
-//    }
-//
-//    public void startServer() {
-//        Executors.newSingleThreadExecutor().execute(() -> {
-//            try {
-//                serverSocket = new ServerSocket(port);
-//                Log.d(TAG, "Server started, waiting for connection on port " + port);
-//                Socket socket = serverSocket.accept();
-//                Log.d(TAG, "Client connected!");
-//                receiveMove(socket);
-//            } catch (IOException e) {
-//                Log.e(TAG, "Server socket error", e);
-//            }
-//        });
-//    }
-//
-//    private void receiveMove(Socket socket) {
-//        try {
-//            Scanner scanner = new Scanner(socket.getInputStream());
-//            printWriter = new PrintWriter(socket.getOutputStream(), true);
-//            while (scanner.hasNextLine()) {
-//                String[] move = scanner.nextLine().split(",");
-//                int fromCol = Integer.parseInt(move[0]);
-//                int fromRow = Integer.parseInt(move[1]);
-//                int toCol = Integer.parseInt(move[2]);
-//                int toRow = Integer.parseInt(move[3]);
-//                delegate.movePiece(new Square(fromCol, fromRow), new Square(toCol, toRow));
-//            }
-//        } catch (IOException e) {
-//            Log.e(TAG, "Error receiving move", e);
-//        } finally {
-//            closeSocket(socket); // Đảm bảo socket được đóng sau khi sử dụng
-//        }
-//    }
-//
-//    public void sendMove(String moveStr) {
-//        if (printWriter != null) {
-//            Executors.newSingleThreadExecutor().execute(() -> printWriter.println(moveStr));
-//        }
-//    }
-//
-//    private void closeSocket(Socket socket) {
-//        if (socket != null && !socket.isClosed()) {
-//            try {
-//                socket.close();
-//            } catch (IOException e) {
-//                Log.e(TAG, "Error closing socket", e);
-//            }
-//        }
-//    }
-//
-//    public void closeServerSocket() {
-//        if (serverSocket != null) {
-//            try {
-//                serverSocket.close();
-//            } catch (IOException e) {
-//                Log.e(TAG, "Error closing server socket", e);
-//            }
-//            serverSocket = null;
-//        }
-//    }
@@ -0,0 +1,77 @@
+package com.example.btl_chess;
+
+/**
+ * Nước đi được nén trong một số int: bit 0-5 là ô đi, bit 6-11 là ô đến, bit 12-15 là cờ loại nước đi.
+ * Cờ bit 2 đánh dấu nước ăn quân, bit 3 đánh dấu phong cấp; hai bit thấp của nước phong cấp
+ * là loại quân được phong (mã, tượng, xe, hậu).
+ */
+public final class Move {
+    public static final int NONE = 0;
+
+    public static final int QUIET = 0;
+    public static final int DOUBLE_PAWN_PUSH = 1;
+    public static final int KING_CASTLE = 2;
+    public static final int QUEEN_CASTLE = 3;
+    public static final int CAPTURE = 4;
+    public static final int EN_PASSANT = 5;
+    public static final int PROMOTION = 8;
+    public static final int PROMOTION_CAPTURE = 12;
+
+    private static final int[] PROMOTION_TYPES = {Piece.KNIGHT, Piece.BISHOP, Piece.ROOK, Piece.QUEEN};
+
+    private Move() {
+    }
+
+    public static int make(int from, int to, int flag) {
+        return from | (to << 6) | (flag << 12);
+    }
+
+    // promotionIndex: 0 = mã, 1 = tượng, 2 = xe, 3 = hậu
+    public static int makePromotion(int from, int to, int promotionIndex, boolean capture) {
+        return make(from, to, (capture ? PROMOTION_CAPTURE : PROMOTION) | promotionIndex);
+    }
+
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static int flag(int move) {
+        return (move >>> 12) & 0xF;
+    }
+
+    public static boolean isCapture(int move) {
+        return (flag(move) & CAPTURE) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (flag(move) & PROMOTION) != 0;
+    }
+
+    public static boolean isCastle(int move) {
+        int flag = flag(move);
+        return flag == KING_CASTLE || flag == QUEEN_CASTLE;
+    }
+
+    // Loại quân (theo Piece) được phong cấp
+    public static int promotionType(int move) {
+        return PROMOTION_TYPES[flag(move) & 3];
+    }
+
+    // Dạng ký hiệu toạ độ, ví dụ "e2e4" hoặc "e7e8q"
+    public static String toUci(int move) {
+        StringBuilder sb = new StringBuilder(5);
+        sb.append(squareName(from(move))).append(squareName(to(move)));
+        if (isPromotion(move)) {
+            sb.append("nbrq".charAt(flag(move) & 3));
+        }
+        return sb.toString();
+    }
+
+    public static String squareName(int sq) {
+        return "" + (char) ('a' + Bitboards.col(sq)) + (char) ('1' + Bitboards.row(sq));
+    }
+}
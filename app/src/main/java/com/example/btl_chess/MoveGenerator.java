@@ -0,0 +1,322 @@
+package com.example.btl_chess;
+
+/**
+ * Sinh nước đi trực tiếp từ bitboard. Các nước đi được ghi dưới dạng {@link Move} vào mảng
+ * do người gọi cấp và tái sử dụng, nên việc sinh nước đi không cấp phát bộ nhớ.
+ *
+ * <p>{@link #generateAll} sinh nước đi giả hợp lệ (không xét vua bị chiếu, không gồm nhập thành).
+ * {@link #generateLegal} chỉ sinh nước đi hợp lệ cho bên tới lượt: chiếu và ghim được xác định
+ * bằng bản đồ tấn công nên không cần thử đi rồi hoàn tác từng nước.
+ */
+public final class MoveGenerator {
+    // Đủ cho mọi thế cờ hợp lệ (tối đa 218 nước đi)
+    public static final int MAX_MOVES = 256;
+
+    private static final int E1 = 4;
+    private static final int E8 = 60;
+
+    private MoveGenerator() {
+    }
+
+    public static int generateAll(Position p, Player side, int[] moves) {
+        return generateAll(p, side.ordinal(), moves, 0);
+    }
+
+    // Ghi mọi nước đi của một bên vào moves bắt đầu từ vị trí count, trả về số phần tử mới
+    public static int generateAll(Position p, int color, int[] moves, int count) {
+        long pieces = p.colorBits(color);
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            count = generateFrom(p, from, moves, count);
+        }
+        return count;
+    }
+
+    public static int generateFrom(Position p, int from, int[] moves, int count) {
+        if (p.pieceAt(from) == Piece.NONE) return count;
+        return addMoves(p, from, targets(p, from), moves, count);
+    }
+
+    // Bitboard các ô đích giả hợp lệ của quân đứng tại from
+    public static long targets(Position p, int from) {
+        int piece = p.pieceAt(from);
+        if (piece == Piece.NONE) return 0L;
+
+        int color = Piece.color(piece);
+        int type = Piece.type(piece);
+        if (type == Piece.PAWN) {
+            long targets = pawnTargets(p, from, color);
+            if (p.epSquare() != Position.NO_SQUARE && color == p.sideToMove()) {
+                targets |= Bitboards.pawnAttacks(color, from) & Bitboards.bit(p.epSquare());
+            }
+            return targets;
+        }
+        return Bitboards.attacks(type, from, p.occupied()) & ~p.colorBits(color);
+    }
+
+    // Sinh mọi nước đi hợp lệ của bên tới lượt, trả về số nước đi
+    public static int generateLegal(Position p, int[] moves) {
+        int us = p.sideToMove();
+        int king = p.kingSquare(us);
+        if (king == Position.NO_SQUARE) return 0;
+
+        long occupied = p.occupied();
+        long checkers = p.attackersTo(king, occupied) & p.colorBits(us ^ 1);
+        long pinned = pinnedPieces(p, us, king);
+        long danger = p.attackedSquares(us ^ 1, occupied ^ Bitboards.bit(king));
+
+        int count = 0;
+        long pieces = p.colorBits(us);
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            long targets = legalTargets(p, from, king, checkers, pinned, danger);
+            count = addMoves(p, from, targets, moves, count);
+        }
+        return count;
+    }
+
+    // Chỉ sinh các nước ăn quân và phong cấp hợp lệ, dùng cho tìm kiếm tĩnh
+    public static int generateCaptures(Position p, int[] moves) {
+        int us = p.sideToMove();
+        int king = p.kingSquare(us);
+        if (king == Position.NO_SQUARE) return 0;
+
+        long occupied = p.occupied();
+        long enemy = p.colorBits(us ^ 1);
+        long checkers = p.attackersTo(king, occupied) & enemy;
+        long pinned = pinnedPieces(p, us, king);
+        long danger = p.attackedSquares(us ^ 1, occupied ^ Bitboards.bit(king));
+        long pawns = p.pieces(us, Piece.PAWN);
+        long ep = p.epSquare() == Position.NO_SQUARE ? 0L : Bitboards.bit(p.epSquare());
+
+        int count = 0;
+        long pieces = p.colorBits(us);
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            long wanted = (pawns & Bitboards.bit(from)) != 0
+                    ? enemy | ep | Bitboards.RANK_1 | Bitboards.RANK_8
+                    : enemy;
+            long targets = legalTargets(p, from, king, checkers, pinned, danger) & wanted;
+            count = addMoves(p, from, targets, moves, count);
+        }
+        return count;
+    }
+
+    // Bitboard các ô đích hợp lệ của quân tại from; rỗng nếu quân đó không thuộc bên tới lượt
+    public static long legalTargets(Position p, int from) {
+        int us = p.sideToMove();
+        int king = p.kingSquare(us);
+        if (king == Position.NO_SQUARE || (p.colorBits(us) & Bitboards.bit(from)) == 0) return 0L;
+
+        long occupied = p.occupied();
+        long checkers = p.attackersTo(king, occupied) & p.colorBits(us ^ 1);
+        long danger = from == king ? p.attackedSquares(us ^ 1, occupied ^ Bitboards.bit(king)) : 0L;
+        return legalTargets(p, from, king, checkers, pinnedPieces(p, us, king), danger);
+    }
+
+    // Tìm nước đi hợp lệ từ from tới to; promotionType chỉ dùng khi tốt phong cấp
+    public static int findLegalMove(Position p, int from, int to, int promotionType) {
+        if ((legalTargets(p, from) & Bitboards.bit(to)) == 0) return Move.NONE;
+        int[] moves = new int[4];
+        int count = addMoves(p, from, Bitboards.bit(to), moves, 0);
+        for (int i = 0; i < count; i++) {
+            if (!Move.isPromotion(moves[i]) || Move.promotionType(moves[i]) == promotionType) {
+                return moves[i];
+            }
+        }
+        return Move.NONE;
+    }
+
+    public static boolean hasLegalMoves(Position p) {
+        int us = p.sideToMove();
+        int king = p.kingSquare(us);
+        if (king == Position.NO_SQUARE) return false;
+
+        long occupied = p.occupied();
+        long checkers = p.attackersTo(king, occupied) & p.colorBits(us ^ 1);
+        long pinned = pinnedPieces(p, us, king);
+        long danger = p.attackedSquares(us ^ 1, occupied ^ Bitboards.bit(king));
+        long pieces = p.colorBits(us);
+        while (pieces != 0) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            pieces &= pieces - 1;
+            if (legalTargets(p, from, king, checkers, pinned, danger) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Đếm số nút lá ở độ sâu depth, dùng để đối chiếu với các bảng perft chuẩn
+    public static long perft(Position root, int depth) {
+        if (depth <= 0) return 1;
+        return perft(root.copy(), new int[depth][MAX_MOVES], depth);
+    }
+
+    private static long perft(Position p, int[][] moves, int depth) {
+        int[] buffer = moves[depth - 1];
+        int count = generateLegal(p, buffer);
+        if (depth == 1) return count;
+
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            p.makeMove(buffer[i]);
+            nodes += perft(p, moves, depth - 1);
+            p.unmakeMove();
+        }
+        return nodes;
+    }
+
+    private static long legalTargets(Position p, int from, int king, long checkers, long pinned, long danger) {
+        int us = p.sideToMove();
+        long own = p.colorBits(us);
+
+        if (from == king) {
+            long targets = Bitboards.KING_ATTACKS[king] & ~own & ~danger;
+            if (checkers == 0) {
+                targets |= castlingTargets(p, us, danger);
+            }
+            return targets;
+        }
+
+        // Bị chiếu đôi thì chỉ vua được đi
+        if (Long.bitCount(checkers) > 1) return 0L;
+
+        int piece = p.pieceAt(from);
+        long targets = Piece.type(piece) == Piece.PAWN
+                ? pawnTargets(p, from, us)
+                : Bitboards.attacks(Piece.type(piece), from, p.occupied()) & ~own;
+
+        // Khi bị chiếu, chỉ được ăn quân chiếu hoặc chặn đường chiếu
+        if (checkers != 0) {
+            targets &= checkers | Bitboards.between(king, Long.numberOfTrailingZeros(checkers));
+        }
+        // Quân bị ghim chỉ được đi trên đường thẳng nối vua và quân ghim
+        if ((pinned & Bitboards.bit(from)) != 0) {
+            targets &= Bitboards.line(king, from);
+        }
+
+        int ep = p.epSquare();
+        if (Piece.type(piece) == Piece.PAWN && ep != Position.NO_SQUARE
+                && (Bitboards.pawnAttacks(us, from) & Bitboards.bit(ep)) != 0
+                && isLegalEnPassant(p, from, ep, king)) {
+            targets |= Bitboards.bit(ep);
+        }
+        return targets;
+    }
+
+    // Các quân của bên color đang bị ghim vào vua của mình
+    private static long pinnedPieces(Position p, int color, int king) {
+        int them = color ^ 1;
+        long enemy = p.colorBits(them);
+        long queens = p.pieces(them, Piece.QUEEN);
+        long snipers = (Bitboards.rookAttacks(king, enemy) & (p.pieces(them, Piece.ROOK) | queens))
+                | (Bitboards.bishopAttacks(king, enemy) & (p.pieces(them, Piece.BISHOP) | queens));
+
+        long pinned = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = Bitboards.between(king, sniper) & p.occupied();
+            if (Long.bitCount(blockers) == 1) {
+                pinned |= blockers & p.colorBits(color);
+            }
+        }
+        return pinned;
+    }
+
+    // Bắt tốt qua đường lấy đi hai quân trên cùng một hàng nên kiểm tra trực tiếp vua có bị lộ không
+    private static boolean isLegalEnPassant(Position p, int from, int ep, int king) {
+        int us = p.sideToMove();
+        int them = us ^ 1;
+        int captured = us == Piece.WHITE ? ep - 8 : ep + 8;
+        long occupied = (p.occupied() ^ Bitboards.bit(from) ^ Bitboards.bit(captured)) | Bitboards.bit(ep);
+        long queens = p.pieces(them, Piece.QUEEN);
+        long attackers = (Bitboards.rookAttacks(king, occupied) & (p.pieces(them, Piece.ROOK) | queens))
+                | (Bitboards.bishopAttacks(king, occupied) & (p.pieces(them, Piece.BISHOP) | queens))
+                | (Bitboards.KNIGHT_ATTACKS[king] & p.pieces(them, Piece.KNIGHT))
+                | (Bitboards.pawnAttacks(us, king) & p.pieces(them, Piece.PAWN) & ~Bitboards.bit(captured));
+        return attackers == 0;
+    }
+
+    private static long castlingTargets(Position p, int us, long danger) {
+        int rights = p.castlingRights();
+        int kingFrom = us == Piece.WHITE ? E1 : E8;
+        int rook = Piece.make(us, Piece.ROOK);
+        long occupied = p.occupied();
+        long targets = 0L;
+
+        int kingside = us == Piece.WHITE ? Position.WHITE_KINGSIDE : Position.BLACK_KINGSIDE;
+        if ((rights & kingside) != 0 && p.pieceAt(kingFrom + 3) == rook
+                && (Bitboards.between(kingFrom, kingFrom + 3) & occupied) == 0
+                && (danger & (Bitboards.bit(kingFrom + 1) | Bitboards.bit(kingFrom + 2))) == 0) {
+            targets |= Bitboards.bit(kingFrom + 2);
+        }
+        int queenside = us == Piece.WHITE ? Position.WHITE_QUEENSIDE : Position.BLACK_QUEENSIDE;
+        if ((rights & queenside) != 0 && p.pieceAt(kingFrom - 4) == rook
+                && (Bitboards.between(kingFrom, kingFrom - 4) & occupied) == 0
+                && (danger & (Bitboards.bit(kingFrom - 1) | Bitboards.bit(kingFrom - 2))) == 0) {
+            targets |= Bitboards.bit(kingFrom - 2);
+        }
+        return targets;
+    }
+
+    private static long pawnTargets(Position p, int from, int color) {
+        long empty = ~p.occupied();
+        long targets = Bitboards.pawnAttacks(color, from) & p.colorBits(color ^ 1);
+
+        // Đi thẳng 1 ô, và 2 ô nếu tốt còn ở hàng xuất phát
+        int row = Bitboards.row(from);
+        if (color == Piece.WHITE) {
+            long push = (Bitboards.bit(from) << 8) & empty;
+            targets |= push;
+            if (row == 1) {
+                targets |= (push << 8) & empty;
+            }
+        } else {
+            long push = (Bitboards.bit(from) >>> 8) & empty;
+            targets |= push;
+            if (row == 6) {
+                targets |= (push >>> 8) & empty;
+            }
+        }
+        return targets;
+    }
+
+    // Chuyển bitboard ô đích thành các nước đi kèm cờ loại nước đi
+    private static int addMoves(Position p, int from, long targets, int[] moves, int count) {
+        int piece = p.pieceAt(from);
+        int type = Piece.type(piece);
+        long enemy = p.colorBits(Piece.color(piece) ^ 1);
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            boolean capture = (enemy & Bitboards.bit(to)) != 0;
+
+            if (type == Piece.PAWN) {
+                if ((Bitboards.bit(to) & (Bitboards.RANK_1 | Bitboards.RANK_8)) != 0) {
+                    for (int promotion = 3; promotion >= 0; promotion--) {
+                        moves[count++] = Move.makePromotion(from, to, promotion, capture);
+                    }
+                    continue;
+                }
+                if (to == p.epSquare() && !capture) {
+                    moves[count++] = Move.make(from, to, Move.EN_PASSANT);
+                    continue;
+                }
+                if (Math.abs(to - from) == 16) {
+                    moves[count++] = Move.make(from, to, Move.DOUBLE_PAWN_PUSH);
+                    continue;
+                }
+            } else if (type == Piece.KING && Math.abs(to - from) == 2) {
+                moves[count++] = Move.make(from, to, to > from ? Move.KING_CASTLE : Move.QUEEN_CASTLE);
+                continue;
+            }
+            moves[count++] = Move.make(from, to, capture ? Move.CAPTURE : Move.QUIET);
+        }
+        return count;
+    }
+}
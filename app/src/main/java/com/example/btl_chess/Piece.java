@@ -0,0 +1,72 @@
+package com.example.btl_chess;
+
+import java.util.Arrays;
+
+/**
+ * Mã hoá quân cờ thành số nguyên nhỏ để dùng làm chỉ số bitboard và mailbox.
+ * Mã quân = màu * 6 + loại, loại theo thứ tự của {@link Chessman}, màu theo {@link Player}.
+ */
+public final class Piece {
+    public static final int NONE = -1;
+    public static final int COUNT = 12;
+
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    public static final int KING = 0;
+    public static final int QUEEN = 1;
+    public static final int BISHOP = 2;
+    public static final int ROOK = 3;
+    public static final int KNIGHT = 4;
+    public static final int PAWN = 5;
+
+    private static final Player[] PLAYERS = Player.values();
+    private static final Chessman[] CHESSMEN = Chessman.values();
+
+    // Ký hiệu FEN theo mã quân: chữ hoa cho quân trắng, chữ thường cho quân đen
+    private static final String CHARS = "KQBRNPkqbrnp";
+    private static final byte[] FROM_CHAR = new byte[128];
+
+    static {
+        Arrays.fill(FROM_CHAR, (byte) NONE);
+        for (int piece = 0; piece < COUNT; piece++) {
+            FROM_CHAR[CHARS.charAt(piece)] = (byte) piece;
+        }
+    }
+
+    private Piece() {
+    }
+
+    public static int make(int color, int type) {
+        return color * 6 + type;
+    }
+
+    public static int make(Player player, Chessman chessman) {
+        return make(player.ordinal(), chessman.ordinal());
+    }
+
+    public static int color(int piece) {
+        return piece < 6 ? WHITE : BLACK;
+    }
+
+    public static int type(int piece) {
+        return piece < 6 ? piece : piece - 6;
+    }
+
+    public static char toChar(int piece) {
+        return CHARS.charAt(piece);
+    }
+
+    // Mã quân của ký hiệu FEN c, hoặc NONE nếu c không phải ký hiệu quân
+    public static int fromChar(int c) {
+        return c >= 0 && c < 128 ? FROM_CHAR[c] : NONE;
+    }
+
+    public static Player player(int piece) {
+        return PLAYERS[color(piece)];
+    }
+
+    public static Chessman chessman(int piece) {
+        return CHESSMEN[type(piece)];
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.btl_chess;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ảnh các quân cờ đã thu nhỏ sẵn đúng kích thước một ô, dùng chung cho cả tiến trình
+ * (mọi ChessView, kể cả khi Activity được tạo lại). Ảnh gốc được giải mã với inSampleSize
+ * để không phải nạp bản đầy đủ, trên một luồng nền qua {@link #load}; luồng UI chỉ đọc bằng
+ * {@link #peek}. Giữ vài kích thước gần nhất (LRU) để hai bàn cờ khác cỡ không đẩy nhau ra;
+ * bộ nhớ được trả lại khi hệ thống báo onTrimMemory.
+ */
+public final class PieceAtlas {
+    // Số kích thước giữ cùng lúc
+    private static final int MAX_SIZES = 2;
+
+    private static final Object LOCK = new Object();
+
+    /** Nhận ảnh đã giải mã; được gọi trên luồng nền. */
+    public interface Callback {
+        void onLoaded(int size, Bitmap[] bitmaps);
+    }
+
+    // Các trường dưới đây được bảo vệ bởi LOCK
+    private static final Map<Integer, Bitmap[]> cache = new LinkedHashMap<Integer, Bitmap[]>(4, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Bitmap[]> eldest) {
+            // Không recycle bộ bị bỏ vì view khác có thể vẫn đang vẽ nó
+            return size() > MAX_SIZES;
+        }
+    };
+    private static ExecutorService executor;
+    private static boolean registered;
+
+    private PieceAtlas() {
+    }
+
+    // Đăng ký nhận onTrimMemory; gọi nhiều lần không sao
+    public static void register(Context context) {
+        synchronized (LOCK) {
+            if (registered) return;
+            registered = true;
+        }
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                // Giao diện đã ẩn: khi hiện lại, view nạp lại qua load()
+                if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                    clear();
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                clear();
+            }
+        });
+    }
+
+    // Ảnh các quân cỡ size nếu đã được giải mã, hoặc null; không chặn, dùng được trên luồng UI
+    public static Bitmap[] peek(int size) {
+        synchronized (LOCK) {
+            return cache.get(size);
+        }
+    }
+
+    /**
+     * Giải mã ảnh các quân theo mã quân của Piece, mỗi ảnh size x size điểm ảnh, trên luồng nền
+     * rồi gọi callback trên luồng đó. Kích thước đã có sẵn thì không giải mã lại. Mảng nhận được
+     * không được sửa.
+     */
+    public static void load(Resources res, int size, Callback callback) {
+        ExecutorService e;
+        synchronized (LOCK) {
+            if (executor == null) {
+                executor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "piece-atlas");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            e = executor;
+        }
+        // Một luồng duy nhất nên các yêu cầu cùng cỡ nối nhau và chỉ yêu cầu đầu tiên giải mã
+        e.execute(() -> callback.onLoaded(size, get(res, size)));
+    }
+
+    private static Bitmap[] get(Resources res, int size) {
+        Bitmap[] bitmaps = peek(size);
+        if (bitmaps != null) return bitmaps;
+        Bitmap[] scaled = new Bitmap[Piece.COUNT];
+        for (int piece = 0; piece < Piece.COUNT; piece++) {
+            scaled[piece] = decode(res, ChessPiece.resIdOf(piece), size);
+        }
+        synchronized (LOCK) {
+            cache.put(size, scaled);
+        }
+        return scaled;
+    }
+
+    // Bỏ các ảnh đang giữ; bộ nhớ được thu hồi khi không còn view nào dùng
+    public static void clear() {
+        synchronized (LOCK) {
+            cache.clear();
+        }
+    }
+
+    private static Bitmap decode(Resources res, int resId, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        // Tự thu nhỏ theo size thay vì để hệ thống phóng theo mật độ màn hình
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(res, resId, options);
+
+        // inSampleSize lớn nhất (luỹ thừa của 2) mà ảnh giải mã vẫn không nhỏ hơn size
+        int sample = 1;
+        int side = Math.min(options.outWidth, options.outHeight);
+        while (side / (sample * 2) >= size) {
+            sample *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sample;
+        Bitmap decoded = BitmapFactory.decodeResource(res, resId, options);
+        if (decoded == null) return null;
+        if (decoded.getWidth() == size && decoded.getHeight() == size) return decoded;
+
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, size, size, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,743 @@
+package com.example.btl_chess;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lõi trạng thái bàn cờ: 12 bitboard (mỗi loại quân một bitboard) cùng mailbox byte[64]
+ * để tra quân tại một ô trong O(1), kèm lượt đi, quyền nhập thành và ô bắt tốt qua đường.
+ * Khoá Zobrist của thế cờ được cập nhật tăng dần theo từng thay đổi trên bàn cờ.
+ */
+public final class Position {
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+    public static final int ALL_CASTLING = 15;
+
+    public static final int NO_SQUARE = -1;
+
+    // Số byte của dạng nén: 32 byte bàn cờ (mỗi ô 4 bit), bên đi, quyền nhập thành, ô bắt tốt qua đường,
+    // đồng hồ 50 nước và số nước (2 byte)
+    public static final int COMPACT_SIZE = 38;
+
+    // Sức chứa ban đầu của ngăn xếp hoàn tác, đủ cho một ván thông thường cộng độ sâu tìm kiếm
+    private static final int INITIAL_HISTORY = 512;
+
+    // Quyền nhập thành còn lại khi có quân rời khỏi hoặc đi vào ô tương ứng
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        Arrays.fill(CASTLING_MASK, ALL_CASTLING);
+        CASTLING_MASK[Bitboards.square(4, 0)] &= ~(WHITE_KINGSIDE | WHITE_QUEENSIDE);
+        CASTLING_MASK[Bitboards.square(7, 0)] &= ~WHITE_KINGSIDE;
+        CASTLING_MASK[Bitboards.square(0, 0)] &= ~WHITE_QUEENSIDE;
+        CASTLING_MASK[Bitboards.square(4, 7)] &= ~(BLACK_KINGSIDE | BLACK_QUEENSIDE);
+        CASTLING_MASK[Bitboards.square(7, 7)] &= ~BLACK_KINGSIDE;
+        CASTLING_MASK[Bitboards.square(0, 7)] &= ~BLACK_QUEENSIDE;
+    }
+
+    private final long[] pieces = new long[Piece.COUNT];
+    private final long[] colors = new long[2];
+    private long occupied;
+    private final byte[] board = new byte[64];
+
+    private int sideToMove;
+    private int castlingRights;
+    private int epSquare;
+    private int halfmoveClock;
+    private int fullmoveNumber;
+    private long key;
+
+    // Ngăn xếp hoàn tác: nước đã đi và trạng thái trước nước đó (quân bị ăn, quyền nhập thành,
+    // ô bắt tốt qua đường, đồng hồ 50 nước) nén trong một int, cùng khoá Zobrist trước nước đó.
+    // Cấp phát khi đi nước đầu tiên để các bản sao chỉ đọc không phải trả chi phí này.
+    private int[] moveHistory;
+    private int[] stateHistory;
+    private long[] keyHistory;
+    private int ply;
+
+    public Position() {
+        clear();
+    }
+
+    public Position(Position other) {
+        copyFrom(other);
+    }
+
+    public Position copy() {
+        return new Position(this);
+    }
+
+    public void copyFrom(Position other) {
+        System.arraycopy(other.pieces, 0, pieces, 0, Piece.COUNT);
+        colors[Piece.WHITE] = other.colors[Piece.WHITE];
+        colors[Piece.BLACK] = other.colors[Piece.BLACK];
+        occupied = other.occupied;
+        System.arraycopy(other.board, 0, board, 0, 64);
+        sideToMove = other.sideToMove;
+        castlingRights = other.castlingRights;
+        epSquare = other.epSquare;
+        halfmoveClock = other.halfmoveClock;
+        fullmoveNumber = other.fullmoveNumber;
+        key = other.key;
+        ply = 0;
+    }
+
+    public void clear() {
+        Arrays.fill(pieces, 0L);
+        colors[Piece.WHITE] = 0L;
+        colors[Piece.BLACK] = 0L;
+        occupied = 0L;
+        Arrays.fill(board, (byte) Piece.NONE);
+        sideToMove = Piece.WHITE;
+        castlingRights = 0;
+        epSquare = NO_SQUARE;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        key = 0L;
+        ply = 0;
+    }
+
+    public void setStartPosition() {
+        clear();
+        int[] backRank = {Piece.ROOK, Piece.KNIGHT, Piece.BISHOP, Piece.QUEEN,
+                Piece.KING, Piece.BISHOP, Piece.KNIGHT, Piece.ROOK};
+        for (int col = 0; col < 8; col++) {
+            put(Piece.make(Piece.WHITE, backRank[col]), Bitboards.square(col, 0));
+            put(Piece.make(Piece.WHITE, Piece.PAWN), Bitboards.square(col, 1));
+            put(Piece.make(Piece.BLACK, Piece.PAWN), Bitboards.square(col, 6));
+            put(Piece.make(Piece.BLACK, backRank[col]), Bitboards.square(col, 7));
+        }
+        castlingRights = ALL_CASTLING;
+        key = computeKey();
+    }
+
+    // Ghi thế cờ dạng nén COMPACT_SIZE byte vào out, không kèm lịch sử nước đi
+    public void writeCompact(ByteBuffer out) {
+        for (int sq = 0; sq < 64; sq += 2) {
+            out.put((byte) ((board[sq] + 1) | ((board[sq + 1] + 1) << 4)));
+        }
+        out.put((byte) sideToMove);
+        out.put((byte) castlingRights);
+        out.put((byte) epSquare);
+        out.put((byte) Math.min(halfmoveClock, 255));
+        out.putShort((short) fullmoveNumber);
+    }
+
+    // Đọc dạng nén của writeCompact bắt đầu từ vị trí offset của in (không đổi position của in)
+    public void readCompact(ByteBuffer in, int offset) {
+        clear();
+        for (int i = 0; i < 32; i++) {
+            int b = in.get(offset + i) & 0xFF;
+            putCompact(b & 0xF, i * 2);
+            putCompact(b >>> 4, i * 2 + 1);
+        }
+        int side = in.get(offset + 32);
+        int ep = in.get(offset + 34);
+        if ((side & ~1) != 0 || ep < NO_SQUARE || ep > 63) {
+            throw new IllegalArgumentException("Invalid compact position");
+        }
+        sideToMove = side;
+        castlingRights = in.get(offset + 33) & ALL_CASTLING;
+        epSquare = ep;
+        halfmoveClock = in.get(offset + 35) & 0xFF;
+        fullmoveNumber = in.getShort(offset + 36) & 0xFFFF;
+        key = computeKey();
+    }
+
+    private void putCompact(int code, int sq) {
+        if (code == 0) return;
+        if (code > Piece.COUNT) {
+            throw new IllegalArgumentException("Invalid compact position");
+        }
+        put(code - 1, sq);
+    }
+
+    public static Position fromFen(CharSequence fen) {
+        Position p = new Position();
+        p.setFen(fen);
+        return p;
+    }
+
+    /**
+     * Dựng thế cờ từ chuỗi FEN. Khoảng trắng ở hai đầu được bỏ qua, giữa các trường phải đúng một
+     * dấu cách; đồng hồ 50 nước và số nước có thể cùng bỏ trống. Chuỗi sai định dạng hoặc thế cờ không
+     * hợp lệ (thiếu vua, tốt ở hàng cuối, quyền nhập thành hay ô bắt tốt qua đường không khớp với bàn cờ)
+     * ném FenException và để lại bàn cờ trống. Không cấp phát khi chuỗi hợp lệ.
+     */
+    public void setFen(CharSequence fen) {
+        parseFen(fen, null, 0, fen.length());
+    }
+
+    // Như setFen(CharSequence), đọc các byte ASCII [offset, offset + length) của in, không đổi position của in
+    public void setFen(ByteBuffer in, int offset, int length) {
+        parseFen(null, in, offset, offset + length);
+    }
+
+    // Chỉ một trong text và bytes khác null
+    private void parseFen(CharSequence text, ByteBuffer bytes, int start, int end) {
+        int base = start;
+        while (start < end && fenChar(text, bytes, start) <= ' ') start++;
+        while (end > start && fenChar(text, bytes, end - 1) <= ' ') end--;
+        clear();
+
+        // Bàn cờ, từ hàng 8 xuống hàng 1
+        int i = start;
+        int row = 7;
+        int col = 0;
+        boolean digit = false;
+        for (; i < end; i++) {
+            int c = fenChar(text, bytes, i);
+            if (c == ' ') break;
+            if (c == '/') {
+                if (col != 8) throw fenError("Rank must have 8 squares", text, bytes, base, i, end);
+                if (row == 0) throw fenError("Too many ranks", text, bytes, base, i, end);
+                row--;
+                col = 0;
+                digit = false;
+            } else if (c >= '1' && c <= '8') {
+                col += c - '0';
+                if (digit || col > 8) throw fenError("Invalid empty square count", text, bytes, base, i, end);
+                digit = true;
+            } else {
+                int piece = Piece.fromChar(c);
+                if (piece == Piece.NONE) throw fenError("Invalid piece", text, bytes, base, i, end);
+                if (col == 8) throw fenError("Rank must have 8 squares", text, bytes, base, i, end);
+                if (Piece.type(piece) == Piece.PAWN && (row == 0 || row == 7)) {
+                    throw fenError("Pawn on first or last rank", text, bytes, base, i, end);
+                }
+                put(piece, Bitboards.square(col, row));
+                col++;
+                digit = false;
+            }
+        }
+        if (row != 0 || col != 8) throw fenError("Board must have 8 ranks of 8 squares", text, bytes, base, i, end);
+        if (Long.bitCount(pieces[Piece.make(Piece.WHITE, Piece.KING)]) != 1
+                || Long.bitCount(pieces[Piece.make(Piece.BLACK, Piece.KING)]) != 1) {
+            throw fenError("Each side must have exactly one king", text, bytes, base, start, end);
+        }
+
+        // Bên đi
+        i = expectSpace(text, bytes, base, i, end);
+        int c = i < end ? fenChar(text, bytes, i) : -1;
+        if (c == 'w') {
+            sideToMove = Piece.WHITE;
+        } else if (c == 'b') {
+            sideToMove = Piece.BLACK;
+        } else {
+            throw fenError("Side to move must be w or b", text, bytes, base, i, end);
+        }
+        i = expectSpace(text, bytes, base, i + 1, end);
+
+        // Quyền nhập thành: "-" hoặc các chữ KQkq theo đúng thứ tự, không lặp
+        if (i < end && fenChar(text, bytes, i) == '-') {
+            i++;
+        } else {
+            int last = -1;
+            for (; i < end && (c = fenChar(text, bytes, i)) != ' '; i++) {
+                int right = "KQkq".indexOf(c);
+                if (right <= last) throw fenError("Invalid castling rights", text, bytes, base, i, end);
+                last = right;
+                castlingRights |= 1 << right;
+            }
+            if (last < 0) throw fenError("Missing castling rights", text, bytes, base, i, end);
+            if ((castlingRights & ~possibleCastling()) != 0) {
+                throw fenError("Castling rights do not match king and rook squares", text, bytes, base, i - 1, end);
+            }
+        }
+        i = expectSpace(text, bytes, base, i, end);
+
+        // Ô bắt tốt qua đường: phải nằm sau một tốt đối phương vừa đi hai ô
+        if (i < end && fenChar(text, bytes, i) == '-') {
+            i++;
+        } else {
+            int file = i < end ? fenChar(text, bytes, i) - 'a' : -1;
+            int rank = i + 1 < end ? fenChar(text, bytes, i + 1) - '1' : -1;
+            int expected = sideToMove == Piece.WHITE ? 5 : 2;
+            if (file < 0 || file > 7 || rank != expected) {
+                throw fenError("Invalid en passant square", text, bytes, base, i, end);
+            }
+            int sq = Bitboards.square(file, rank);
+            int pawnSq = sideToMove == Piece.WHITE ? sq - 8 : sq + 8;
+            if (board[pawnSq] != Piece.make(sideToMove ^ 1, Piece.PAWN) || board[sq] != Piece.NONE) {
+                throw fenError("En passant square without a pawn that just moved", text, bytes, base, i, end);
+            }
+            epSquare = sq;
+            i += 2;
+        }
+
+        // Đồng hồ 50 nước và số nước
+        if (i < end) {
+            i = expectSpace(text, bytes, base, i, end);
+            int digits = i;
+            int halfmove = 0;
+            for (; i < end && (c = fenChar(text, bytes, i)) != ' '; i++) {
+                if (c < '0' || c > '9' || i - digits >= 4) throw fenError("Invalid halfmove clock", text, bytes, base, i, end);
+                halfmove = halfmove * 10 + c - '0';
+            }
+            if (i == digits) throw fenError("Missing halfmove clock", text, bytes, base, i, end);
+            i = expectSpace(text, bytes, base, i, end);
+            digits = i;
+            int fullmove = 0;
+            for (; i < end; i++) {
+                c = fenChar(text, bytes, i);
+                if (c < '0' || c > '9' || i - digits >= 5) throw fenError("Invalid fullmove number", text, bytes, base, i, end);
+                fullmove = fullmove * 10 + c - '0';
+            }
+            if (fullmove == 0) throw fenError("Invalid fullmove number", text, bytes, base, digits, end);
+            halfmoveClock = halfmove;
+            fullmoveNumber = fullmove;
+        }
+        key = computeKey();
+    }
+
+    // Các quyền nhập thành còn có thể có với vị trí vua và xe hiện tại
+    private int possibleCastling() {
+        int rights = 0;
+        int whiteRook = Piece.make(Piece.WHITE, Piece.ROOK);
+        int blackRook = Piece.make(Piece.BLACK, Piece.ROOK);
+        if (board[Bitboards.square(4, 0)] == Piece.make(Piece.WHITE, Piece.KING)) {
+            if (board[Bitboards.square(7, 0)] == whiteRook) rights |= WHITE_KINGSIDE;
+            if (board[Bitboards.square(0, 0)] == whiteRook) rights |= WHITE_QUEENSIDE;
+        }
+        if (board[Bitboards.square(4, 7)] == Piece.make(Piece.BLACK, Piece.KING)) {
+            if (board[Bitboards.square(7, 7)] == blackRook) rights |= BLACK_KINGSIDE;
+            if (board[Bitboards.square(0, 7)] == blackRook) rights |= BLACK_QUEENSIDE;
+        }
+        return rights;
+    }
+
+    private static int fenChar(CharSequence text, ByteBuffer bytes, int i) {
+        return text != null ? text.charAt(i) : bytes.get(i) & 0xFF;
+    }
+
+    private int expectSpace(CharSequence text, ByteBuffer bytes, int base, int i, int end) {
+        if (i >= end) throw fenError("Unexpected end", text, bytes, base, i, end);
+        if (fenChar(text, bytes, i) != ' ') throw fenError("Expected a single space", text, bytes, base, i, end);
+        return i + 1;
+    }
+
+    // Chỉ cấp phát khi có lỗi: chép lại chuỗi FEN để đưa vào thông báo
+    private FenException fenError(String reason, CharSequence text, ByteBuffer bytes, int base, int i, int end) {
+        clear();
+        StringBuilder fen = new StringBuilder(Math.max(0, end - base));
+        for (int k = base; k < end; k++) {
+            fen.append((char) fenChar(text, bytes, k));
+        }
+        return new FenException(reason, i - base, fen);
+    }
+
+    // Chuỗi FEN đầy đủ sáu trường của thế cờ
+    public String toFen() {
+        StringBuilder out = new StringBuilder(90);
+        appendFen(out);
+        return out.toString();
+    }
+
+    public void appendFen(StringBuilder out) {
+        writeFen(out, null);
+    }
+
+    // Ghi FEN dạng ASCII vào out, không cấp phát
+    public void writeFen(ByteBuffer out) {
+        writeFen(null, out);
+    }
+
+    private void writeFen(StringBuilder text, ByteBuffer bytes) {
+        for (int row = 7; row >= 0; row--) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                int piece = board[Bitboards.square(col, row)];
+                if (piece == Piece.NONE) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    putFen(text, bytes, '0' + empty);
+                    empty = 0;
+                }
+                putFen(text, bytes, Piece.toChar(piece));
+            }
+            if (empty > 0) {
+                putFen(text, bytes, '0' + empty);
+            }
+            if (row > 0) {
+                putFen(text, bytes, '/');
+            }
+        }
+        putFen(text, bytes, ' ');
+        putFen(text, bytes, sideToMove == Piece.WHITE ? 'w' : 'b');
+        putFen(text, bytes, ' ');
+        if (castlingRights == 0) {
+            putFen(text, bytes, '-');
+        } else {
+            for (int right = 0; right < 4; right++) {
+                if ((castlingRights & 1 << right) != 0) {
+                    putFen(text, bytes, "KQkq".charAt(right));
+                }
+            }
+        }
+        putFen(text, bytes, ' ');
+        if (epSquare == NO_SQUARE) {
+            putFen(text, bytes, '-');
+        } else {
+            putFen(text, bytes, 'a' + Bitboards.col(epSquare));
+            putFen(text, bytes, '1' + Bitboards.row(epSquare));
+        }
+        putFen(text, bytes, ' ');
+        putFenNumber(text, bytes, halfmoveClock);
+        putFen(text, bytes, ' ');
+        putFenNumber(text, bytes, fullmoveNumber);
+    }
+
+    private static void putFen(StringBuilder text, ByteBuffer bytes, int c) {
+        if (text != null) {
+            text.append((char) c);
+        } else {
+            bytes.put((byte) c);
+        }
+    }
+
+    private static void putFenNumber(StringBuilder text, ByteBuffer bytes, int n) {
+        int divisor = 1;
+        while (n / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            putFen(text, bytes, '0' + n / divisor % 10);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toFen();
+    }
+
+    // Đặt quân lên ô; nếu ô đã có quân thì quân cũ bị thay thế
+    public void put(int piece, int sq) {
+        if (board[sq] != Piece.NONE) {
+            remove(sq);
+        }
+        long b = Bitboards.bit(sq);
+        pieces[piece] |= b;
+        colors[Piece.color(piece)] |= b;
+        occupied |= b;
+        board[sq] = (byte) piece;
+        key ^= Zobrist.piece(piece, sq);
+    }
+
+    public int remove(int sq) {
+        int piece = board[sq];
+        if (piece != Piece.NONE) {
+            long b = Bitboards.bit(sq);
+            pieces[piece] &= ~b;
+            colors[Piece.color(piece)] &= ~b;
+            occupied &= ~b;
+            board[sq] = (byte) Piece.NONE;
+            key ^= Zobrist.piece(piece, sq);
+        }
+        return piece;
+    }
+
+    // Di chuyển quân từ from sang to, quân ở ô đích (nếu có) bị ăn; trả về quân bị ăn
+    public int move(int from, int to) {
+        int piece = board[from];
+        int captured = remove(to);
+        long fromTo = Bitboards.bit(from) | Bitboards.bit(to);
+        pieces[piece] ^= fromTo;
+        colors[Piece.color(piece)] ^= fromTo;
+        occupied ^= fromTo;
+        board[from] = (byte) Piece.NONE;
+        board[to] = (byte) piece;
+        key ^= Zobrist.piece(piece, from) ^ Zobrist.piece(piece, to);
+        return captured;
+    }
+
+    // Thực hiện một nước đi hợp lệ (xem MoveGenerator) và chuyển lượt; hoàn tác bằng unmakeMove
+    public void makeMove(int move) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int flag = Move.flag(move);
+        int piece = board[from];
+        int us = sideToMove;
+
+        if (moveHistory == null || ply == moveHistory.length) {
+            growHistory();
+        }
+        moveHistory[ply] = move;
+        stateHistory[ply] = packState(flag == Move.EN_PASSANT ? Piece.NONE : board[to]);
+        keyHistory[ply] = key;
+        ply++;
+
+        // Bỏ phần khoá của quyền nhập thành và ô bắt tốt qua đường cũ, thêm lại sau khi đi
+        key ^= Zobrist.castling(castlingRights) ^ enPassantKey();
+
+        halfmoveClock++;
+        if (Piece.type(piece) == Piece.PAWN || Move.isCapture(move)) {
+            halfmoveClock = 0;
+        }
+        epSquare = NO_SQUARE;
+
+        switch (flag) {
+            case Move.EN_PASSANT:
+                remove(us == Piece.WHITE ? to - 8 : to + 8);
+                move(from, to);
+                break;
+            case Move.KING_CASTLE:
+                move(from, to);
+                move(to + 1, to - 1);
+                break;
+            case Move.QUEEN_CASTLE:
+                move(from, to);
+                move(to - 2, to + 1);
+                break;
+            case Move.DOUBLE_PAWN_PUSH:
+                move(from, to);
+                epSquare = (from + to) >>> 1;
+                break;
+            default:
+                move(from, to);
+                if (Move.isPromotion(move)) {
+                    put(Piece.make(us, Move.promotionType(move)), to);
+                }
+                break;
+        }
+
+        castlingRights &= CASTLING_MASK[from] & CASTLING_MASK[to];
+        if (us == Piece.BLACK) {
+            fullmoveNumber++;
+        }
+        sideToMove = us ^ 1;
+        key ^= Zobrist.castling(castlingRights) ^ enPassantKey() ^ Zobrist.SIDE;
+    }
+
+    // Hoàn tác nước đi gần nhất của makeMove
+    public void unmakeMove() {
+        ply--;
+        int move = moveHistory[ply];
+        int state = stateHistory[ply];
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int us = sideToMove ^ 1;
+
+        switch (Move.flag(move)) {
+            case Move.EN_PASSANT:
+                move(to, from);
+                put(Piece.make(us ^ 1, Piece.PAWN), us == Piece.WHITE ? to - 8 : to + 8);
+                break;
+            case Move.KING_CASTLE:
+                move(to - 1, to + 1);
+                move(to, from);
+                break;
+            case Move.QUEEN_CASTLE:
+                move(to + 1, to - 2);
+                move(to, from);
+                break;
+            default:
+                if (Move.isPromotion(move)) {
+                    remove(to);
+                    put(Piece.make(us, Piece.PAWN), from);
+                } else {
+                    move(to, from);
+                }
+                int captured = (state & 0xF) - 1;
+                if (captured != Piece.NONE) {
+                    put(captured, to);
+                }
+                break;
+        }
+
+        castlingRights = (state >>> 4) & 0xF;
+        epSquare = ((state >>> 8) & 0x7F) - 1;
+        halfmoveClock = state >>> 15;
+        if (us == Piece.BLACK) {
+            fullmoveNumber--;
+        }
+        sideToMove = us;
+        key = keyHistory[ply];
+    }
+
+    // Khoá Zobrist của thế cờ hiện tại
+    public long key() {
+        return key;
+    }
+
+    // Tính lại khoá từ đầu, dùng sau khi dựng thế cờ bằng tay hoặc để kiểm tra
+    public long computeKey() {
+        long k = 0L;
+        long bb = occupied;
+        while (bb != 0) {
+            int sq = Long.numberOfTrailingZeros(bb);
+            bb &= bb - 1;
+            k ^= Zobrist.piece(board[sq], sq);
+        }
+        k ^= Zobrist.castling(castlingRights) ^ enPassantKey();
+        if (sideToMove == Piece.BLACK) {
+            k ^= Zobrist.SIDE;
+        }
+        return k;
+    }
+
+    // Số lần thế cờ hiện tại đã xuất hiện trước đó kể từ nước ăn quân hoặc đi tốt gần nhất
+    public int repetitionCount() {
+        int count = 0;
+        int limit = Math.max(0, ply - halfmoveClock);
+        for (int i = ply - 2; i >= limit; i -= 2) {
+            if (keyHistory[i] == key) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Số nước đi có thể hoàn tác
+    public int ply() {
+        return ply;
+    }
+
+    // Nước thứ index (tính từ 0) trong lịch sử, 0 <= index < ply()
+    public int moveAt(int index) {
+        if (index < 0 || index >= ply) {
+            throw new IndexOutOfBoundsException("Move " + index + " of " + ply);
+        }
+        return moveHistory[index];
+    }
+
+    // Nước đi gần nhất, hoặc Move.NONE nếu không còn lịch sử
+    public int lastMove() {
+        return ply == 0 ? Move.NONE : moveHistory[ply - 1];
+    }
+
+    // bit 0-3: quân bị ăn + 1, bit 4-7: quyền nhập thành, bit 8-14: ô bắt tốt qua đường + 1, bit 15+: đồng hồ 50 nước
+    private int packState(int captured) {
+        return (captured + 1) | (castlingRights << 4) | ((epSquare + 1) << 8) | (halfmoveClock << 15);
+    }
+
+    private void growHistory() {
+        int capacity = moveHistory == null ? INITIAL_HISTORY : moveHistory.length * 2;
+        moveHistory = moveHistory == null ? new int[capacity] : Arrays.copyOf(moveHistory, capacity);
+        stateHistory = stateHistory == null ? new int[capacity] : Arrays.copyOf(stateHistory, capacity);
+        keyHistory = keyHistory == null ? new long[capacity] : Arrays.copyOf(keyHistory, capacity);
+    }
+
+    // Ô bắt tốt qua đường chỉ tính vào khoá khi bên tới lượt thực sự có tốt bắt được,
+    // để hai thế cờ giống hệt nhau luôn có cùng khoá
+    private long enPassantKey() {
+        if (epSquare == NO_SQUARE) return 0L;
+        long capturers = Bitboards.pawnAttacks(sideToMove ^ 1, epSquare) & pieces[Piece.make(sideToMove, Piece.PAWN)];
+        return capturers != 0 ? Zobrist.enPassant(epSquare) : 0L;
+    }
+
+    public int pieceAt(int sq) {
+        return board[sq];
+    }
+
+    public boolean isEmpty(int sq) {
+        return (occupied & Bitboards.bit(sq)) == 0;
+    }
+
+    public long pieces(int piece) {
+        return pieces[piece];
+    }
+
+    public long pieces(int color, int type) {
+        return pieces[Piece.make(color, type)];
+    }
+
+    public long colorBits(int color) {
+        return colors[color];
+    }
+
+    public long occupied() {
+        return occupied;
+    }
+
+    public int kingSquare(int color) {
+        long king = pieces[Piece.make(color, Piece.KING)];
+        return king == 0 ? NO_SQUARE : Long.numberOfTrailingZeros(king);
+    }
+
+    // Tất cả quân (hai màu) đang tấn công ô sq với tập ô bị chiếm occupied
+    public long attackersTo(int sq, long occupied) {
+        long bishops = pieces[Piece.make(Piece.WHITE, Piece.BISHOP)] | pieces[Piece.make(Piece.BLACK, Piece.BISHOP)];
+        long rooks = pieces[Piece.make(Piece.WHITE, Piece.ROOK)] | pieces[Piece.make(Piece.BLACK, Piece.ROOK)];
+        long queens = pieces[Piece.make(Piece.WHITE, Piece.QUEEN)] | pieces[Piece.make(Piece.BLACK, Piece.QUEEN)];
+        long knights = pieces[Piece.make(Piece.WHITE, Piece.KNIGHT)] | pieces[Piece.make(Piece.BLACK, Piece.KNIGHT)];
+        long kings = pieces[Piece.make(Piece.WHITE, Piece.KING)] | pieces[Piece.make(Piece.BLACK, Piece.KING)];
+        return (Bitboards.pawnAttacks(Piece.WHITE, sq) & pieces[Piece.make(Piece.BLACK, Piece.PAWN)])
+                | (Bitboards.pawnAttacks(Piece.BLACK, sq) & pieces[Piece.make(Piece.WHITE, Piece.PAWN)])
+                | (Bitboards.KNIGHT_ATTACKS[sq] & knights)
+                | (Bitboards.KING_ATTACKS[sq] & kings)
+                | (Bitboards.bishopAttacks(sq, occupied) & (bishops | queens))
+                | (Bitboards.rookAttacks(sq, occupied) & (rooks | queens));
+    }
+
+    public boolean isAttacked(int sq, int byColor) {
+        return (attackersTo(sq, occupied) & colors[byColor]) != 0;
+    }
+
+    // Bản đồ tất cả các ô bị bên color tấn công
+    public long attackedSquares(int color, long occupied) {
+        long pawns = pieces[Piece.make(color, Piece.PAWN)];
+        long attacked = color == Piece.WHITE
+                ? ((pawns & ~Bitboards.FILE_A) << 7) | ((pawns & ~Bitboards.FILE_H) << 9)
+                : ((pawns & ~Bitboards.FILE_A) >>> 9) | ((pawns & ~Bitboards.FILE_H) >>> 7);
+        for (int type = Piece.KING; type < Piece.PAWN; type++) {
+            long bb = pieces[Piece.make(color, type)];
+            while (bb != 0) {
+                attacked |= Bitboards.attacks(type, Long.numberOfTrailingZeros(bb), occupied);
+                bb &= bb - 1;
+            }
+        }
+        return attacked;
+    }
+
+    public boolean inCheck() {
+        int king = kingSquare(sideToMove);
+        return king != NO_SQUARE && isAttacked(king, sideToMove ^ 1);
+    }
+
+    public int sideToMove() {
+        return sideToMove;
+    }
+
+    public void setSideToMove(int color) {
+        sideToMove = color;
+        key = computeKey();
+    }
+
+    public int castlingRights() {
+        return castlingRights;
+    }
+
+    public void setCastlingRights(int rights) {
+        castlingRights = rights;
+        key = computeKey();
+    }
+
+    public int epSquare() {
+        return epSquare;
+    }
+
+    public void setEpSquare(int sq) {
+        epSquare = sq;
+        key = computeKey();
+    }
+
+    public int halfmoveClock() {
+        return halfmoveClock;
+    }
+
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    public int fullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    public void setFullmoveNumber(int fullmoveNumber) {
+        this.fullmoveNumber = fullmoveNumber;
+    }
+}
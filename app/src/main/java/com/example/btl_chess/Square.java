@@ -1,11 +1,17 @@
 package com.example.btl_chess;
 
-import java.util.Objects;
-
 public class Square {
     private final int col;
     private final int row;
 
+    private static final Square[] SQUARES = new Square[64];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            SQUARES[sq] = new Square(Bitboards.col(sq), Bitboards.row(sq));
+        }
+    }
+
     public Square(int col, int row) {
         this.col = col;
         this.row = row;
@@ -19,6 +25,19 @@ public class Square {
         return row;
     }
 
+    // Chỉ số ô trong bitboard (row * 8 + col)
+    public int getIndex() {
+        return Bitboards.square(col, row);
+    }
+
+    public boolean isValid() {
+        return Bitboards.isValid(col, row);
+    }
+
+    public static Square of(int sq) {
+        return SQUARES[sq];
+    }
+
 
     @Override
     public boolean equals(Object o) {
@@ -30,7 +49,7 @@ public class Square {
 
     @Override
     public int hashCode() {
-        return Objects.hash(col, row);
+        return 31 * col + row;
     }
 
     @Override
@@ -0,0 +1,297 @@
+package com.example.btl_chess;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Giao thức nhị phân giữa client và server.
+ *
+ * <p>Mỗi khung gồm độ dài phần dữ liệu (u16), loại khung (u8) rồi tới dữ liệu, thứ tự byte big-endian.
+ * Nước đi là số 16 bit theo {@link Move}. Nhiều khung có thể được ghi liền nhau trong một lần gửi.
+ * Hai bên gửi HELLO kèm phiên bản ngay khi kết nối; khung có loại chưa biết được bỏ qua.
+ * Client kết nối lại gửi HELLO kèm mã phiên và số thứ tự nước cuối đã nhận, server gửi bù các nước
+ * bị lỡ, hoặc một ảnh chụp thế cờ nếu lỡ quá nhiều. Người xem gửi WATCH thay cho HELLO, nhận SYNC với
+ * màu {@link #SPECTATOR} rồi các khung MOVE, CLOCK, RESIGN của phòng đó. Client gửi PING khi không có
+ * gì để gửi để server không coi kết nối là bỏ quên; server đóng kết nối im lặng quá lâu sau khi gửi
+ * ERROR mã {@link #ERR_IDLE}, client nhận mã này thì nối lại phiên thay vì coi là hết ván.
+ *
+ * <pre>
+ * HELLO    version:u8 [session:u64 lastSeq:u16]  (phần sau chỉ có khi nối lại phiên)
+ * MOVE     seq:u16 move:u16                      (seq: số thứ tự của nước trong ván, bắt đầu từ 1)
+ * CLOCK    whiteMillis:u32 blackMillis:u32        (thời gian mỗi bên đã dùng, chỉ server gửi)
+ * RESIGN   color:u8                              (bên xin thua)
+ * SYNC     color:u8 count:u16 move:u16 * count   (toàn bộ ván từ thế xuất phát)
+ * ACK      ply:u16                               (số nước bên gửi đã áp dụng)
+ * ERROR    code:u8 ply:u16                       (số nước server đang có)
+ * SESSION  session:u64 color:u8                  (server giao khi vào phòng hoặc nối lại)
+ * SNAPSHOT seq:u16 color:u8 position:38 byte     (thế cờ sau nước seq, theo Position.writeCompact)
+ * WATCH    version:u8 room:u32                   (xem phòng room, 0 là phòng mới nhất)
+ * PING                                           (không có dữ liệu, chỉ để giữ kết nối)
+ * </pre>
+ *
+ * <p>Server giữ ván cờ gốc: nước của client chỉ có hiệu lực khi server phát lại MOVE cho cả hai bên.
+ */
+public final class WireProtocol {
+    public static final int VERSION = 4;
+
+    public static final int HELLO = 1;
+    public static final int MOVE = 2;
+    public static final int CLOCK = 3;
+    public static final int RESIGN = 4;
+    public static final int SYNC = 5;
+    public static final int ACK = 6;
+    public static final int ERROR = 7;
+    public static final int SESSION = 8;
+    public static final int SNAPSHOT = 9;
+    public static final int WATCH = 10;
+    public static final int PING = 11;
+
+    // Màu trong SYNC và SNAPSHOT gửi cho người xem
+    public static final int SPECTATOR = 2;
+
+    // Mã lỗi trong khung ERROR
+    public static final int ERR_PROTOCOL = 1;
+    public static final int ERR_NO_GAME = 2;
+    public static final int ERR_NOT_YOUR_TURN = 3;
+    public static final int ERR_ILLEGAL_MOVE = 4;
+    public static final int ERR_OUT_OF_SEQUENCE = 5;
+    public static final int ERR_GAME_OVER = 6;
+    public static final int ERR_NO_SESSION = 7;
+    // Kết nối im lặng quá lâu bị server đóng; phiên vẫn được giữ để nối lại
+    public static final int ERR_IDLE = 8;
+
+    public static final int HEADER_SIZE = 3;
+    public static final int MAX_PAYLOAD = 4096;
+
+    // Kích thước đầy đủ của từng loại khung, để bên gửi biết cần bao nhiêu chỗ trống
+    public static final int HELLO_SIZE = HEADER_SIZE + 1;
+    public static final int RESUME_SIZE = HEADER_SIZE + 11;
+    public static final int MOVE_SIZE = HEADER_SIZE + 4;
+    public static final int CLOCK_SIZE = HEADER_SIZE + 8;
+    public static final int RESIGN_SIZE = HEADER_SIZE + 1;
+    public static final int ACK_SIZE = HEADER_SIZE + 2;
+    public static final int ERROR_SIZE = HEADER_SIZE + 3;
+    public static final int SESSION_SIZE = HEADER_SIZE + 9;
+    public static final int SNAPSHOT_SIZE = HEADER_SIZE + 3 + Position.COMPACT_SIZE;
+    public static final int WATCH_SIZE = HEADER_SIZE + 5;
+    public static final int PING_SIZE = HEADER_SIZE;
+
+    // Số nước tối đa trong một khung SYNC
+    public static final int MAX_SYNC_MOVES = (MAX_PAYLOAD - 3) / 2;
+
+    /**
+     * Nhận các khung đã giải mã. Dữ liệu của SYNC được đọc thẳng từ bộ đệm, không sao chép.
+     * Ném ProtocolException để báo bên kia vi phạm giao thức.
+     */
+    public interface Handler {
+        // session = 0 khi bên kia không nối lại phiên cũ
+        default void onHello(int version, long session, int lastSeq) throws ProtocolException {
+        }
+
+        default void onMove(int seq, int move) throws ProtocolException {
+        }
+
+        default void onClock(long whiteMillis, long blackMillis) throws ProtocolException {
+        }
+
+        default void onResign(int color) throws ProtocolException {
+        }
+
+        // Nước thứ i nằm ở syncMove(buffer, offset, i); chỉ hợp lệ trong lúc gọi
+        default void onSync(int color, ByteBuffer buffer, int offset, int count) throws ProtocolException {
+        }
+
+        default void onAck(int ply) throws ProtocolException {
+        }
+
+        default void onError(int code, int ply) throws ProtocolException {
+        }
+
+        default void onSession(long session, int color) throws ProtocolException {
+        }
+
+        // Thế cờ đọc bằng Position.readCompact(buffer, offset); chỉ hợp lệ trong lúc gọi
+        default void onSnapshot(int seq, int color, ByteBuffer buffer, int offset) throws ProtocolException {
+        }
+
+        default void onWatch(int version, int room) throws ProtocolException {
+        }
+
+        default void onPing() throws ProtocolException {
+        }
+    }
+
+    private WireProtocol() {
+    }
+
+    /**
+     * Giải mã mọi khung hoàn chỉnh trong in (chế độ đọc). Sau khi gọi, position của in nằm ở đầu
+     * khung chưa nhận đủ, để bên gọi compact() rồi đọc tiếp. Trả về số khung đã giải mã.
+     */
+    public static int decode(ByteBuffer in, Handler handler) throws ProtocolException {
+        int frames = 0;
+        while (in.remaining() >= HEADER_SIZE) {
+            int start = in.position();
+            int length = in.getShort(start) & 0xFFFF;
+            if (length > MAX_PAYLOAD) {
+                throw new ProtocolException("Frame too large: " + length);
+            }
+            if (in.remaining() < HEADER_SIZE + length) break;
+            int type = in.get(start + 2) & 0xFF;
+            int p = start + HEADER_SIZE;
+            switch (type) {
+                case HELLO:
+                    require(length, 1);
+                    if (length >= 11) {
+                        handler.onHello(in.get(p) & 0xFF, in.getLong(p + 1), in.getShort(p + 9) & 0xFFFF);
+                    } else {
+                        handler.onHello(in.get(p) & 0xFF, 0L, 0);
+                    }
+                    break;
+                case MOVE:
+                    require(length, 4);
+                    handler.onMove(in.getShort(p) & 0xFFFF, in.getShort(p + 2) & 0xFFFF);
+                    break;
+                case CLOCK:
+                    require(length, 8);
+                    handler.onClock(in.getInt(p) & 0xFFFFFFFFL, in.getInt(p + 4) & 0xFFFFFFFFL);
+                    break;
+                case RESIGN:
+                    require(length, 1);
+                    handler.onResign(in.get(p) & 0xFF);
+                    break;
+                case SYNC: {
+                    require(length, 3);
+                    int count = in.getShort(p + 1) & 0xFFFF;
+                    require(length, 3 + count * 2);
+                    handler.onSync(in.get(p) & 0xFF, in, p + 3, count);
+                    break;
+                }
+                case ACK:
+                    require(length, 2);
+                    handler.onAck(in.getShort(p) & 0xFFFF);
+                    break;
+                case ERROR:
+                    require(length, 3);
+                    handler.onError(in.get(p) & 0xFF, in.getShort(p + 1) & 0xFFFF);
+                    break;
+                case SESSION:
+                    require(length, 9);
+                    handler.onSession(in.getLong(p), in.get(p + 8) & 0xFF);
+                    break;
+                case SNAPSHOT:
+                    require(length, 3 + Position.COMPACT_SIZE);
+                    handler.onSnapshot(in.getShort(p) & 0xFFFF, in.get(p + 2) & 0xFF, in, p + 3);
+                    break;
+                case WATCH:
+                    require(length, 5);
+                    handler.onWatch(in.get(p) & 0xFF, in.getInt(p + 1));
+                    break;
+                case PING:
+                    handler.onPing();
+                    break;
+                default:
+                    // Loại khung của phiên bản mới hơn
+                    break;
+            }
+            in.position(start + HEADER_SIZE + length);
+            frames++;
+        }
+        return frames;
+    }
+
+    public static int syncMove(ByteBuffer buffer, int offset, int i) {
+        return buffer.getShort(offset + i * 2) & 0xFFFF;
+    }
+
+    public static void putHello(ByteBuffer out) {
+        putHeader(out, HELLO, 1);
+        out.put((byte) VERSION);
+    }
+
+    // HELLO của client nối lại phiên session, đã nhận tới nước lastSeq
+    public static void putResume(ByteBuffer out, long session, int lastSeq) {
+        putHeader(out, HELLO, 11);
+        out.put((byte) VERSION);
+        out.putLong(session);
+        out.putShort((short) lastSeq);
+    }
+
+    public static void putMove(ByteBuffer out, int seq, int move) {
+        putHeader(out, MOVE, 4);
+        out.putShort((short) seq);
+        out.putShort((short) move);
+    }
+
+    public static void putClock(ByteBuffer out, long whiteMillis, long blackMillis) {
+        putHeader(out, CLOCK, 8);
+        out.putInt((int) whiteMillis);
+        out.putInt((int) blackMillis);
+    }
+
+    public static void putResign(ByteBuffer out, int color) {
+        putHeader(out, RESIGN, 1);
+        out.put((byte) color);
+    }
+
+    public static void putSync(ByteBuffer out, int color, int[] moves, int count) {
+        if (count > MAX_SYNC_MOVES) {
+            throw new IllegalArgumentException("Too many moves: " + count);
+        }
+        putHeader(out, SYNC, 3 + count * 2);
+        out.put((byte) color);
+        out.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            out.putShort((short) moves[i]);
+        }
+    }
+
+    public static int syncSize(int count) {
+        return HEADER_SIZE + 3 + count * 2;
+    }
+
+    public static void putAck(ByteBuffer out, int ply) {
+        putHeader(out, ACK, 2);
+        out.putShort((short) ply);
+    }
+
+    public static void putError(ByteBuffer out, int code, int ply) {
+        putHeader(out, ERROR, 3);
+        out.put((byte) code);
+        out.putShort((short) ply);
+    }
+
+    public static void putSession(ByteBuffer out, long session, int color) {
+        putHeader(out, SESSION, 9);
+        out.putLong(session);
+        out.put((byte) color);
+    }
+
+    public static void putSnapshot(ByteBuffer out, int seq, int color, Position position) {
+        putHeader(out, SNAPSHOT, 3 + Position.COMPACT_SIZE);
+        out.putShort((short) seq);
+        out.put((byte) color);
+        position.writeCompact(out);
+    }
+
+    public static void putWatch(ByteBuffer out, int room) {
+        putHeader(out, WATCH, 5);
+        out.put((byte) VERSION);
+        out.putInt(room);
+    }
+
+    public static void putPing(ByteBuffer out) {
+        putHeader(out, PING, 0);
+    }
+
+    private static void putHeader(ByteBuffer out, int type, int length) {
+        out.putShort((short) length);
+        out.put((byte) type);
+    }
+
+    private static void require(int length, int needed) throws ProtocolException {
+        if (length < needed) {
+            throw new ProtocolException("Truncated frame");
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.btl_chess;
+
+/**
+ * Khoá Zobrist 64 bit cho thế cờ. Các khoá ngẫu nhiên được sinh từ một hạt giống cố định
+ * để cùng một thế cờ luôn có cùng khoá giữa các lần chạy và giữa các máy.
+ */
+public final class Zobrist {
+    private static final long[] PIECE_SQUARE = new long[Piece.COUNT * 64];
+    private static final long[] CASTLING = new long[16];
+    private static final long[] EN_PASSANT = new long[8];
+    public static final long SIDE;
+
+    static {
+        long[] seed = {0x2545F4914F6CDD1DL};
+        for (int i = 0; i < PIECE_SQUARE.length; i++) {
+            PIECE_SQUARE[i] = next(seed);
+        }
+        // Mỗi quyền nhập thành một khoá, tổ hợp quyền là XOR các khoá thành phần
+        long[] rightKeys = {next(seed), next(seed), next(seed), next(seed)};
+        for (int rights = 0; rights < 16; rights++) {
+            for (int i = 0; i < 4; i++) {
+                if ((rights & (1 << i)) != 0) {
+                    CASTLING[rights] ^= rightKeys[i];
+                }
+            }
+        }
+        for (int col = 0; col < 8; col++) {
+            EN_PASSANT[col] = next(seed);
+        }
+        SIDE = next(seed);
+    }
+
+    private Zobrist() {
+    }
+
+    public static long piece(int piece, int sq) {
+        return PIECE_SQUARE[piece * 64 + sq];
+    }
+
+    public static long castling(int rights) {
+        return CASTLING[rights];
+    }
+
+    public static long enPassant(int sq) {
+        return EN_PASSANT[Bitboards.col(sq)];
+    }
+
+    // SplitMix64
+    private static long next(long[] state) {
+        long z = (state[0] += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.btl_chess.db;
+
+import com.example.btl_chess.Move;
+import com.example.btl_chess.MoveGenerator;
+import com.example.btl_chess.Position;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Kho ván cờ dạng nhị phân, chỉ ghi thêm vào cuối tệp. Mỗi nước đi được lưu bằng số thứ tự của nó
+ * trong danh sách của {@link MoveGenerator#generateLegal}, dùng vừa đủ số bit cho số nước hợp lệ
+ * (thường 5-6 bit, 0 bit khi chỉ có một nước), nên đọc lại phải dựng lại bàn cờ từng nước. Thứ tự
+ * sinh nước vì thế là một phần của định dạng: đổi thứ tự trong MoveGenerator thì phải tăng VERSION.
+ *
+ * <p>Tệp gồm HEADER_SIZE byte đầu ("BTLA", phiên bản) rồi các bản ghi nối tiếp, mỗi ván được định
+ * danh bằng vị trí byte của bản ghi. Bản ghi:
+ * <pre>
+ * độ dài:u32   số byte phía sau trường này
+ * kết quả:u8   0 "*", 1 "1-0", 2 "0-1", 3 "1/2-1/2"
+ * cờ:u8        bit 0: có thế bắt đầu riêng
+ * số nửa nước:u16
+ * [thế bắt đầu: Position.COMPACT_SIZE byte, nếu có cờ]
+ * độ dài tag:u16, rồi từng tag: độ dài tên:u8, tên, độ dài giá trị:u16, giá trị (UTF-8)
+ * các nước đi: chuỗi bit, bit cao trước, đệm 0 tới hết byte
+ * </pre>
+ * Các phương thức synchronized trên thể hiện này; đọc dùng chung một cửa sổ đệm nên quét tuần tự
+ * chỉ tốn một lần đọc tệp cho nhiều ván.
+ */
+public final class GameArchive implements Closeable {
+    public static final int HEADER_SIZE = 8;
+    public static final int MAX_PLIES = 0xFFFF;
+
+    private static final int MAGIC = 0x42544C41; // "BTLA"
+    private static final int VERSION = 1;
+    private static final int FLAG_SETUP = 1;
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final String[] RESULTS = {PgnGame.UNKNOWN_RESULT, "1-0", "0-1", "1/2-1/2"};
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private long size;
+
+    // Bản ghi đang dựng khi ghi thêm
+    private ByteBuffer record = ByteBuffer.allocate(1024);
+    // Cửa sổ đọc: chứa các byte [windowStart, windowStart + window.limit()) của tệp
+    private ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+    private long windowStart;
+
+    private final Position board = new Position();
+    private final Position standard = new Position();
+    private final int[] legal = new int[MoveGenerator.MAX_MOVES];
+
+    private GameArchive(RandomAccessFile file) throws IOException {
+        this.file = file;
+        this.channel = file.getChannel();
+        standard.setStartPosition();
+        window.limit(0);
+        size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (size == 0) {
+            header.putInt(MAGIC).put((byte) VERSION).flip();
+            writeFully(header, 0);
+            size = HEADER_SIZE;
+        } else {
+            readFully(header, 0);
+            if (size < HEADER_SIZE || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a game archive");
+            }
+            if (header.get(4) != VERSION) {
+                throw new IOException("Unsupported game archive version " + header.get(4));
+            }
+        }
+    }
+
+    // Mở kho, tạo tệp mới nếu chưa có
+    public static GameArchive open(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            return new GameArchive(file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    // Vị trí ván đầu tiên; bằng size() khi kho rỗng
+    public long firstOffset() {
+        return HEADER_SIZE;
+    }
+
+    // Độ dài tệp, cũng là vị trí của ván được ghi tiếp theo
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Ghi thêm ván vào cuối kho, trả về vị trí của ván. Các tag Result, SetUp và FEN không được lưu
+     * riêng vì đã có trong kết quả và thế bắt đầu. Ném IllegalArgumentException nếu ván có nước
+     * không hợp lệ hoặc quá MAX_PLIES nửa nước.
+     */
+    public synchronized long append(PgnGame game) throws IOException {
+        int plies = game.getMoveCount();
+        if (plies > MAX_PLIES) {
+            throw new IllegalArgumentException("Game too long: " + plies + " plies");
+        }
+        Position start = game.getStartPosition();
+        boolean setUp = start.key() != standard.key()
+                || start.halfmoveClock() != standard.halfmoveClock()
+                || start.fullmoveNumber() != standard.fullmoveNumber();
+
+        record.clear();
+        record.putInt(0);
+        record.put((byte) resultCode(game.getResult()));
+        record.put((byte) (setUp ? FLAG_SETUP : 0));
+        record.putShort((short) plies);
+        if (setUp) {
+            start.writeCompact(record);
+        }
+        putTags(game.getTags());
+
+        // Mỗi nước tốn tối đa 8 bit vì MAX_MOVES = 256
+        reserve(plies + 1);
+        board.copyFrom(start);
+        long bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < plies; i++) {
+            int move = game.getMove(i);
+            int count = MoveGenerator.generateLegal(board, legal);
+            int index = indexOf(legal, count, move);
+            if (index < 0) {
+                throw new IllegalArgumentException("Illegal move " + Move.toUci(move) + " at ply " + i);
+            }
+            int width = bitWidth(count);
+            bits = (bits << width) | index;
+            bitCount += width;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                record.put((byte) (bits >>> bitCount));
+            }
+            board.makeMove(move);
+        }
+        if (bitCount > 0) {
+            record.put((byte) (bits << (8 - bitCount)));
+        }
+        record.putInt(0, record.position() - 4);
+        record.flip();
+
+        long offset = size;
+        writeFully(record, offset);
+        size = offset + record.limit();
+        return offset;
+    }
+
+    // Đọc ván ở vị trí offset (do append hoặc nextOffset trả về)
+    public synchronized PgnGame read(long offset) throws IOException {
+        int base = loadRecord(offset);
+        int plies = window.getShort(base + 6) & 0xFFFF;
+        int pos = readStart(offset, base);
+        PgnGame game = new PgnGame(board);
+        game.setResult(RESULTS[window.get(base + 4) & 3]);
+
+        int tagsEnd = pos + 2 + (window.getShort(pos) & 0xFFFF);
+        pos += 2;
+        while (pos < tagsEnd) {
+            int nameLength = window.get(pos) & 0xFF;
+            String name = string(pos + 1, nameLength);
+            pos += 1 + nameLength;
+            int valueLength = window.getShort(pos) & 0xFFFF;
+            game.setTag(name, string(pos + 2, valueLength));
+            pos += 2 + valueLength;
+        }
+        if (pos != tagsEnd) throw corrupt(offset);
+        replay(offset, base, tagsEnd, plies, game, null);
+        return game;
+    }
+
+    // Vị trí ván ngay sau ván ở offset; bằng size() nếu đó là ván cuối
+    public synchronized long nextOffset(long offset) throws IOException {
+        int base = load(offset, 4);
+        return offset + 4 + (window.getInt(base) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Ghi vào keys khoá Zobrist của các thế cờ mà ván ở offset đi qua, từ thế bắt đầu tới tối đa
+     * maxPly nửa nước; trả về số khoá đã ghi. keys cần ít nhất maxPly + 1 phần tử.
+     */
+    synchronized int positionKeys(long offset, int maxPly, long[] keys) throws IOException {
+        int base = loadRecord(offset);
+        int plies = Math.min(maxPly, window.getShort(base + 6) & 0xFFFF);
+        int pos = readStart(offset, base);
+        pos += 2 + (window.getShort(pos) & 0xFFFF);
+        keys[0] = board.key();
+        replay(offset, base, pos, plies, null, keys);
+        return plies + 1;
+    }
+
+    /**
+     * Vị trí các ván đã đi qua thế cờ có khoá key, theo thứ tự ghi. Các ván đã có trong index được
+     * tra trực tiếp, các ván ghi sau khi dựng index được quét từng ván. Ván chỉ tới thế cờ đó sau
+     * index.getMaxPly() nửa nước thì không được tính. index có thể null để quét toàn bộ kho.
+     */
+    public long[] gamesReaching(PositionIndex index, long key) throws IOException {
+        long[] found = index != null ? index.find(key) : new long[0];
+        int count = found.length;
+        int maxPly = index != null ? index.getMaxPly() : MAX_PLIES;
+        long[] keys = new long[maxPly + 1];
+        long end = size();
+        for (long offset = index != null ? index.getArchiveLength() : firstOffset(); offset < end;
+             offset = nextOffset(offset)) {
+            int n = positionKeys(offset, maxPly, keys);
+            for (int i = 0; i < n; i++) {
+                if (keys[i] == key) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, Math.max(8, count * 2));
+                    }
+                    found[count++] = offset;
+                    break;
+                }
+            }
+        }
+        return count == found.length ? found : Arrays.copyOf(found, count);
+    }
+
+    // Đẩy dữ liệu đã ghi xuống đĩa
+    public synchronized void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    // Đọc thế bắt đầu của bản ghi vào board, trả về vị trí phần tag trong cửa sổ
+    private int readStart(long offset, int base) throws IOException {
+        int pos = base + 8;
+        if ((window.get(base + 5) & FLAG_SETUP) != 0) {
+            try {
+                board.readCompact(window, pos);
+            } catch (IllegalArgumentException e) {
+                throw corrupt(offset);
+            }
+            pos += Position.COMPACT_SIZE;
+        } else {
+            board.copyFrom(standard);
+        }
+        return pos;
+    }
+
+    // Giải mã plies nước đi bắt đầu từ pos, đi trên board; thêm vào game và/hoặc ghi khoá vào keys[1..]
+    private void replay(long offset, int base, int pos, int plies, PgnGame game, long[] keys) throws IOException {
+        int end = base + 4 + window.getInt(base);
+        long bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < plies; i++) {
+            int count = MoveGenerator.generateLegal(board, legal);
+            int width = bitWidth(count);
+            if (bitCount < width) {
+                if (pos >= end) throw corrupt(offset);
+                bits = (bits << 8) | (window.get(pos++) & 0xFF);
+                bitCount += 8;
+            }
+            bitCount -= width;
+            int index = (int) (bits >>> bitCount) & ((1 << width) - 1);
+            if (index >= count) throw corrupt(offset);
+            int move = legal[index];
+            board.makeMove(move);
+            if (game != null) game.addMove(move);
+            if (keys != null) keys[i + 1] = board.key();
+        }
+    }
+
+    private void putTags(Map<String, String> tags) {
+        int lengthAt = record.position();
+        record.putShort((short) 0);
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            String name = tag.getKey();
+            if (name.equals("Result") || name.equals("SetUp") || name.equals("FEN")) continue;
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            byte[] value = tag.getValue().getBytes(StandardCharsets.UTF_8);
+            if (nameBytes.length > 0xFF || value.length > 0xFFFF) {
+                throw new IllegalArgumentException("Tag too long: " + name);
+            }
+            reserve(3 + nameBytes.length + value.length);
+            record.put((byte) nameBytes.length).put(nameBytes);
+            record.putShort((short) value.length).put(value);
+        }
+        int length = record.position() - lengthAt - 2;
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("Tags too long: " + length + " bytes");
+        }
+        record.putShort(lengthAt, (short) length);
+    }
+
+    // Bảo đảm record còn chỗ cho thêm n byte
+    private void reserve(int n) {
+        if (record.remaining() >= n) return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + n));
+        record.flip();
+        bigger.put(record);
+        record = bigger;
+    }
+
+    // Nạp cả bản ghi ở offset vào cửa sổ, trả về vị trí đầu bản ghi trong cửa sổ
+    private int loadRecord(long offset) throws IOException {
+        if (offset < HEADER_SIZE || offset + 4 > size) {
+            throw new IllegalArgumentException("Bad game offset " + offset);
+        }
+        int base = load(offset, 4);
+        long length = window.getInt(base) & 0xFFFFFFFFL;
+        if (length < 6 || offset + 4 + length > size) throw corrupt(offset);
+        return load(offset, 4 + (int) length);
+    }
+
+    // Bảo đảm cửa sổ chứa [offset, offset + length), trả về vị trí của offset trong cửa sổ
+    private int load(long offset, int length) throws IOException {
+        if (offset >= windowStart && offset + length <= windowStart + window.limit()) {
+            return (int) (offset - windowStart);
+        }
+        if (length > window.capacity()) {
+            window = ByteBuffer.allocate(length);
+        }
+        window.clear();
+        if (offset + window.capacity() > size) {
+            window.limit((int) Math.max(length, size - offset));
+        }
+        readFully(window, offset);
+        window.flip();
+        windowStart = offset;
+        if (window.limit() < length) throw corrupt(offset);
+        return 0;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) break;
+            position += n;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private String string(int pos, int length) {
+        return new String(window.array(), window.arrayOffset() + pos, length, StandardCharsets.UTF_8);
+    }
+
+    private static IOException corrupt(long offset) {
+        return new IOException("Corrupt game record at offset " + offset);
+    }
+
+    private static int resultCode(String result) {
+        for (int i = 1; i < RESULTS.length; i++) {
+            if (RESULTS[i].equals(result)) return i;
+        }
+        return 0;
+    }
+
+    // Số bit để ghi một số thứ tự trong [0, count)
+    private static int bitWidth(int count) {
+        return count <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(count - 1);
+    }
+
+    private static int indexOf(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) return i;
+        }
+        return -1;
+    }
+}
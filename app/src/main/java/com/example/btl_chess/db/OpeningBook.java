@@ -0,0 +1,285 @@
+package com.example.btl_chess.db;
+
+import com.example.btl_chess.Move;
+import com.example.btl_chess.MoveGenerator;
+import com.example.btl_chess.Piece;
+import com.example.btl_chess.Position;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sách khai cuộc: tệp các bản ghi 16 byte cố định theo bố cục của Polyglot (khoá u64, nước đi u16,
+ * trọng số u16, 4 byte dự phòng), sắp theo khoá không dấu rồi trọng số giảm dần, được ánh xạ vào
+ * bộ nhớ và tra bằng tìm kiếm nhị phân. Khác Polyglot, khoá là khoá Zobrist của {@link Position}
+ * và nước đi là mã {@link Move}, nên không dùng được tệp .bin của Polyglot và ngược lại.
+ *
+ * <p>Tra cứu chỉ đọc vùng ánh xạ nên an toàn khi gọi từ nhiều luồng.
+ */
+public final class OpeningBook implements Closeable {
+    // Số nửa nước đầu mỗi ván được đưa vào sách khi dựng
+    public static final int DEFAULT_MAX_PLY = 20;
+    // Nước đi phải xuất hiện trong ít nhất chừng này ván mới được đưa vào sách
+    public static final int DEFAULT_MIN_GAMES = 3;
+
+    private static final int ENTRY_SIZE = 16;
+    private static final int MAX_WEIGHT = 0xFFFF;
+    // Kết quả ván ngoài Piece.WHITE / Piece.BLACK thắng
+    private static final int DRAW = 2;
+    private static final int UNKNOWN = 3;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer entries;
+    private final int count;
+
+    private OpeningBook(RandomAccessFile file) throws IOException {
+        this.file = file;
+        FileChannel channel = file.getChannel();
+        long size = channel.size();
+        if (size % ENTRY_SIZE != 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Not an opening book");
+        }
+        entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        count = (int) (size / ENTRY_SIZE);
+    }
+
+    public static OpeningBook open(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            return new OpeningBook(file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    // Số bản ghi trong sách
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Ghi các nước trong sách cho thế cờ p vào moves và trọng số tương ứng vào weights, trọng số giảm
+     * dần; trả về số nước. Nước không hợp lệ ở p (do trùng khoá) bị bỏ qua.
+     */
+    public int probe(Position p, int[] moves, int[] weights) {
+        long key = p.key();
+        int n = 0;
+        for (int i = lowerBound(key); i < count && n < moves.length; i++) {
+            int at = i * ENTRY_SIZE;
+            if (entries.getLong(at) != key) break;
+            int move = entries.getShort(at + 8) & 0xFFFF;
+            if (!isLegal(p, move)) continue;
+            moves[n] = move;
+            weights[n] = entries.getShort(at + 10) & 0xFFFF;
+            n++;
+        }
+        return n;
+    }
+
+    // Chọn ngẫu nhiên một nước trong sách theo trọng số, hoặc Move.NONE nếu thế cờ không có trong sách
+    public int pick(Position p, Random random) {
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        int[] weights = new int[MoveGenerator.MAX_MOVES];
+        int n = probe(p, moves, weights);
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += weights[i];
+        }
+        // Trọng số 0 nghĩa là không bao giờ chọn
+        if (total == 0) return Move.NONE;
+        long r = (long) (random.nextDouble() * total);
+        for (int i = 0; i < n; i++) {
+            r -= weights[i];
+            if (r < 0) return moves[i];
+        }
+        return moves[0];
+    }
+
+    // Bản ghi đầu tiên có khoá không nhỏ hơn key
+    private int lowerBound(long key) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(entries.getLong(mid * ENTRY_SIZE), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static boolean isLegal(Position p, int move) {
+        if (move == Move.NONE) return false;
+        int promotion = Move.isPromotion(move) ? Move.promotionType(move) : Piece.QUEEN;
+        return MoveGenerator.findLegalMove(p, Move.from(move), Move.to(move), promotion) == move;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Dựng sách từ các ván trong reader: mỗi nước trong maxPly nửa nước đầu được tính 2 điểm nếu bên
+     * đi nước đó thắng, 1 điểm nếu hoà, 0 nếu thua hoặc chưa rõ kết quả; nước có trong ít hơn minGames
+     * ván bị bỏ. Trọng số là điểm, thu nhỏ cùng tỉ lệ nếu vượt u16. Ván lỗi được bỏ qua; trả về số ván
+     * đã dùng. Các cặp (thế cờ, nước đi) được đếm trong bộ nhớ nên kích thước tuỳ số thế cờ khác nhau
+     * trong maxPly nửa nước đầu, không tuỳ số ván.
+     */
+    public static long build(PgnReader reader, File target, int maxPly, int minGames) throws IOException {
+        Counts counts = new Counts();
+        long games = 0;
+        while (true) {
+            PgnGame game;
+            try {
+                game = reader.next();
+            } catch (PgnException e) {
+                continue;
+            }
+            if (game == null) break;
+            games++;
+            int winner = winner(game.getResult());
+            Position p = game.getStartPosition();
+            int plies = Math.min(maxPly, game.getMoveCount());
+            for (int i = 0; i < plies; i++) {
+                int move = game.getMove(i);
+                int score = winner == DRAW ? 1 : winner == p.sideToMove() ? 2 : 0;
+                counts.add(p.key(), move, score);
+                p.makeMove(move);
+            }
+        }
+        counts.write(target, minGames);
+        return games;
+    }
+
+    private static int winner(String result) {
+        switch (result) {
+            case "1-0":
+                return Piece.WHITE;
+            case "0-1":
+                return Piece.BLACK;
+            case "1/2-1/2":
+                return DRAW;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    /** Bảng băm địa chỉ mở từ (khoá, nước đi) tới số ván và tổng điểm, dùng khi dựng sách. */
+    private static final class Counts {
+        private long[] keys = new long[1 << 16];
+        private int[] moves = new int[1 << 16];
+        private int[] games = new int[1 << 16];
+        private long[] scores = new long[1 << 16];
+        private int size;
+
+        void add(long key, int move, int score) {
+            if (size * 2 >= keys.length) grow();
+            int mask = keys.length - 1;
+            int i = slot(key, move, mask);
+            while (moves[i] != Move.NONE && (keys[i] != key || moves[i] != move)) {
+                i = (i + 1) & mask;
+            }
+            if (moves[i] == Move.NONE) {
+                keys[i] = key;
+                moves[i] = move;
+                size++;
+            }
+            games[i]++;
+            scores[i] += score;
+        }
+
+        private static int slot(long key, int move, int mask) {
+            long h = (key ^ move * 0x9E3779B97F4A7C15L) * 0xC2B2AE3D27D4EB4FL;
+            return (int) (h >>> 32) & mask;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldMoves = moves;
+            int[] oldGames = games;
+            long[] oldScores = scores;
+            int capacity = oldKeys.length * 2;
+            keys = new long[capacity];
+            moves = new int[capacity];
+            games = new int[capacity];
+            scores = new long[capacity];
+            int mask = capacity - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldMoves[j] == Move.NONE) continue;
+                int i = slot(oldKeys[j], oldMoves[j], mask);
+                while (moves[i] != Move.NONE) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                moves[i] = oldMoves[j];
+                games[i] = oldGames[j];
+                scores[i] = oldScores[j];
+            }
+        }
+
+        // Ghi các nước đủ minGames ván, sắp theo khoá không dấu rồi trọng số giảm dần
+        void write(File target, int minGames) throws IOException {
+            int n = 0;
+            long maxScore = 0;
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < keys.length; i++) {
+                if (moves[i] == Move.NONE || games[i] < minGames) continue;
+                order[n++] = i;
+                maxScore = Math.max(maxScore, scores[i]);
+            }
+            order = Arrays.copyOf(order, n);
+            Arrays.sort(order, (a, b) -> {
+                int c = Long.compareUnsigned(keys[a], keys[b]);
+                return c != 0 ? c : Long.compare(scores[b], scores[a]);
+            });
+            // Thu nhỏ mọi trọng số cùng tỉ lệ để giữ tương quan giữa các nước
+            double scale = maxScore > MAX_WEIGHT ? (double) MAX_WEIGHT / maxScore : 1.0;
+
+            File temp = new File(target.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+                for (int i : order) {
+                    out.writeLong(keys[i]);
+                    out.writeShort(moves[i]);
+                    out.writeShort((int) Math.round(scores[i] * scale));
+                    out.writeInt(0);
+                }
+            }
+            if (!temp.renameTo(target)) {
+                temp.delete();
+                throw new IOException("Cannot replace " + target);
+            }
+        }
+    }
+
+    // Dựng sách không cần giao diện: OpeningBook <tệp PGN> <tệp sách> [maxPly] [minGames]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: OpeningBook <pgn-file> <book-file> [max-ply] [min-games]");
+            System.exit(2);
+        }
+        int maxPly = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_PLY;
+        int minGames = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MIN_GAMES;
+        File target = new File(args[1]);
+        long games;
+        try (PgnReader reader = PgnReader.open(new File(args[0]))) {
+            games = build(reader, target, maxPly, minGames);
+        }
+        try (OpeningBook book = open(target)) {
+            System.out.println(games + " games, " + book.size() + " book entries");
+        }
+    }
+}
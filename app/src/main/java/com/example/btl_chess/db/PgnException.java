@@ -0,0 +1,22 @@
+package com.example.btl_chess.db;
+
+import java.io.IOException;
+
+/**
+ * Ván cờ trong tệp PGN bị lỗi. {@link #getLine()} là số dòng (tính từ 1) nơi phát hiện lỗi;
+ * {@link PgnReader} đã bỏ qua phần còn lại của ván đó nên có thể đọc tiếp ván sau.
+ */
+public class PgnException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long line;
+
+    public PgnException(String reason, long line) {
+        super(reason + " at line " + line);
+        this.line = line;
+    }
+
+    public long getLine() {
+        return line;
+    }
+}
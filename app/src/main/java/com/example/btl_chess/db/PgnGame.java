@@ -0,0 +1,95 @@
+package com.example.btl_chess.db;
+
+import com.example.btl_chess.ChessGame;
+import com.example.btl_chess.Position;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Một ván cờ trong tệp PGN: các tag theo thứ tự đọc được, thế cờ bắt đầu, các nước đi dạng Move
+ * và kết quả ("1-0", "0-1", "1/2-1/2" hoặc "*").
+ */
+public final class PgnGame {
+    public static final String UNKNOWN_RESULT = "*";
+
+    private final Map<String, String> tags = new LinkedHashMap<>();
+    private final Position start;
+    private int[] moves = new int[80];
+    private int moveCount;
+    private String result = UNKNOWN_RESULT;
+
+    // start được sao chép; thay đổi sau đó không ảnh hưởng ván
+    public PgnGame(Position start) {
+        this.start = start.copy();
+    }
+
+    // Ván đang chơi, kể cả thế bắt đầu nếu ván được dựng từ FEN
+    public static PgnGame of(ChessGame game) {
+        PgnGame pgn;
+        int[] played;
+        synchronized (game) {
+            pgn = new PgnGame(game.startPosition());
+            played = game.moves();
+        }
+        for (int move : played) {
+            pgn.addMove(move);
+        }
+        return pgn;
+    }
+
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+
+    public Map<String, String> getTags() {
+        return Collections.unmodifiableMap(tags);
+    }
+
+    // Bản sao thế cờ bắt đầu
+    public Position getStartPosition() {
+        return start.copy();
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public int getMove(int index) {
+        if (index < 0 || index >= moveCount) {
+            throw new IndexOutOfBoundsException("move " + index + " of " + moveCount);
+        }
+        return moves[index];
+    }
+
+    // Không kiểm tra tính hợp lệ; PgnReader chỉ thêm nước đã được kiểm tra
+    public void addMove(int move) {
+        if (moveCount == moves.length) {
+            moves = Arrays.copyOf(moves, moveCount * 2);
+        }
+        moves[moveCount++] = move;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    // Thế cờ sau khi đi hết các nước
+    public Position getFinalPosition() {
+        Position p = start.copy();
+        for (int i = 0; i < moveCount; i++) {
+            p.makeMove(moves[i]);
+        }
+        return p;
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.btl_chess.db;
+
+import com.example.btl_chess.FenException;
+import com.example.btl_chess.Move;
+import com.example.btl_chess.Position;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Đọc lần lượt từng ván trong tệp PGN qua một bộ đệm cố định, nên tệp lớn bao nhiêu cũng chỉ
+ * tốn bộ nhớ cho ván đang đọc. Các nước đi được kiểm tra theo luật trên một bàn cờ dùng lại giữa
+ * các ván; chú thích {...} và ;..., biến thể (...), NAG $n và dòng bắt đầu bằng % bị bỏ qua.
+ *
+ * <p>Ván có lỗi làm {@link #next()} ném PgnException sau khi đã bỏ qua tới ván kế tiếp (dòng bắt đầu
+ * bằng '[' sau phần nước đi của ván lỗi), nên có thể bắt lỗi rồi gọi next() tiếp. Không an toàn khi
+ * dùng từ nhiều luồng.
+ */
+public final class PgnReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] bytes = buffer.array();
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    // Dòng hiện tại (tính từ 1); ký tự sắp đọc và ký tự vừa đọc có đứng đầu dòng không
+    private long line = 1;
+    private boolean atLineStart = true;
+    private boolean readAtLineStart;
+
+    // Ký hiệu hoặc giá trị tag đang đọc
+    private byte[] token = new byte[256];
+    private int tokenLength;
+
+    private final Position board = new Position();
+    private final Position standard = new Position();
+
+    public PgnReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        standard.setStartPosition();
+    }
+
+    public PgnReader(InputStream in) {
+        this(Channels.newChannel(in));
+    }
+
+    public static PgnReader open(File file) throws IOException {
+        return new PgnReader(new FileInputStream(file).getChannel());
+    }
+
+    // Dòng đang đọc, tính từ 1
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * Ván kế tiếp, hoặc null khi hết tệp. Ván không có kết quả ở cuối phần nước đi vẫn được nhận,
+     * kết quả khi đó lấy từ tag Result.
+     */
+    public PgnGame next() throws IOException {
+        int c = skipBlank();
+        if (c < 0) return null;
+        unread();
+
+        PgnGame game = null;
+        Map<String, String> tags = new LinkedHashMap<>();
+        boolean inTags = true;
+        try {
+            // Phần tag
+            while ((c = skipBlank()) == '[') {
+                readTag(tags);
+            }
+            if (c >= 0) unread();
+            inTags = false;
+
+            Position start = standard;
+            String fen = tags.get("FEN");
+            if (fen != null) {
+                try {
+                    start = Position.fromFen(fen);
+                } catch (FenException e) {
+                    throw error("Bad FEN tag: " + e.getMessage());
+                }
+            }
+            game = new PgnGame(start);
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                game.setTag(tag.getKey(), tag.getValue());
+            }
+            String tagResult = tags.get("Result");
+            if (tagResult != null && isResult(tagResult)) {
+                game.setResult(tagResult);
+            }
+            board.copyFrom(start);
+            readMoves(game);
+            return game;
+        } catch (PgnException e) {
+            if (inTags) {
+                // Các tag còn lại thuộc cùng ván lỗi, không được nhận là ván mới
+                skipTagSection();
+            }
+            skipToNextGame();
+            throw e;
+        }
+    }
+
+    // Đọc phần nước đi tới kết quả, tag của ván sau, hoặc hết tệp
+    private void readMoves(PgnGame game) throws IOException {
+        int c;
+        while ((c = skipBlank()) >= 0) {
+            switch (c) {
+                case '[':
+                    if (lineStart()) {
+                        // Ván sau bắt đầu mà ván này thiếu kết quả
+                        unread();
+                        return;
+                    }
+                    throw error("Unexpected '['");
+                case '(':
+                    skipVariation();
+                    break;
+                case ')':
+                    throw error("Unbalanced ')'");
+                case '$':
+                    while (isDigit(peek())) read();
+                    break;
+                case '*':
+                    game.setResult(PgnGame.UNKNOWN_RESULT);
+                    return;
+                default:
+                    if (!isSymbolStart(c)) {
+                        throw error("Unexpected character '" + (char) c + "'");
+                    }
+                    readSymbol(c);
+                    if (handleSymbol(game)) return;
+            }
+        }
+    }
+
+    // Trả về true nếu ký hiệu là kết quả ván
+    private boolean handleSymbol(PgnGame game) throws PgnException {
+        byte[] t = token;
+        int length = tokenLength;
+        if (isResult(t, length)) {
+            game.setResult(new String(t, 0, length, StandardCharsets.US_ASCII));
+            return true;
+        }
+        int i = 0;
+        if (isDigit(t[0])) {
+            // Số thứ tự nước "12." hoặc "12...", có thể dính liền nước đi "12.e4"; "0-0" là nhập thành
+            while (i < length && isDigit(t[i])) i++;
+            if (i < length && t[i] == '.') {
+                while (i < length && t[i] == '.') i++;
+            } else if (i == length) {
+                return false;
+            } else {
+                i = 0;
+            }
+        }
+        // Chú thích !, ?, !? đứng riêng
+        int j = i;
+        while (j < length && (t[j] == '!' || t[j] == '?')) j++;
+        if (j == length) return false;
+
+        int move = San.parse(board, t, i, length);
+        if (move == Move.NONE) {
+            throw error("Illegal or ambiguous move '" + new String(t, i, length - i, StandardCharsets.US_ASCII)
+                    + "' in " + board.toFen());
+        }
+        board.makeMove(move);
+        game.addMove(move);
+        return false;
+    }
+
+    // Sau '(' đã đọc: bỏ qua tới ')' tương ứng, kể cả biến thể lồng và chú thích bên trong
+    private void skipVariation() throws IOException {
+        int depth = 1;
+        int c;
+        while ((c = skipBlank()) >= 0) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) return;
+            } else if (c == '[' && lineStart()) {
+                unread();
+                throw error("Unterminated variation");
+            }
+        }
+        throw error("Unterminated variation");
+    }
+
+    // Sau '[' đã đọc: [Tên "giá trị"]
+    private void readTag(Map<String, String> tags) throws IOException {
+        int c = skipSpaces();
+        tokenLength = 0;
+        while (c >= 0 && (Character.isLetterOrDigit(c) || c == '_')) {
+            append(c);
+            c = read();
+        }
+        if (tokenLength == 0) throw error("Missing tag name");
+        String name = new String(token, 0, tokenLength, StandardCharsets.US_ASCII);
+
+        if (c == ' ' || c == '\t') c = skipSpaces();
+        if (c != '"') throw error("Missing tag value for " + name);
+        tokenLength = 0;
+        while ((c = read()) != '"') {
+            if (c < 0) throw error("Unterminated tag value for " + name);
+            // '\n' vừa đọc đã tăng số dòng, lỗi nằm ở dòng trước
+            if (c == '\n') throw new PgnException("Unterminated tag value for " + name, line - 1);
+            if (c == '\\') {
+                c = read();
+                if (c != '"' && c != '\\') throw error("Bad escape in tag value for " + name);
+            }
+            append(c);
+        }
+        if (skipSpaces() != ']') throw error("Missing ']' after tag " + name);
+        tags.put(name, new String(token, 0, tokenLength, StandardCharsets.UTF_8));
+    }
+
+    // Bỏ khoảng trắng và chú thích; trả về ký tự đầu tiên còn lại, hoặc -1 khi hết tệp
+    private int skipBlank() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') continue;
+            if (c == '{') {
+                long from = line;
+                do {
+                    c = read();
+                    if (c < 0) throw new PgnException("Unterminated comment", from);
+                } while (c != '}');
+            } else if (c == ';' || c == '%' && lineStart()) {
+                while (c >= 0 && c != '\n') c = read();
+            } else {
+                return c;
+            }
+        }
+    }
+
+    // Bỏ dấu cách và tab trên cùng dòng
+    private int skipSpaces() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\t');
+        return c;
+    }
+
+    private void readSymbol(int first) throws IOException {
+        tokenLength = 0;
+        append(first);
+        while (isSymbolChar(peek())) {
+            append(read());
+        }
+    }
+
+    // Sau lỗi trong phần tag: bỏ nốt dòng lỗi và các dòng tag (cùng dòng trống, dòng chú thích ; và %)
+    // phía sau, dừng ở dòng đầu tiên của phần nước đi
+    private void skipTagSection() throws IOException {
+        int c;
+        if (!atLineStart) {
+            do {
+                c = read();
+            } while (c >= 0 && c != '\n');
+        }
+        while ((c = skipSpaces()) >= 0) {
+            if (c == '[' || c == ';' || c == '%') {
+                while (c >= 0 && c != '\n') c = read();
+            } else if (c != '\n' && c != '\r') {
+                unread();
+                return;
+            }
+        }
+    }
+
+    // Bỏ qua tới dòng bắt đầu bằng '[' kế tiếp, '[' đó được giữ lại cho lần next() sau
+    private void skipToNextGame() throws IOException {
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '[' && lineStart()) {
+                unread();
+                return;
+            }
+        }
+    }
+
+    private void append(int c) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, tokenLength * 2);
+        }
+        token[tokenLength++] = (byte) c;
+    }
+
+    private PgnException error(String reason) {
+        return new PgnException(reason, line);
+    }
+
+    // Ký tự vừa đọc có đứng đầu dòng không
+    private boolean lineStart() {
+        return readAtLineStart;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        int c = bytes[pos++] & 0xFF;
+        readAtLineStart = atLineStart;
+        atLineStart = c == '\n';
+        if (atLineStart) {
+            line++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return bytes[pos] & 0xFF;
+    }
+
+    // Trả lại ký tự vừa đọc (không phải '\n'); chỉ lùi được một ký tự vì bộ đệm có thể đã được nạp lại
+    private void unread() {
+        pos--;
+        atLineStart = readAtLineStart;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        buffer.clear();
+        int n;
+        do {
+            n = channel.read(buffer);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            pos = limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private static boolean isResult(String s) {
+        byte[] b = s.getBytes(StandardCharsets.US_ASCII);
+        return isResult(b, b.length);
+    }
+
+    private static boolean isResult(byte[] t, int length) {
+        switch (length) {
+            case 1:
+                return t[0] == '*';
+            case 3:
+                return (t[0] == '1' && t[1] == '-' && t[2] == '0') || (t[0] == '0' && t[1] == '-' && t[2] == '1');
+            case 7:
+                return t[0] == '1' && t[1] == '/' && t[2] == '2' && t[3] == '-'
+                        && t[4] == '1' && t[5] == '/' && t[6] == '2';
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSymbolStart(int c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || isDigit(c) || c == '!' || c == '?' || c == '-';
+    }
+
+    private static boolean isSymbolChar(int c) {
+        return isSymbolStart(c) || c == '_' || c == '+' || c == '#' || c == '=' || c == ':'
+                || c == '/' || c == '.';
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.btl_chess.db;
+
+import com.example.btl_chess.Piece;
+import com.example.btl_chess.Position;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Ghi ván cờ dạng PGN xuất khẩu: bảy tag bắt buộc theo đúng thứ tự (thiếu thì ghi "?"), các tag
+ * còn lại theo thứ tự của ván, SetUp/FEN khi ván không bắt đầu từ thế chuẩn, rồi các nước đi SAN
+ * có số thứ tự, mỗi dòng không quá 79 ký tự. Đọc lại bằng {@link PgnReader} cho đúng ván ban đầu.
+ */
+public final class PgnWriter implements Closeable, Flushable {
+    private static final String[] SEVEN_TAGS = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+    private static final int LINE_WIDTH = 79;
+
+    private final Writer out;
+    private final StringBuilder text = new StringBuilder(1024);
+    private final StringBuilder san = new StringBuilder(16);
+    private final Position board = new Position();
+    private final String standardFen;
+
+    public PgnWriter(Writer out) {
+        this.out = out;
+        board.setStartPosition();
+        standardFen = board.toFen();
+    }
+
+    public static PgnWriter open(File file, boolean append) throws IOException {
+        return new PgnWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, append), StandardCharsets.UTF_8), 64 * 1024));
+    }
+
+    public void write(PgnGame game) throws IOException {
+        text.setLength(0);
+        Map<String, String> tags = game.getTags();
+        for (String name : SEVEN_TAGS) {
+            String value = name.equals("Result") ? game.getResult() : tags.get(name);
+            if (value == null) {
+                value = name.equals("Date") ? "????.??.??" : "?";
+            }
+            appendTag(name, value);
+        }
+
+        Position start = game.getStartPosition();
+        String fen = start.toFen();
+        boolean setUp = !fen.equals(standardFen);
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            String name = tag.getKey();
+            if (isSevenTag(name) || name.equals("SetUp") || name.equals("FEN")) continue;
+            appendTag(name, tag.getValue());
+        }
+        if (setUp) {
+            appendTag("SetUp", "1");
+            appendTag("FEN", fen);
+        }
+        text.append('\n');
+
+        board.copyFrom(start);
+        int lineStart = text.length();
+        for (int i = 0; i < game.getMoveCount(); i++) {
+            int move = game.getMove(i);
+            san.setLength(0);
+            // Số thứ tự trước nước của trắng, và trước nước đầu tiên nếu đen đi trước
+            if (board.sideToMove() == Piece.WHITE) {
+                san.append(board.fullmoveNumber()).append(". ");
+            } else if (i == 0) {
+                san.append(board.fullmoveNumber()).append("... ");
+            }
+            San.append(board, move, san);
+            board.makeMove(move);
+            lineStart = appendWord(san, lineStart);
+        }
+        san.setLength(0);
+        san.append(game.getResult());
+        appendWord(san, lineStart);
+        text.append("\n\n");
+        out.write(text.toString());
+    }
+
+    // Thêm word, xuống dòng nếu dòng hiện tại sẽ dài quá LINE_WIDTH; trả về vị trí đầu dòng mới
+    private int appendWord(CharSequence word, int lineStart) {
+        if (text.length() > lineStart) {
+            if (text.length() - lineStart + 1 + word.length() > LINE_WIDTH) {
+                text.append('\n');
+                lineStart = text.length();
+            } else {
+                text.append(' ');
+            }
+        }
+        text.append(word);
+        return lineStart;
+    }
+
+    private void appendTag(String name, String value) {
+        text.append('[').append(name).append(" \"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\');
+            } else if (c == '\n' || c == '\r') {
+                c = ' ';
+            }
+            text.append(c);
+        }
+        text.append("\"]\n");
+    }
+
+    private static boolean isSevenTag(String name) {
+        for (String tag : SEVEN_TAGS) {
+            if (tag.equals(name)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
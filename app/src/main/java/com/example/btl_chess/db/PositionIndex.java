@@ -0,0 +1,376 @@
+package com.example.btl_chess.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chỉ mục từ khoá Zobrist của thế cờ tới vị trí các ván trong {@link GameArchive} đã đi qua thế cờ đó,
+ * để trả lời "ván nào đã tới thế này" mà không quét kho. Tệp là dãy cặp (khoá, vị trí) 16 byte đã
+ * sắp xếp (khoá so sánh không dấu, rồi vị trí), được ánh xạ vào bộ nhớ theo từng đoạn và tra bằng
+ * tìm kiếm nhị phân. Chỉ mục không được sửa: dựng lại bằng {@link #build} khi cần, các ván ghi
+ * sau đó được {@link GameArchive#gamesReaching} quét trực tiếp.
+ *
+ * <p>Đầu tệp (HEADER_SIZE byte): "BTLI", phiên bản, maxPly, độ dài kho lúc dựng, số cặp.
+ */
+public final class PositionIndex implements Closeable {
+    // Thế cờ khai cuộc; ván gặp lại một thế cờ sau số nửa nước này không được ghi vào chỉ mục
+    public static final int DEFAULT_MAX_PLY = 40;
+
+    private static final int MAGIC = 0x42544C49; // "BTLI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 16;
+    // Mỗi đoạn ánh xạ 1 GB, dưới giới hạn 2 GB của một MappedByteBuffer
+    private static final int SEGMENT_SHIFT = 26;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+    // Số cặp sắp xếp trong bộ nhớ mỗi lần khi dựng (16 MB cho cả mảng phụ)
+    private static final int RUN_SIZE = 1 << 19;
+    // Số tệp tạm được trộn cùng lúc
+    private static final int MERGE_WIDTH = 64;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+    private final long count;
+    private final int maxPly;
+    private final long archiveLength;
+
+    private PositionIndex(RandomAccessFile file) throws IOException {
+        this.file = file;
+        FileChannel channel = file.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) break;
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+            throw new IOException("Not a position index");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported position index version " + header.getInt(4));
+        }
+        maxPly = header.getInt(8);
+        archiveLength = header.getLong(16);
+        count = header.getLong(24);
+        if (count < 0 || HEADER_SIZE + count * ENTRY_SIZE != channel.size()) {
+            throw new IOException("Truncated position index");
+        }
+        int segmentCount = (int) ((count + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[segmentCount];
+        for (int s = 0; s < segmentCount; s++) {
+            long first = (long) s << SEGMENT_SHIFT;
+            long entries = Math.min(count - first, 1L << SEGMENT_SHIFT);
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * ENTRY_SIZE,
+                    entries * ENTRY_SIZE);
+        }
+    }
+
+    public static PositionIndex open(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            return new PositionIndex(file);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    // Số nửa nước tối đa tính từ thế bắt đầu của mỗi ván được đưa vào chỉ mục
+    public int getMaxPly() {
+        return maxPly;
+    }
+
+    // Độ dài kho lúc dựng; các ván từ vị trí này trở đi chưa có trong chỉ mục
+    public long getArchiveLength() {
+        return archiveLength;
+    }
+
+    // Số cặp (khoá, vị trí)
+    public long size() {
+        return count;
+    }
+
+    // Vị trí các ván đã đi qua thế cờ có khoá key, tăng dần
+    public long[] find(long key) {
+        long first = lowerBound(key);
+        long last = first;
+        while (last < count && keyAt(last) == key) last++;
+        long[] offsets = new long[(int) (last - first)];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = offsetAt(first + i);
+        }
+        return offsets;
+    }
+
+    // Số ván đã đi qua thế cờ có khoá key
+    public int count(long key) {
+        long first = lowerBound(key);
+        long last = first;
+        while (last < count && keyAt(last) == key) last++;
+        return (int) (last - first);
+    }
+
+    // Cặp đầu tiên có khoá không nhỏ hơn key
+    private long lowerBound(long key) {
+        long lo = 0;
+        long hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(keyAt(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private long keyAt(long i) {
+        return segments[(int) (i >>> SEGMENT_SHIFT)].getLong((int) (i & SEGMENT_MASK) * ENTRY_SIZE);
+    }
+
+    private long offsetAt(long i) {
+        return segments[(int) (i >>> SEGMENT_SHIFT)].getLong((int) (i & SEGMENT_MASK) * ENTRY_SIZE + 8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Vùng ánh xạ được giải phóng khi bị thu gom, đóng tệp không làm mất hiệu lực
+        file.close();
+    }
+
+    /**
+     * Dựng chỉ mục cho mọi ván hiện có trong archive, mỗi ván tính các thế cờ trong maxPly nửa nước
+     * đầu. Các cặp được sắp theo từng khối RUN_SIZE trong bộ nhớ, ghi ra tệp tạm cạnh target rồi
+     * trộn lại, nên bộ nhớ dùng không phụ thuộc kích thước kho. Tệp mới thay tệp cũ khi đã ghi xong.
+     */
+    public static void build(GameArchive archive, File target, int maxPly) throws IOException {
+        if (maxPly < 0 || maxPly > GameArchive.MAX_PLIES) {
+            throw new IllegalArgumentException("maxPly " + maxPly);
+        }
+        File dir = target.getAbsoluteFile().getParentFile();
+        List<File> runs = new ArrayList<>();
+        File temp = null;
+        try {
+            long end = archive.size();
+            long[] keys = new long[RUN_SIZE];
+            long[] offsets = new long[RUN_SIZE];
+            long[] spareKeys = new long[RUN_SIZE];
+            long[] spareOffsets = new long[RUN_SIZE];
+            long[] gameKeys = new long[maxPly + 1];
+            int n = 0;
+            for (long offset = archive.firstOffset(); offset < end; offset = archive.nextOffset(offset)) {
+                int k = archive.positionKeys(offset, maxPly, gameKeys);
+                for (int i = 0; i < k; i++) {
+                    if (n == RUN_SIZE) {
+                        runs.add(writeRun(dir, keys, offsets, spareKeys, spareOffsets, n));
+                        n = 0;
+                    }
+                    keys[n] = gameKeys[i];
+                    offsets[n] = offset;
+                    n++;
+                }
+            }
+            if (n > 0 || runs.isEmpty()) {
+                runs.add(writeRun(dir, keys, offsets, spareKeys, spareOffsets, n));
+            }
+
+            // Trộn nhiều lượt để không mở quá MERGE_WIDTH tệp cùng lúc
+            while (runs.size() > MERGE_WIDTH) {
+                List<File> group = new ArrayList<>(runs.subList(0, MERGE_WIDTH));
+                runs.subList(0, MERGE_WIDTH).clear();
+                File merged = File.createTempFile("index", ".run", dir);
+                runs.add(merged);
+                try (DataOutputStream out = openOutput(merged)) {
+                    merge(group, out);
+                }
+                for (File run : group) {
+                    run.delete();
+                }
+            }
+
+            temp = File.createTempFile("index", ".tmp", dir);
+            long written;
+            try (DataOutputStream out = openOutput(temp)) {
+                out.write(new byte[HEADER_SIZE]);
+                written = merge(runs, out);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(maxPly);
+                raf.writeInt(0);
+                raf.writeLong(end);
+                raf.writeLong(written);
+                raf.getFD().sync();
+            }
+            if (!temp.renameTo(target)) {
+                throw new IOException("Cannot replace " + target);
+            }
+            temp = null;
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static File writeRun(File dir, long[] keys, long[] offsets, long[] spareKeys, long[] spareOffsets, int n)
+            throws IOException {
+        sort(keys, offsets, spareKeys, spareOffsets, n);
+        File run = File.createTempFile("index", ".run", dir);
+        try (DataOutputStream out = openOutput(run)) {
+            for (int i = 0; i < n; i++) {
+                // Cùng một ván lặp lại thế cờ chỉ ghi một lần
+                if (i > 0 && keys[i] == keys[i - 1] && offsets[i] == offsets[i - 1]) continue;
+                out.writeLong(keys[i]);
+                out.writeLong(offsets[i]);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Sắp n cặp đầu theo khoá không dấu bằng radix sort từng byte. Sắp xếp ổn định nên vị trí ván,
+     * vốn được thêm theo thứ tự tăng, vẫn tăng trong cùng một khoá. Kết quả nằm lại trong keys/offsets.
+     */
+    private static void sort(long[] keys, long[] offsets, long[] spareKeys, long[] spareOffsets, int n) {
+        long[] srcKeys = keys;
+        long[] srcOffsets = offsets;
+        long[] dstKeys = spareKeys;
+        long[] dstOffsets = spareOffsets;
+        int[] counts = new int[257];
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[((int) (srcKeys[i] >>> shift) & 0xFF) + 1]++;
+            }
+            // Cả khối cùng một byte ở vị trí này thì bỏ qua lượt
+            if (counts[((int) (srcKeys[0] >>> shift) & 0xFF) + 1] == n) continue;
+            for (int b = 0; b < 256; b++) {
+                counts[b + 1] += counts[b];
+            }
+            for (int i = 0; i < n; i++) {
+                int slot = counts[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+                dstKeys[slot] = srcKeys[i];
+                dstOffsets[slot] = srcOffsets[i];
+            }
+            long[] t = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = t;
+            t = srcOffsets;
+            srcOffsets = dstOffsets;
+            dstOffsets = t;
+        }
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+            System.arraycopy(srcOffsets, 0, offsets, 0, n);
+        }
+    }
+
+    // Trộn các tệp đã sắp vào out, bỏ cặp trùng; trả về số cặp đã ghi
+    private static long merge(List<File> runs, DataOutputStream out) throws IOException {
+        int k = runs.size();
+        DataInputStream[] inputs = new DataInputStream[k];
+        long[] headKeys = new long[k];
+        long[] headOffsets = new long[k];
+        // Đống nhỏ nhất gồm các tệp còn dữ liệu, so theo cặp đầu của mỗi tệp
+        int[] heap = new int[k];
+        int heapSize = 0;
+        long written = 0;
+        try {
+            for (int r = 0; r < k; r++) {
+                inputs[r] = new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(r)), 64 * 1024));
+                if (advance(inputs[r], r, headKeys, headOffsets)) {
+                    heap[heapSize++] = r;
+                    siftUp(heap, heapSize - 1, headKeys, headOffsets);
+                }
+            }
+            boolean any = false;
+            long lastKey = 0;
+            long lastOffset = 0;
+            while (heapSize > 0) {
+                int r = heap[0];
+                long key = headKeys[r];
+                long offset = headOffsets[r];
+                if (!any || key != lastKey || offset != lastOffset) {
+                    out.writeLong(key);
+                    out.writeLong(offset);
+                    written++;
+                    any = true;
+                    lastKey = key;
+                    lastOffset = offset;
+                }
+                if (!advance(inputs[r], r, headKeys, headOffsets)) {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(heap, heapSize, headKeys, headOffsets);
+            }
+        } finally {
+            for (DataInputStream in : inputs) {
+                if (in != null) in.close();
+            }
+        }
+        return written;
+    }
+
+    private static boolean advance(DataInputStream in, int r, long[] keys, long[] offsets) throws IOException {
+        try {
+            keys[r] = in.readLong();
+        } catch (EOFException e) {
+            return false;
+        }
+        offsets[r] = in.readLong();
+        return true;
+    }
+
+    private static boolean less(int a, int b, long[] keys, long[] offsets) {
+        int c = Long.compareUnsigned(keys[a], keys[b]);
+        return c < 0 || c == 0 && offsets[a] < offsets[b];
+    }
+
+    private static void siftUp(int[] heap, int i, long[] keys, long[] offsets) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(heap[i], heap[parent], keys, offsets)) return;
+            int t = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = t;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, long[] keys, long[] offsets) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) return;
+            if (child + 1 < size && less(heap[child + 1], heap[child], keys, offsets)) child++;
+            if (!less(heap[child], heap[i], keys, offsets)) return;
+            int t = heap[i];
+            heap[i] = heap[child];
+            heap[child] = t;
+            i = child;
+        }
+    }
+
+    private static DataOutputStream openOutput(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+    }
+}
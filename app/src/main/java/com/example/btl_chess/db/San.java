@@ -0,0 +1,207 @@
+package com.example.btl_chess.db;
+
+import com.example.btl_chess.Bitboards;
+import com.example.btl_chess.Move;
+import com.example.btl_chess.MoveGenerator;
+import com.example.btl_chess.Piece;
+import com.example.btl_chess.Position;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Đọc và ghi nước đi dạng ký hiệu đại số rút gọn (SAN), ví dụ "Nbd7", "exd6", "e8=Q+", "O-O".
+ * Khi đọc, các ô xuất phát có thể được lấy thẳng từ bitboard tấn công tới ô đích nên không phải
+ * sinh mọi nước đi; chỉ khi còn nhiều hơn một ứng viên mới cần kiểm tra quân bị ghim.
+ */
+public final class San {
+    private static final String PIECE_LETTERS = "KQBRN";
+
+    private San() {
+    }
+
+    public static int parse(Position p, CharSequence san) {
+        byte[] bytes = san.toString().getBytes(StandardCharsets.US_ASCII);
+        return parse(p, bytes, 0, bytes.length);
+    }
+
+    // Nước hợp lệ ở p ứng với SAN trong text[start, end), hoặc Move.NONE nếu sai hay không hợp lệ
+    public static int parse(Position p, byte[] text, int start, int end) {
+        // Bỏ dấu chiếu, chiếu hết và các chú thích !? ở cuối
+        while (end > start) {
+            int c = text[end - 1];
+            if (c != '+' && c != '#' && c != '!' && c != '?') break;
+            end--;
+        }
+        if (end - start < 2) return Move.NONE;
+
+        int us = p.sideToMove();
+        int c = text[start];
+        if (c == 'O' || c == '0') {
+            return parseCastle(p, text, start, end);
+        }
+
+        int type = Piece.PAWN;
+        int i = start;
+        int letter = PIECE_LETTERS.indexOf(c);
+        if (letter >= 0) {
+            type = letter;
+            i++;
+        }
+
+        // Phong cấp: "e8=Q" hoặc "e8Q"
+        int promotion = Piece.QUEEN;
+        boolean promotes = false;
+        if (type == Piece.PAWN) {
+            int last = text[end - 1];
+            int promo = PIECE_LETTERS.indexOf(last);
+            if (promo > 0) {
+                promotion = promo;
+                promotes = true;
+                end--;
+                if (end > i && text[end - 1] == '=') end--;
+            }
+        }
+        if (end - i < 2) return Move.NONE;
+
+        int toFile = text[end - 2] - 'a';
+        int toRank = text[end - 1] - '1';
+        if (toFile < 0 || toFile > 7 || toRank < 0 || toRank > 7) return Move.NONE;
+        int to = Bitboards.square(toFile, toRank);
+
+        // Phần giữa: cột và/hoặc hàng xuất phát, dấu ăn quân
+        int fromFile = -1;
+        int fromRank = -1;
+        boolean capture = false;
+        for (int k = i; k < end - 2; k++) {
+            int m = text[k];
+            if (m >= 'a' && m <= 'h' && fromFile < 0 && !capture) {
+                fromFile = m - 'a';
+            } else if (m >= '1' && m <= '8' && fromRank < 0 && !capture) {
+                fromRank = m - '1';
+            } else if ((m == 'x' || m == ':') && !capture) {
+                capture = true;
+            } else {
+                return Move.NONE;
+            }
+        }
+        boolean lastRank = toRank == (us == Piece.WHITE ? 7 : 0);
+        if (type == Piece.PAWN && promotes != lastRank) return Move.NONE;
+
+        long candidates;
+        if (type == Piece.PAWN) {
+            if (capture || fromFile >= 0 && fromFile != toFile) {
+                // Tốt ăn chéo: các ô mà tốt bên kia đứng sẽ tấn công được ô đích
+                candidates = Bitboards.pawnAttacks(us ^ 1, to);
+            } else {
+                int behind = us == Piece.WHITE ? to - 8 : to + 8;
+                candidates = behind < 0 || behind > 63 ? 0L : Bitboards.bit(behind);
+                if (behind >= 0 && behind < 64 && p.isEmpty(behind)) {
+                    // Tốt đi hai ô từ hàng xuất phát
+                    int start2 = us == Piece.WHITE ? to - 16 : to + 16;
+                    candidates = start2 >= 0 && start2 < 64 && toRank == (us == Piece.WHITE ? 3 : 4)
+                            ? Bitboards.bit(start2) : 0L;
+                }
+            }
+        } else {
+            candidates = Bitboards.attacks(type, to, p.occupied());
+        }
+        candidates &= p.pieces(us, type);
+        if (fromFile >= 0) candidates &= Bitboards.FILE_A << fromFile;
+        if (fromRank >= 0) candidates &= Bitboards.RANK_1 << (fromRank * 8);
+
+        int found = Move.NONE;
+        for (; candidates != 0; candidates &= candidates - 1) {
+            int from = Long.numberOfTrailingZeros(candidates);
+            int move = MoveGenerator.findLegalMove(p, from, to, promotion);
+            if (move == Move.NONE) continue;
+            // Hai quân cùng đi được mà SAN không phân biệt
+            if (found != Move.NONE) return Move.NONE;
+            found = move;
+        }
+        return found;
+    }
+
+    private static int parseCastle(Position p, byte[] text, int start, int end) {
+        int zero = text[start];
+        int length = end - start;
+        boolean queenSide;
+        if (length == 3 && text[start + 1] == '-' && text[start + 2] == zero) {
+            queenSide = false;
+        } else if (length == 5 && text[start + 1] == '-' && text[start + 2] == zero
+                && text[start + 3] == '-' && text[start + 4] == zero) {
+            queenSide = true;
+        } else {
+            return Move.NONE;
+        }
+        int king = p.kingSquare(p.sideToMove());
+        if (king == Position.NO_SQUARE) return Move.NONE;
+        int move = MoveGenerator.findLegalMove(p, king, queenSide ? king - 2 : king + 2, Piece.QUEEN);
+        return Move.isCastle(move) ? move : Move.NONE;
+    }
+
+    public static String toSan(Position p, int move) {
+        StringBuilder out = new StringBuilder(8);
+        append(p, move, out);
+        return out.toString();
+    }
+
+    /**
+     * Ghi SAN của nước move (phải hợp lệ ở p) vào out, kèm + hoặc #. Nước đi được thử trên p
+     * rồi hoàn tác, nên p phải là bàn cờ có thể sửa và không được dùng đồng thời ở luồng khác.
+     */
+    public static void append(Position p, int move, StringBuilder out) {
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int type = Piece.type(p.pieceAt(from));
+        if (Move.isCastle(move)) {
+            out.append(to > from ? "O-O" : "O-O-O");
+        } else if (type == Piece.PAWN) {
+            if (Move.isCapture(move)) {
+                out.append((char) ('a' + Bitboards.col(from))).append('x');
+            }
+            appendSquare(out, to);
+            if (Move.isPromotion(move)) {
+                out.append('=').append(PIECE_LETTERS.charAt(Move.promotionType(move)));
+            }
+        } else {
+            out.append(PIECE_LETTERS.charAt(type));
+            appendDisambiguation(p, type, from, to, out);
+            if (Move.isCapture(move)) {
+                out.append('x');
+            }
+            appendSquare(out, to);
+        }
+
+        p.makeMove(move);
+        if (p.inCheck()) {
+            out.append(MoveGenerator.hasLegalMoves(p) ? '+' : '#');
+        }
+        p.unmakeMove();
+    }
+
+    // Thêm cột, hàng hoặc cả hai khi có quân cùng loại khác cũng đi hợp lệ tới to
+    private static void appendDisambiguation(Position p, int type, int from, int to, StringBuilder out) {
+        long others = Bitboards.attacks(type, to, p.occupied()) & p.pieces(p.sideToMove(), type) & ~Bitboards.bit(from);
+        long rivals = 0L;
+        for (; others != 0; others &= others - 1) {
+            int sq = Long.numberOfTrailingZeros(others);
+            if ((MoveGenerator.legalTargets(p, sq) & Bitboards.bit(to)) != 0) {
+                rivals |= Bitboards.bit(sq);
+            }
+        }
+        if (rivals == 0) return;
+        long file = Bitboards.FILE_A << Bitboards.col(from);
+        long rank = Bitboards.RANK_1 << (Bitboards.row(from) * 8);
+        if ((rivals & file) == 0) {
+            out.append((char) ('a' + Bitboards.col(from)));
+        } else if ((rivals & rank) == 0) {
+            out.append((char) ('1' + Bitboards.row(from)));
+        } else {
+            appendSquare(out, from);
+        }
+    }
+
+    private static void appendSquare(StringBuilder out, int sq) {
+        out.append((char) ('a' + Bitboards.col(sq))).append((char) ('1' + Bitboards.row(sq)));
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.btl_chess.engine;
+
+import com.example.btl_chess.FenException;
+import com.example.btl_chess.Move;
+import com.example.btl_chess.Position;
+import com.example.btl_chess.db.PgnException;
+import com.example.btl_chess.db.PgnGame;
+import com.example.btl_chess.db.PgnReader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Phân tích hàng loạt thế cờ song song trên một ForkJoinPool, mỗi luồng có Engine riêng.
+ *
+ * <p>Đầu vào là các dòng FEN hoặc một tệp PGN (thế cờ trước mỗi nước đi của từng ván). Đầu vào được
+ * đọc dần: số thế cờ đang chờ bị giới hạn nên nguồn chỉ được đọc tiếp khi có chỗ, và kết quả được trả
+ * về theo đúng thứ tự đầu vào. Dòng FEN trống và dòng bắt đầu bằng '#' bị bỏ qua.
+ */
+public final class BatchAnalyzer implements Closeable {
+
+    /**
+     * Kết quả phân tích một thế cờ, hoặc lỗi nếu đầu vào không hợp lệ (FEN sai, ván PGN lỗi) hoặc
+     * việc tìm kiếm thất bại.
+     */
+    public static final class Analysis {
+        private final long index;
+        private final String input;
+        private final SearchResult result;
+        private final String error;
+
+        Analysis(long index, String input, SearchResult result, String error) {
+            this.index = index;
+            this.input = input;
+            this.result = result;
+            this.error = error;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        // null nếu có lỗi
+        public SearchResult getResult() {
+            return result;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isOk() {
+            return result != null;
+        }
+
+        // Một dòng phân cách bằng tab: chỉ số, nước đi, điểm, độ sâu, số nút, FEN
+        @Override
+        public String toString() {
+            if (result == null) {
+                return index + "\terror\t" + error + "\t" + input;
+            }
+            return index + "\t" + Move.toUci(result.getBestMove()) + "\t" + result.getScore()
+                    + "\t" + result.getDepth() + "\t" + result.getNodes() + "\t" + input;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Engine> engines;
+    private final long timeMillis;
+    private final int maxDepth;
+    private final int maxInFlight;
+
+    public BatchAnalyzer(long timeMillis) {
+        this(Runtime.getRuntime().availableProcessors(), timeMillis, Engine.MAX_DEPTH, TranspositionTable.DEFAULT_MEGABYTES);
+    }
+
+    // timeMillis và maxDepth áp dụng cho từng thế cờ; mỗi luồng dùng một bảng chuyển vị hashMegabytes
+    public BatchAnalyzer(int parallelism, long timeMillis, int maxDepth, final int hashMegabytes) {
+        int threads = Math.max(1, parallelism);
+        this.pool = new ForkJoinPool(threads);
+        this.timeMillis = timeMillis;
+        this.maxDepth = maxDepth;
+        // Đủ việc để các luồng không phải chờ khi thế cờ đầu hàng đợi chạy lâu hơn các thế sau
+        this.maxInFlight = threads * 4;
+        this.engines = new ThreadLocal<Engine>() {
+            @Override
+            protected Engine initialValue() {
+                return new Engine(hashMegabytes);
+            }
+        };
+    }
+
+    // Phân tích các dòng FEN, gọi sink theo thứ tự đầu vào trên luồng gọi; trả về số dòng đã xử lý
+    public long analyze(Iterator<String> fenLines, Consumer<Analysis> sink) {
+        ArrayDeque<ForkJoinTask<Analysis>> pending = new ArrayDeque<>(maxInFlight);
+        long index = 0;
+        while (fenLines.hasNext()) {
+            final String line = fenLines.next().trim();
+            if (line.isEmpty() || line.charAt(0) == '#') continue;
+            final long i = index++;
+            submit(pending, () -> analyzeOne(i, line), sink);
+        }
+        drain(pending, sink);
+        return index;
+    }
+
+    public long analyze(BufferedReader reader, Consumer<Analysis> sink) {
+        return analyze(reader.lines().iterator(), sink);
+    }
+
+    /**
+     * Phân tích thế cờ trước mỗi nước đi của từng ván, theo thứ tự ván rồi thứ tự nước, gọi sink trên
+     * luồng gọi. Ván lỗi cho một kết quả lỗi rồi đọc tiếp ván sau. Trả về số kết quả đã gửi.
+     */
+    public long analyze(PgnReader games, Consumer<Analysis> sink) throws IOException {
+        ArrayDeque<ForkJoinTask<Analysis>> pending = new ArrayDeque<>(maxInFlight);
+        long index = 0;
+        while (true) {
+            PgnGame game;
+            try {
+                game = games.next();
+            } catch (PgnException e) {
+                final long i = index++;
+                final String error = e.getMessage();
+                submit(pending, () -> new Analysis(i, "", null, error), sink);
+                continue;
+            }
+            if (game == null) break;
+            Position p = game.getStartPosition();
+            for (int ply = 0; ply < game.getMoveCount(); ply++) {
+                final long i = index++;
+                final Position position = p.copy();
+                submit(pending, () -> search(i, position.toFen(), position), sink);
+                p.makeMove(game.getMove(ply));
+            }
+        }
+        drain(pending, sink);
+        return index;
+    }
+
+    // Đưa việc vào pool; khi đã đủ maxInFlight việc đang chờ thì trả kết quả cũ nhất cho sink trước
+    private void submit(ArrayDeque<ForkJoinTask<Analysis>> pending, Callable<Analysis> task,
+                        Consumer<Analysis> sink) {
+        if (pending.size() >= maxInFlight) {
+            sink.accept(pending.poll().join());
+        }
+        pending.add(pool.submit(task));
+    }
+
+    private static void drain(ArrayDeque<ForkJoinTask<Analysis>> pending, Consumer<Analysis> sink) {
+        while (!pending.isEmpty()) {
+            sink.accept(pending.poll().join());
+        }
+    }
+
+    private Analysis analyzeOne(long index, String fen) {
+        Position position;
+        try {
+            position = Position.fromFen(fen);
+        } catch (FenException e) {
+            return new Analysis(index, fen, null, e.getMessage());
+        }
+        return search(index, fen, position);
+    }
+
+    // Lỗi của một thế cờ chỉ thành kết quả lỗi của thế đó, không dừng cả lượt phân tích
+    private Analysis search(long index, String input, Position position) {
+        try {
+            SearchResult result = engines.get().search(position, timeMillis, maxDepth);
+            return new Analysis(index, input, result, null);
+        } catch (RuntimeException e) {
+            // Engine có thể đang dở trạng thái: luồng này tạo engine mới cho thế cờ sau
+            engines.remove();
+            return new Analysis(index, input, null, e.toString());
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    // Chạy không cần giao diện: BatchAnalyzer [-pgn] <tệp FEN hoặc PGN | -> [ms mỗi thế cờ] [số luồng]
+    public static void main(String[] args) throws IOException {
+        boolean pgn = args.length > 0 && args[0].equals("-pgn");
+        int first = pgn ? 1 : 0;
+        if (args.length < first + 1) {
+            System.err.println("usage: BatchAnalyzer [-pgn] <fen-file|pgn-file|-> [millis-per-position] [threads]");
+            System.exit(2);
+        }
+        long millis = args.length > first + 1 ? Long.parseLong(args[first + 1]) : 1000;
+        int threads = args.length > first + 2 ? Integer.parseInt(args[first + 2])
+                : Runtime.getRuntime().availableProcessors();
+        InputStream in = args[first].equals("-") ? System.in : new FileInputStream(args[first]);
+        final PrintStream out = System.out;
+        try (BatchAnalyzer analyzer = new BatchAnalyzer(threads, millis, Engine.MAX_DEPTH, TranspositionTable.DEFAULT_MEGABYTES)) {
+            if (pgn) {
+                try (PgnReader reader = new PgnReader(in)) {
+                    analyzer.analyze(reader, out::println);
+                }
+            } else {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                    analyzer.analyze(reader, out::println);
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.btl_chess.engine;
+
+import com.example.btl_chess.ChessGame;
+import com.example.btl_chess.Move;
+import com.example.btl_chess.Position;
+import com.example.btl_chess.db.OpeningBook;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Máy chơi cờ: tìm nước đi tốt nhất cho bên tới lượt trong một khoảng thời gian cho trước.
+ * Có thể gọi {@link #stop()} từ luồng khác để dừng sớm, khi đó kết quả của độ sâu
+ * hoàn thành gần nhất được trả về.
+ *
+ * <p>Với nhiều luồng (Lazy SMP), luồng gọi là luồng chính, các luồng phụ cùng tìm từ một thế cờ gốc
+ * trên bàn cờ riêng và chỉ chia sẻ bảng chuyển vị. Khi luồng chính xong, các luồng phụ bị dừng.
+ */
+public class Engine {
+    public static final int MAX_DEPTH = Searcher.MAX_PLY - 1;
+
+    private static final AtomicInteger HELPER_ID = new AtomicInteger();
+
+    private final TranspositionTable table;
+    private volatile Searcher[] searchers;
+    private ExecutorService helpers;
+    private volatile OpeningBook book;
+    // Tăng mỗi lần stop(); lần tìm kiếm mang giá trị cũ hơn coi như đã bị dừng
+    private final AtomicInteger stopCount = new AtomicInteger();
+    private final Random bookRandom = new Random();
+
+    public Engine() {
+        this(TranspositionTable.DEFAULT_MEGABYTES, 1);
+    }
+
+    public Engine(int hashMegabytes) {
+        this(hashMegabytes, 1);
+    }
+
+    public Engine(int hashMegabytes, int threads) {
+        table = new TranspositionTable(hashMegabytes);
+        setThreads(threads);
+    }
+
+    public SearchResult search(Position position, long timeMillis) {
+        return search(position, timeMillis, MAX_DEPTH);
+    }
+
+    // Tìm trên ảnh chụp của ván cờ nên người chơi vẫn có thể đi tiếp trong lúc máy suy nghĩ
+    public SearchResult search(ChessGame game, long timeMillis) {
+        return search(game.snapshot(), timeMillis, MAX_DEPTH);
+    }
+
+    public SearchResult search(Position position, long timeMillis, int maxDepth) {
+        return search(position, timeMillis, maxDepth, stopToken());
+    }
+
+    // Giá trị hiện tại của bộ đếm stop(); đọc trước khi giao việc rồi truyền cho search
+    public int stopToken() {
+        return stopCount.get();
+    }
+
+    /**
+     * Mỗi Engine chỉ chạy một lần tìm kiếm tại một thời điểm. Nếu stop() đã được gọi sau khi lấy
+     * stopToken (kể cả trước khi hàm này bắt đầu) thì dừng ngay và trả về nước hợp lệ đầu tiên.
+     */
+    public synchronized SearchResult search(Position position, long timeMillis, int maxDepth, int stopToken) {
+        final Searcher[] all = searchers;
+        // Thế cờ có trong sách khai cuộc thì trả lời ngay, không tìm kiếm
+        OpeningBook b = book;
+        if (b != null) {
+            int move = b.pick(position, bookRandom);
+            if (move != Move.NONE) {
+                return SearchResult.fromBook(move, all.length);
+            }
+        }
+
+        final Position root = position.copy();
+        table.newSearch();
+        for (Searcher s : all) {
+            s.prepare();
+        }
+        // prepare() xoá cờ dừng; lệnh stop() đến trước đó vẫn được nhận qua bộ đếm
+        if (stopCount.get() != stopToken) {
+            for (Searcher s : all) {
+                s.stop();
+            }
+        }
+
+        List<Future<SearchResult>> futures = new ArrayList<>(all.length - 1);
+        for (int i = 1; i < all.length; i++) {
+            final Searcher helper = all[i];
+            futures.add(helpers.submit(() -> helper.search(root, timeMillis, maxDepth)));
+        }
+
+        SearchResult best = all[0].search(root, timeMillis, maxDepth);
+        long elapsed = Math.max(best.getElapsedMillis(), 1);
+        for (int i = 1; i < all.length; i++) {
+            all[i].stop();
+        }
+
+        long[] threadNodes = new long[all.length];
+        threadNodes[0] = best.getNodes();
+        long totalNodes = best.getNodes();
+        for (int i = 0; i < futures.size(); i++) {
+            SearchResult r = helperResult(futures.get(i));
+            if (r == null) continue;
+            threadNodes[i + 1] = r.getNodes();
+            totalNodes += r.getNodes();
+            // Luồng phụ hoàn thành sâu hơn luồng chính thì dùng kết quả của nó
+            if (r.getBestMove() != Move.NONE && r.getDepth() > best.getDepth()) {
+                best = r;
+            }
+        }
+        if (all.length == 1) {
+            return best;
+        }
+        return new SearchResult(best.getBestMove(), best.getScore(), best.getDepth(), totalNodes,
+                elapsed, best.getPv(), threadNodes);
+    }
+
+    private static SearchResult helperResult(Future<SearchResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    // Số luồng tìm kiếm, gồm cả luồng gọi search(). Không gọi khi đang tìm kiếm.
+    public synchronized void setThreads(int threads) {
+        int n = Math.max(1, threads);
+        if (helpers != null) {
+            helpers.shutdownNow();
+            helpers = null;
+        }
+        searchers = new Searcher[n];
+        for (int i = 0; i < n; i++) {
+            searchers[i] = new Searcher(table, i);
+        }
+        if (n > 1) {
+            helpers = Executors.newFixedThreadPool(n - 1, r -> {
+                Thread t = new Thread(r, "search-helper-" + HELPER_ID.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public synchronized int getThreads() {
+        return searchers.length;
+    }
+
+    // Sách khai cuộc dùng trước khi tìm kiếm, null để tắt. Engine không đóng sách.
+    public void setBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    public synchronized void setHashSize(int megabytes) {
+        table.resize(megabytes);
+    }
+
+    // Xoá bảng chuyển vị, ví dụ khi bắt đầu ván mới
+    public synchronized void clearHash() {
+        table.clear();
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    // Giải phóng các luồng phụ, sau đó Engine chỉ tìm trên một luồng
+    public synchronized void shutdown() {
+        if (helpers != null) {
+            helpers.shutdownNow();
+            helpers = null;
+        }
+        searchers = new Searcher[]{new Searcher(table, 0)};
+    }
+
+    public void stop() {
+        stopCount.incrementAndGet();
+        Searcher[] all = searchers;
+        for (Searcher s : all) {
+            s.stop();
+        }
+    }
+}
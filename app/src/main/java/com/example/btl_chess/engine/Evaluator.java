@@ -0,0 +1,131 @@
+package com.example.btl_chess.engine;
+
+import com.example.btl_chess.Bitboards;
+import com.example.btl_chess.Piece;
+import com.example.btl_chess.Position;
+
+/**
+ * Hàm đánh giá tĩnh: giá trị quân cộng bảng điểm theo ô, điểm của vua được nội suy
+ * giữa trung cuộc và tàn cuộc theo lượng quân còn lại. Kết quả tính theo góc nhìn bên tới lượt.
+ */
+public final class Evaluator {
+    // Giá trị quân theo thứ tự của Piece: vua, hậu, tượng, xe, mã, tốt
+    public static final int[] VALUES = {0, 900, 330, 500, 320, 100};
+
+    // Trọng số giai đoạn ván cờ của từng loại quân, tổng 24 ở thế xuất phát
+    private static final int[] PHASE = {0, 4, 1, 2, 1, 0};
+    private static final int MAX_PHASE = 24;
+
+    // Các bảng viết từ hàng 8 xuống hàng 1 theo góc nhìn của trắng
+    private static final int[] PAWN_TABLE = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            50, 50, 50, 50, 50, 50, 50, 50,
+            10, 10, 20, 30, 30, 20, 10, 10,
+            5, 5, 10, 25, 25, 10, 5, 5,
+            0, 0, 0, 20, 20, 0, 0, 0,
+            5, -5, -10, 0, 0, -10, -5, 5,
+            5, 10, 10, -20, -20, 10, 10, 5,
+            0, 0, 0, 0, 0, 0, 0, 0
+    };
+    private static final int[] KNIGHT_TABLE = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20, 0, 0, 0, 0, -20, -40,
+            -30, 0, 10, 15, 15, 10, 0, -30,
+            -30, 5, 15, 20, 20, 15, 5, -30,
+            -30, 0, 15, 20, 20, 15, 0, -30,
+            -30, 5, 10, 15, 15, 10, 5, -30,
+            -40, -20, 0, 5, 5, 0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50
+    };
+    private static final int[] BISHOP_TABLE = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 10, 10, 5, 0, -10,
+            -10, 5, 5, 10, 10, 5, 5, -10,
+            -10, 0, 10, 10, 10, 10, 0, -10,
+            -10, 10, 10, 10, 10, 10, 10, -10,
+            -10, 5, 0, 0, 0, 0, 5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20
+    };
+    private static final int[] ROOK_TABLE = {
+            0, 0, 0, 0, 0, 0, 0, 0,
+            5, 10, 10, 10, 10, 10, 10, 5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            -5, 0, 0, 0, 0, 0, 0, -5,
+            0, 0, 0, 5, 5, 0, 0, 0
+    };
+    private static final int[] QUEEN_TABLE = {
+            -20, -10, -10, -5, -5, -10, -10, -20,
+            -10, 0, 0, 0, 0, 0, 0, -10,
+            -10, 0, 5, 5, 5, 5, 0, -10,
+            -5, 0, 5, 5, 5, 5, 0, -5,
+            0, 0, 5, 5, 5, 5, 0, -5,
+            -10, 5, 5, 5, 5, 5, 0, -10,
+            -10, 0, 5, 0, 0, 0, 0, -10,
+            -20, -10, -10, -5, -5, -10, -10, -20
+    };
+    private static final int[] KING_MIDDLE_TABLE = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+            20, 20, 0, 0, 0, 0, 20, 20,
+            20, 30, 10, 0, 0, 10, 30, 20
+    };
+    private static final int[] KING_END_TABLE = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10, 0, 0, -10, -20, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 30, 40, 40, 30, -10, -30,
+            -30, -10, 20, 30, 30, 20, -10, -30,
+            -30, -30, 0, 0, 0, 0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50
+    };
+    private static final int[][] TABLES = {null, QUEEN_TABLE, BISHOP_TABLE, ROOK_TABLE, KNIGHT_TABLE, PAWN_TABLE};
+
+    private Evaluator() {
+    }
+
+    public static int evaluate(Position p) {
+        int score = 0;
+        int phase = 0;
+        for (int type = Piece.QUEEN; type <= Piece.PAWN; type++) {
+            int[] table = TABLES[type];
+            long white = p.pieces(Piece.WHITE, type);
+            long black = p.pieces(Piece.BLACK, type);
+            phase += PHASE[type] * (Long.bitCount(white) + Long.bitCount(black));
+            score += VALUES[type] * (Long.bitCount(white) - Long.bitCount(black));
+            while (white != 0) {
+                score += table[tableIndex(Piece.WHITE, Long.numberOfTrailingZeros(white))];
+                white &= white - 1;
+            }
+            while (black != 0) {
+                score -= table[tableIndex(Piece.BLACK, Long.numberOfTrailingZeros(black))];
+                black &= black - 1;
+            }
+        }
+
+        phase = Math.min(phase, MAX_PHASE);
+        score += kingScore(p, Piece.WHITE, phase) - kingScore(p, Piece.BLACK, phase);
+        return p.sideToMove() == Piece.WHITE ? score : -score;
+    }
+
+    private static int kingScore(Position p, int color, int phase) {
+        int king = p.kingSquare(color);
+        if (king == Position.NO_SQUARE) return 0;
+        int index = tableIndex(color, king);
+        return (KING_MIDDLE_TABLE[index] * phase + KING_END_TABLE[index] * (MAX_PHASE - phase)) / MAX_PHASE;
+    }
+
+    // Đổi ô trên bàn cờ thành chỉ số trong bảng (bảng được viết từ hàng 8 xuống)
+    private static int tableIndex(int color, int sq) {
+        int row = color == Piece.WHITE ? 7 - Bitboards.row(sq) : Bitboards.row(sq);
+        return row * 8 + Bitboards.col(sq);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.btl_chess.engine;
+
+import com.example.btl_chess.Move;
+
+/**
+ * Kết quả của một lần tìm kiếm: nước đi tốt nhất, điểm, độ sâu đã hoàn thành và thống kê nút.
+ * Nước lấy từ sách khai cuộc được đánh dấu bằng {@link #isBookMove()}, khi đó không có điểm,
+ * độ sâu hay số nút.
+ */
+public final class SearchResult {
+    private final int bestMove;
+    private final int score;
+    private final int depth;
+    private final long nodes;
+    private final long elapsedMillis;
+    private final int[] pv;
+    private final long[] threadNodes;
+    private final boolean bookMove;
+
+    public SearchResult(int bestMove, int score, int depth, long nodes, long elapsedMillis, int[] pv,
+                        long[] threadNodes) {
+        this(bestMove, score, depth, nodes, elapsedMillis, pv, threadNodes, false);
+    }
+
+    private SearchResult(int bestMove, int score, int depth, long nodes, long elapsedMillis, int[] pv,
+                         long[] threadNodes, boolean bookMove) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.elapsedMillis = elapsedMillis;
+        this.pv = pv;
+        this.threadNodes = threadNodes;
+        this.bookMove = bookMove;
+    }
+
+    // Nước move lấy từ sách khai cuộc, không qua tìm kiếm
+    public static SearchResult fromBook(int move, int threads) {
+        return new SearchResult(move, 0, 0, 0, 0, new int[]{move}, new long[threads], true);
+    }
+
+    public boolean isBookMove() {
+        return bookMove;
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    // Điểm theo centipawn từ góc nhìn bên tới lượt
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    // Số nút của từng luồng tìm kiếm, phần tử 0 là luồng chính
+    public long[] getThreadNodes() {
+        return threadNodes.clone();
+    }
+
+    public long getNodesPerSecond() {
+        return nodes * 1000 / Math.max(1, elapsedMillis);
+    }
+
+    public int[] getPv() {
+        return pv.clone();
+    }
+
+    public boolean isMate() {
+        return !bookMove && Math.abs(score) >= Searcher.MATE - Searcher.MAX_PLY;
+    }
+
+    @Override
+    public String toString() {
+        if (bookMove) {
+            return "SearchResult{bestMove=" + Move.toUci(bestMove) + ", book}";
+        }
+        return "SearchResult{" +
+                "bestMove=" + Move.toUci(bestMove) +
+                ", score=" + score +
+                ", depth=" + depth +
+                ", nodes=" + nodes +
+                ", nps=" + getNodesPerSecond() +
+                ", threads=" + threadNodes.length +
+                '}';
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.btl_chess.engine;
+
+import com.example.btl_chess.Move;
+import com.example.btl_chess.MoveGenerator;
+import com.example.btl_chess.Piece;
+import com.example.btl_chess.Position;
+
+/**
+ * Một luồng tìm kiếm: alpha-beta lặp sâu dần với tìm kiếm biến chính (PVS) và tìm kiếm tĩnh.
+ * Mỗi Searcher có bàn cờ, ngăn xếp hoàn tác và bộ đệm nước đi riêng nên không cấp phát
+ * trong lúc tìm kiếm và có thể chạy song song với các Searcher khác, chỉ chia sẻ bảng chuyển vị.
+ * Searcher có id khác 0 là luồng phụ: không tự dừng sớm theo thời gian mà chạy tới khi bị dừng.
+ */
+final class Searcher {
+    static final int INFINITY = 32000;
+    static final int MATE = 31000;
+    static final int MAX_PLY = 128;
+
+    // Số nút giữa hai lần kiểm tra đồng hồ
+    private static final int TIME_CHECK_INTERVAL = 2048;
+
+    private static final int PV_SCORE = 2_000_000;
+    private static final int CAPTURE_SCORE = 1_000_000;
+    private static final int KILLER_SCORE = 900_000;
+    private static final int HISTORY_LIMIT = 800_000;
+
+    private final TranspositionTable table;
+    private final int id;
+    private final Position position = new Position();
+    private final int[][] moves = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+    private final int[][] moveScores = new int[MAX_PLY][MoveGenerator.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[] history = new int[Piece.COUNT * 64];
+    private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+    private final int[] previousPv = new int[MAX_PLY];
+    private int previousPvLength;
+    private boolean followPv;
+
+    private volatile boolean stopped;
+    private long deadline;
+    private long nodes;
+
+    Searcher(TranspositionTable table, int id) {
+        this.table = table;
+        this.id = id;
+    }
+
+    // Gọi trên luồng điều phối trước khi giao việc; lệnh stop() đến trước đó được Engine nhận lại qua stopToken
+    void prepare() {
+        stopped = false;
+        nodes = 0;
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    long getNodes() {
+        return nodes;
+    }
+
+    SearchResult search(Position root, long timeMillis, int maxDepth) {
+        long start = System.currentTimeMillis();
+        deadline = start + timeMillis;
+        position.copyFrom(root);
+        resetHeuristics();
+
+        int count = MoveGenerator.generateLegal(position, moves[0]);
+        if (count == 0) {
+            int score = position.inCheck() ? -MATE : 0;
+            return new SearchResult(Move.NONE, score, 0, 0, System.currentTimeMillis() - start, new int[0],
+                    new long[]{0});
+        }
+
+        // Nếu hết giờ trước khi xong độ sâu 1 vẫn có một nước đi hợp lệ để trả về
+        int bestMove = moves[0][0];
+        int bestScore = 0;
+        int completedDepth = 0;
+        int[] bestPv = {bestMove};
+
+        // Luồng phụ lẻ bắt đầu lệch một độ sâu để các luồng không đi cùng một cây
+        int firstDepth = id % 2 == 1 ? Math.min(2, maxDepth) : 1;
+        for (int depth = firstDepth; depth <= Math.min(maxDepth, MAX_PLY - 1); depth++) {
+            followPv = true;
+            int score = alphaBeta(depth, 0, -INFINITY, INFINITY);
+            if (stopped) break;
+
+            completedDepth = depth;
+            bestScore = score;
+            previousPvLength = pvLength[0];
+            System.arraycopy(pv[0], 0, previousPv, 0, previousPvLength);
+            if (previousPvLength > 0) {
+                bestMove = previousPv[0];
+                bestPv = new int[previousPvLength];
+                System.arraycopy(previousPv, 0, bestPv, 0, previousPvLength);
+            }
+
+            // Độ sâu tiếp theo tốn nhiều thời gian hơn tổng các độ sâu trước, không kịp thì dừng
+            long elapsed = System.currentTimeMillis() - start;
+            if ((id == 0 && elapsed * 2 > timeMillis) || Math.abs(score) >= MATE - MAX_PLY) break;
+        }
+
+        return new SearchResult(bestMove, bestScore, completedDepth, nodes,
+                System.currentTimeMillis() - start, bestPv, new long[]{nodes});
+    }
+
+    private int alphaBeta(int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = 0;
+        if (ply > 0 && (position.halfmoveClock() >= 100 || position.repetitionCount() > 0)) {
+            return 0;
+        }
+
+        boolean inCheck = position.inCheck();
+        // Kéo dài độ sâu khi bị chiếu để không bỏ sót đòn chiếu hết
+        if (inCheck) depth++;
+        if (depth <= 0) return quiesce(ply, alpha, beta);
+        if (ply >= MAX_PLY - 1) return Evaluator.evaluate(position);
+
+        countNode();
+        if (stopped) return 0;
+
+        // Nút PV không cắt bằng bảng chuyển vị để giữ nguyên biến chính
+        long key = position.key();
+        long entry = table.probe(key);
+        int ttMove = TranspositionTable.move(entry);
+        boolean pvNode = beta - alpha > 1;
+        if (entry != 0 && !pvNode && ply > 0 && TranspositionTable.depth(entry) >= depth) {
+            int score = scoreFromTable(TranspositionTable.score(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.BOUND_EXACT
+                    || (bound == TranspositionTable.BOUND_LOWER && score >= beta)
+                    || (bound == TranspositionTable.BOUND_UPPER && score <= alpha)) {
+                return score;
+            }
+        }
+
+        int[] list = moves[ply];
+        int count = MoveGenerator.generateLegal(position, list);
+        if (count == 0) {
+            return inCheck ? -MATE + ply : 0;
+        }
+        scoreMoves(ply, count, ttMove);
+
+        int originalAlpha = alpha;
+        int bestMove = Move.NONE;
+        int bestScore = -INFINITY;
+        for (int i = 0; i < count; i++) {
+            int move = pickNext(ply, i, count);
+            position.makeMove(move);
+            int score;
+            if (i == 0) {
+                score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha);
+            } else {
+                // Các nước sau được thử với cửa sổ rỗng, chỉ tìm lại đầy đủ khi vượt alpha
+                score = -alphaBeta(depth - 1, ply + 1, -alpha - 1, -alpha);
+                if (score > alpha && score < beta) {
+                    score = -alphaBeta(depth - 1, ply + 1, -beta, -alpha);
+                }
+            }
+            position.unmakeMove();
+            followPv = false;
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePv(ply, move);
+                    if (score >= beta) {
+                        if (!Move.isCapture(move) && !Move.isPromotion(move)) {
+                            rememberQuietCutoff(ply, move, depth);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+
+        int bound = bestScore >= beta ? TranspositionTable.BOUND_LOWER
+                : bestScore > originalAlpha ? TranspositionTable.BOUND_EXACT
+                : TranspositionTable.BOUND_UPPER;
+        // Cận trên không cho biết nước tốt nhất, giữ lại nước cũ trong bảng nếu có
+        table.store(key, bound == TranspositionTable.BOUND_UPPER ? Move.NONE : bestMove,
+                scoreToTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    private int quiesce(int ply, int alpha, int beta) {
+        pvLength[ply] = 0;
+        countNode();
+        if (stopped) return 0;
+        if (ply >= MAX_PLY - 1) return Evaluator.evaluate(position);
+
+        boolean inCheck = position.inCheck();
+        int[] list = moves[ply];
+        int count;
+        int bestScore;
+        if (inCheck) {
+            // Bị chiếu thì không được "đứng yên", phải xét mọi nước thoát chiếu
+            count = MoveGenerator.generateLegal(position, list);
+            if (count == 0) return -MATE + ply;
+            bestScore = -INFINITY;
+        } else {
+            int standPat = Evaluator.evaluate(position);
+            if (standPat >= beta) return standPat;
+            if (standPat > alpha) alpha = standPat;
+            bestScore = standPat;
+            count = MoveGenerator.generateCaptures(position, list);
+        }
+        followPv = false;
+        scoreMoves(ply, count, Move.NONE);
+
+        for (int i = 0; i < count; i++) {
+            int move = pickNext(ply, i, count);
+            position.makeMove(move);
+            int score = -quiesce(ply + 1, -beta, -alpha);
+            position.unmakeMove();
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (score >= beta) break;
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    private void countNode() {
+        nodes++;
+        if ((nodes & (TIME_CHECK_INTERVAL - 1)) == 0 && System.currentTimeMillis() >= deadline) {
+            stopped = true;
+        }
+    }
+
+    // Điểm chiếu hết được lưu theo khoảng cách tới nút hiện tại, không theo khoảng cách tới gốc
+    private static int scoreToTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) return score + ply;
+        if (score <= -MATE + MAX_PLY) return score - ply;
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) return score - ply;
+        if (score <= -MATE + MAX_PLY) return score + ply;
+        return score;
+    }
+
+    // Thứ tự: nước của biến chính, nước trong bảng chuyển vị, ăn quân theo MVV-LVA, nước killer, cuối cùng theo history
+    private void scoreMoves(int ply, int count, int ttMove) {
+        int[] list = moves[ply];
+        int[] scores = moveScores[ply];
+        int pvMove = Move.NONE;
+        if (followPv) {
+            if (ply < previousPvLength) {
+                pvMove = previousPv[ply];
+            }
+            followPv = false;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int move = list[i];
+            if (move == pvMove) {
+                scores[i] = PV_SCORE;
+                followPv = true;
+            } else if (move == ttMove) {
+                scores[i] = PV_SCORE - 1;
+            } else if (Move.isCapture(move) || Move.isPromotion(move)) {
+                int victim = Move.flag(move) == Move.EN_PASSANT
+                        ? Piece.PAWN
+                        : Piece.type(position.pieceAt(Move.to(move)));
+                int attacker = Piece.type(position.pieceAt(Move.from(move)));
+                int gain = Move.isCapture(move) ? Evaluator.VALUES[victim] * 16 - Evaluator.VALUES[attacker] / 16 : 0;
+                if (Move.isPromotion(move)) {
+                    gain += Evaluator.VALUES[Move.promotionType(move)] * 16;
+                }
+                scores[i] = CAPTURE_SCORE + gain;
+            } else if (move == killers[ply][0]) {
+                scores[i] = KILLER_SCORE;
+            } else if (move == killers[ply][1]) {
+                scores[i] = KILLER_SCORE - 1;
+            } else {
+                scores[i] = history[position.pieceAt(Move.from(move)) * 64 + Move.to(move)];
+            }
+        }
+    }
+
+    // Chọn dần nước có điểm cao nhất còn lại, rẻ hơn sắp xếp cả danh sách khi cắt tỉa sớm
+    private int pickNext(int ply, int index, int count) {
+        int[] list = moves[ply];
+        int[] scores = moveScores[ply];
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = list[best];
+        list[best] = list[index];
+        list[index] = move;
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index] = score;
+        return move;
+    }
+
+    private void rememberQuietCutoff(int ply, int move, int depth) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int index = position.pieceAt(Move.from(move)) * 64 + Move.to(move);
+        history[index] += depth * depth;
+        if (history[index] >= HISTORY_LIMIT) {
+            for (int i = 0; i < history.length; i++) {
+                history[i] /= 2;
+            }
+        }
+    }
+
+    private void updatePv(int ply, int move) {
+        int[] line = pv[ply];
+        line[0] = move;
+        int childLength = ply + 1 < MAX_PLY ? pvLength[ply + 1] : 0;
+        if (childLength > 0) {
+            System.arraycopy(pv[ply + 1], 0, line, 1, childLength);
+        }
+        pvLength[ply] = childLength + 1;
+    }
+
+    private void resetHeuristics() {
+        for (int[] pair : killers) {
+            pair[0] = Move.NONE;
+            pair[1] = Move.NONE;
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] /= 8;
+        }
+        previousPvLength = 0;
+    }
+}
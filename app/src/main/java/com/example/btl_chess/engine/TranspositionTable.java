@@ -0,0 +1,173 @@
+package com.example.btl_chess.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bảng chuyển vị dùng chung giữa các luồng tìm kiếm, lưu trong một mảng long[] duy nhất.
+ *
+ * <p>Mỗi mục gồm hai long: (khoá XOR dữ liệu, dữ liệu). Các luồng ghi đè lên nhau không cần khoá;
+ * một mục bị ghi dở (hai long đến từ hai lần ghi khác nhau) sẽ không qua được phép kiểm tra XOR
+ * khi đọc và được coi như không có. Mỗi nhóm có hai mục: mục đầu giữ kết quả sâu nhất,
+ * mục sau luôn bị thay thế.
+ */
+public final class TranspositionTable {
+    public static final int BOUND_EXACT = 1;
+    public static final int BOUND_LOWER = 2;
+    public static final int BOUND_UPPER = 3;
+
+    public static final int DEFAULT_MEGABYTES = 16;
+
+    // Mỗi nhóm 2 mục x 2 long
+    private static final int LONGS_PER_BUCKET = 4;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * 8;
+
+    // Bố cục dữ liệu: bit 0-15 nước đi, 16-31 điểm, 32-39 độ sâu, 40-41 loại cận, 42-49 thế hệ, bit 50 đánh dấu có dữ liệu
+    private static final long PRESENT = 1L << 50;
+
+    private long[] table;
+    private volatile int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    public TranspositionTable() {
+        this(DEFAULT_MEGABYTES);
+    }
+
+    public TranspositionTable(int megabytes) {
+        resize(megabytes);
+    }
+
+    // Số nhóm được làm tròn xuống luỹ thừa của 2 để chỉ số là key & mask. Không gọi khi đang tìm kiếm.
+    public synchronized void resize(int megabytes) {
+        long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+        long buckets = Long.highestOneBit(Math.max(1, bytes / BYTES_PER_BUCKET));
+        buckets = Math.min(buckets, Integer.MAX_VALUE / LONGS_PER_BUCKET + 1L);
+        table = new long[(int) (buckets * LONGS_PER_BUCKET)];
+        generation = 0;
+        resetCounters();
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(table, 0L);
+        generation = 0;
+        resetCounters();
+    }
+
+    // Gọi trước mỗi lần tìm kiếm để các mục cũ được ưu tiên thay thế
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    // Trả về dữ liệu của mục khớp khoá, hoặc 0 nếu không có
+    public long probe(long key) {
+        long[] t = table;
+        int base = index(key, t);
+        probes.increment();
+        for (int i = base; i < base + LONGS_PER_BUCKET; i += 2) {
+            long data = t[i + 1];
+            if ((t[i] ^ data) == key && (data & PRESENT) != 0) {
+                hits.increment();
+                return data;
+            }
+        }
+        return 0L;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        long[] t = table;
+        int base = index(key, t);
+        int gen = generation;
+        long data = (move & 0xFFFFL)
+                | ((score & 0xFFFFL) << 16)
+                | ((long) (Math.max(0, depth) & 0xFF) << 32)
+                | ((long) bound << 40)
+                | ((long) gen << 42)
+                | PRESENT;
+
+        long deepData = t[base + 1];
+        boolean sameKey = (t[base] ^ deepData) == key;
+        int slot;
+        // Mục sâu được thay khi cùng thế cờ, khi kết quả mới sâu hơn hoặc khi mục đó thuộc lần tìm kiếm trước
+        if (sameKey || depth >= depth(deepData) || generation(deepData) != gen) {
+            slot = base;
+            if (sameKey && move == 0) {
+                data |= deepData & 0xFFFFL;
+            }
+        } else {
+            slot = base + 2;
+        }
+        t[slot + 1] = data;
+        t[slot] = key ^ data;
+        stores.increment();
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFF);
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> 16);
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> 32) & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> 40) & 0x3);
+    }
+
+    private static int generation(long data) {
+        return (int) ((data >>> 42) & 0xFF);
+    }
+
+    public int getMegabytes() {
+        return (int) ((long) table.length * 8 / (1024 * 1024));
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    public double getHitRate() {
+        long p = probes.sum();
+        return p == 0 ? 0.0 : (double) hits.sum() / p;
+    }
+
+    // Tỉ lệ phần nghìn số mục thuộc lần tìm kiếm hiện tại, ước lượng trên 1000 mục đầu
+    public int getOccupancyPermill() {
+        long[] t = table;
+        int gen = generation;
+        int entries = Math.min(1000, t.length / 2);
+        int used = 0;
+        for (int i = 0; i < entries; i++) {
+            long data = t[i * 2 + 1];
+            if ((data & PRESENT) != 0 && generation(data) == gen) {
+                used++;
+            }
+        }
+        return entries == 0 ? 0 : used * 1000 / entries;
+    }
+
+    public void resetCounters() {
+        probes.reset();
+        hits.reset();
+        stores.reset();
+    }
+
+    private int index(long key, long[] t) {
+        int mask = (t.length / LONGS_PER_BUCKET) - 1;
+        return (int) (key & mask) * LONGS_PER_BUCKET;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.btl_chess;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Đếm perft trên các thế cờ kiểm thử chuẩn (https://www.chessprogramming.org/Perft_Results),
+ * độ sâu nhỏ để chạy nhanh trên máy phát triển.
+ */
+public class MoveGeneratorTest {
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    private static final String POSITION_3 = "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+    private static final String POSITION_4 = "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1";
+    private static final String POSITION_5 = "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8";
+
+    @Test
+    public void perft_startPosition() {
+        Position p = new Position();
+        p.setStartPosition();
+        assertPerft(p, 20, 400, 8902, 197281);
+    }
+
+    @Test
+    public void perft_kiwipete() {
+        assertPerft(Position.fromFen(KIWIPETE), 48, 2039, 97862);
+    }
+
+    @Test
+    public void perft_position3() {
+        assertPerft(Position.fromFen(POSITION_3), 14, 191, 2812, 43238);
+    }
+
+    @Test
+    public void perft_position4() {
+        assertPerft(Position.fromFen(POSITION_4), 6, 264, 9467);
+    }
+
+    @Test
+    public void perft_position5() {
+        assertPerft(Position.fromFen(POSITION_5), 44, 1486, 62379);
+    }
+
+    // Đi ngẫu nhiên rồi hoàn tác từng nước: bàn cờ, FEN và khoá phải trở lại như cũ
+    @Test
+    public void makeUnmake_restoresPosition() {
+        Random random = new Random(1);
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (String fen : new String[]{KIWIPETE, POSITION_3, POSITION_4, POSITION_5}) {
+            Position p = Position.fromFen(fen);
+            String[] fens = new String[60];
+            long[] keys = new long[60];
+            int plies = 0;
+            while (plies < fens.length) {
+                int count = MoveGenerator.generateLegal(p, moves);
+                if (count == 0) break;
+                fens[plies] = p.toFen();
+                keys[plies] = p.key();
+                p.makeMove(moves[random.nextInt(count)]);
+                plies++;
+                assertEquals("incremental key", p.computeKey(), p.key());
+            }
+            while (plies > 0) {
+                p.unmakeMove();
+                plies--;
+                assertEquals(fens[plies], p.toFen());
+                assertEquals(keys[plies], p.key());
+            }
+            assertEquals(fen, p.toFen());
+        }
+    }
+
+    // Cùng một thế cờ theo hai thứ tự nước đi, hay đọc lại từ FEN, có cùng khoá
+    @Test
+    public void zobrist_transpositionsShareKey() {
+        Position a = new Position();
+        a.setStartPosition();
+        play(a, 6, 21, 57, 42, 1, 18, 62, 45);
+        Position b = new Position();
+        b.setStartPosition();
+        play(b, 1, 18, 62, 45, 6, 21, 57, 42);
+        assertEquals(a.toFen(), b.toFen());
+        assertEquals(a.key(), b.key());
+        assertEquals(a.key(), Position.fromFen(a.toFen()).key());
+    }
+
+    // Ô bắt tốt qua đường làm khoá khác dù quân giống nhau
+    @Test
+    public void zobrist_enPassantChangesKey() {
+        Position withEp = Position.fromFen("4k3/8/8/8/3pP3/8/8/4K3 b - e3 0 1");
+        Position withoutEp = Position.fromFen("4k3/8/8/8/3pP3/8/8/4K3 b - - 0 1");
+        assertEquals(withEp.computeKey(), withEp.key());
+        assertNotEquals(withoutEp.key(), withEp.key());
+    }
+
+    // Mỗi cặp số là ô đi và ô đến của một nước hợp lệ
+    private static void play(Position p, int... squares) {
+        for (int i = 0; i < squares.length; i += 2) {
+            int move = MoveGenerator.findLegalMove(p, squares[i], squares[i + 1], Piece.QUEEN);
+            assertNotEquals(Move.NONE, move);
+            p.makeMove(move);
+        }
+    }
+
+    private static void assertPerft(Position p, long... expected) {
+        for (int depth = 1; depth <= expected.length; depth++) {
+            assertEquals("depth " + depth, expected[depth - 1], MoveGenerator.perft(p, depth));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.btl_chess;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Đọc/ghi FEN chặt chẽ và dạng nén của Position.
+ */
+public class PositionTest {
+    private static final String START = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    private static final String[] VALID = {
+            START,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+            "rnbqkbnr/pppp1ppp/8/8/3Pp3/8/PPP1PPPP/RNBQKBNR b Kq d3 0 2",
+            "4k3/8/8/8/8/8/8/4K3 b - - 99 9999",
+    };
+
+    @Test
+    public void validFen_roundTrips() {
+        for (String fen : VALID) {
+            Position p = Position.fromFen(fen);
+            assertEquals(fen, p.toFen());
+            assertEquals(p.computeKey(), p.key());
+        }
+    }
+
+    @Test
+    public void startFen_matchesStartPosition() {
+        Position start = new Position();
+        start.setStartPosition();
+        Position parsed = Position.fromFen(START);
+        assertEquals(start.key(), parsed.key());
+        assertEquals(START, start.toFen());
+    }
+
+    // Khoảng trắng hai đầu được bỏ; thiếu cả hai trường số thì dùng 0 và 1
+    @Test
+    public void lenientParts_areAccepted() {
+        assertEquals(START, Position.fromFen("  " + START + "\n").toFen());
+        assertEquals(START, Position.fromFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq -").toFen());
+    }
+
+    // Đọc từ byte ASCII cho cùng kết quả và vị trí lỗi tính từ offset
+    @Test
+    public void byteBufferFen_matchesString() {
+        String padded = "xx" + VALID[1] + "yy";
+        ByteBuffer in = ByteBuffer.wrap(padded.getBytes(StandardCharsets.US_ASCII));
+        Position p = new Position();
+        p.setFen(in, 2, VALID[1].length());
+        assertEquals(VALID[1], p.toFen());
+        assertEquals(0, in.position());
+
+        ByteBuffer bad = ByteBuffer.wrap("xx8/8/8/8/8/8/8/8 w - - 0 1".getBytes(StandardCharsets.US_ASCII));
+        try {
+            p.setFen(bad, 2, bad.capacity() - 2);
+            fail("expected FenException");
+        } catch (FenException e) {
+            assertEquals(0, e.getIndex());
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(100);
+        Position.fromFen(VALID[1]).writeFen(out);
+        assertEquals(VALID[1], new String(out.array(), 0, out.position(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void invalidFen_reportsIndex() {
+        // Mỗi cặp: FEN sai và vị trí ký tự gây lỗi
+        Object[][] cases = {
+                {"rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 18},
+                {"rnbqkbnr/pppppppp/44/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 19},
+                {"rnbqkbnr/pppppppp/7/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 19},
+                {"rnbqkbnr/ppppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 17},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR/8 w KQkq - 0 1", 43},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w KQkq - 0 1", 34},
+                {"rnbqkbnx/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 7},
+                {"rnbqkbnP/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 7},
+                {"rnbqqbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 0},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x KQkq - 0 1", 44},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w  KQkq - 0 1", 46},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w QK - 0 1", 47},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KK - 0 1", 47},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBN1 w KQkq - 0 1", 49},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e3 0 1", 51},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e6 0 1", 51},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - x 1", 53},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 0", 55},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0", 54},
+                {"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w", 45},
+                {"", 0},
+        };
+        for (Object[] c : cases) {
+            String fen = (String) c[0];
+            try {
+                Position.fromFen(fen);
+                fail("accepted: " + fen);
+            } catch (FenException e) {
+                assertEquals(fen, (int) (Integer) c[1], e.getIndex());
+            }
+        }
+    }
+
+    // FEN lỗi để lại bàn cờ trống chứ không phải nửa thế cờ
+    @Test
+    public void invalidFen_leavesBoardEmpty() {
+        Position p = Position.fromFen(START);
+        try {
+            p.setFen("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - x 1");
+            fail("expected FenException");
+        } catch (FenException expected) {
+            // đúng như mong đợi
+        }
+        assertEquals(0L, p.occupied());
+    }
+
+    // Dạng nén giữ nguyên bàn cờ, bên đi, quyền nhập thành, ô bắt tốt qua đường và hai bộ đếm
+    @Test
+    public void compact_roundTrips() {
+        ByteBuffer buffer = ByteBuffer.allocate(Position.COMPACT_SIZE * VALID.length + 5);
+        buffer.position(5);
+        for (String fen : VALID) {
+            Position.fromFen(fen).writeCompact(buffer);
+        }
+        assertEquals(buffer.capacity(), buffer.position());
+        for (int i = 0; i < VALID.length; i++) {
+            Position p = new Position();
+            p.readCompact(buffer, 5 + i * Position.COMPACT_SIZE);
+            assertEquals(VALID[i], p.toFen());
+            assertEquals(Position.fromFen(VALID[i]).key(), p.key());
+        }
+        assertEquals(buffer.capacity(), buffer.position());
+    }
+
+    @Test
+    public void compact_rejectsCorruptData() {
+        ByteBuffer buffer = ByteBuffer.allocate(Position.COMPACT_SIZE);
+        Position.fromFen(START).writeCompact(buffer);
+        // Mã quân ngoài khoảng
+        buffer.put(0, (byte) 0xFF);
+        assertCompactRejected(buffer);
+        buffer.clear();
+        Position.fromFen(START).writeCompact(buffer);
+        // Bên đi không phải trắng hay đen
+        buffer.put(32, (byte) 3);
+        assertCompactRejected(buffer);
+    }
+
+    private static void assertCompactRejected(ByteBuffer buffer) {
+        try {
+            new Position().readCompact(buffer, 0);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(!(expected instanceof FenException));
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.btl_chess;
+
+import org.junit.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WireProtocolTest {
+    // Ghi lại các khung đã giải mã dưới dạng chuỗi để so sánh
+    private static final class Recorder implements WireProtocol.Handler {
+        final List<String> frames = new ArrayList<>();
+
+        @Override
+        public void onHello(int version, long session, int lastSeq) {
+            frames.add("HELLO " + version + " " + session + " " + lastSeq);
+        }
+
+        @Override
+        public void onMove(int seq, int move) {
+            frames.add("MOVE " + seq + " " + move);
+        }
+
+        @Override
+        public void onClock(long whiteMillis, long blackMillis) {
+            frames.add("CLOCK " + whiteMillis + " " + blackMillis);
+        }
+
+        @Override
+        public void onResign(int color) {
+            frames.add("RESIGN " + color);
+        }
+
+        @Override
+        public void onSync(int color, ByteBuffer buffer, int offset, int count) {
+            StringBuilder sb = new StringBuilder("SYNC " + color + " " + count);
+            for (int i = 0; i < count; i++) {
+                sb.append(' ').append(WireProtocol.syncMove(buffer, offset, i));
+            }
+            frames.add(sb.toString());
+        }
+
+        @Override
+        public void onAck(int ply) {
+            frames.add("ACK " + ply);
+        }
+
+        @Override
+        public void onError(int code, int ply) {
+            frames.add("ERROR " + code + " " + ply);
+        }
+
+        @Override
+        public void onSession(long session, int color) {
+            frames.add("SESSION " + session + " " + color);
+        }
+
+        @Override
+        public void onSnapshot(int seq, int color, ByteBuffer buffer, int offset) {
+            Position p = new Position();
+            p.readCompact(buffer, offset);
+            frames.add("SNAPSHOT " + seq + " " + color + " " + p.toFen());
+        }
+
+        @Override
+        public void onWatch(int version, int room) {
+            frames.add("WATCH " + version + " " + room);
+        }
+
+        @Override
+        public void onPing() {
+            frames.add("PING");
+        }
+    }
+
+    private static final String FEN = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    // Mỗi loại khung, ghi liền nhau trong một bộ đệm; trả về bộ đệm ở chế độ đọc
+    private static ByteBuffer allFrames() {
+        ByteBuffer out = ByteBuffer.allocate(1024);
+        WireProtocol.putHello(out);
+        WireProtocol.putResume(out, -2L, 65535);
+        WireProtocol.putMove(out, 1, Move.make(12, 28, Move.QUIET));
+        WireProtocol.putClock(out, 0xFFFFFFFFL, 300000);
+        WireProtocol.putResign(out, Piece.BLACK);
+        WireProtocol.putSync(out, Piece.WHITE, new int[]{Move.make(12, 28, Move.QUIET), Move.make(52, 36, Move.QUIET)}, 2);
+        WireProtocol.putAck(out, 7);
+        WireProtocol.putError(out, WireProtocol.ERR_ILLEGAL_MOVE, 3);
+        WireProtocol.putSession(out, 0x0123456789ABCDEFL, Piece.BLACK);
+        WireProtocol.putSnapshot(out, 9, WireProtocol.SPECTATOR, Position.fromFen(FEN));
+        WireProtocol.putWatch(out, 42);
+        WireProtocol.putPing(out);
+        out.flip();
+        return out;
+    }
+
+    private static final String[] EXPECTED = {
+            "HELLO " + WireProtocol.VERSION + " 0 0",
+            "HELLO " + WireProtocol.VERSION + " -2 65535",
+            "MOVE 1 " + Move.make(12, 28, Move.QUIET),
+            "CLOCK 4294967295 300000",
+            "RESIGN 1",
+            "SYNC 0 2 " + Move.make(12, 28, Move.QUIET) + " " + Move.make(52, 36, Move.QUIET),
+            "ACK 7",
+            "ERROR " + WireProtocol.ERR_ILLEGAL_MOVE + " 3",
+            "SESSION " + 0x0123456789ABCDEFL + " 1",
+            "SNAPSHOT 9 2 " + FEN,
+            "WATCH " + WireProtocol.VERSION + " 42",
+            "PING",
+    };
+
+    @Test
+    public void encodeDecode_everyFrameType() throws ProtocolException {
+        ByteBuffer in = allFrames();
+        Recorder r = new Recorder();
+        assertEquals(EXPECTED.length, WireProtocol.decode(in, r));
+        assertEquals(0, in.remaining());
+        assertEquals(Arrays.asList(EXPECTED), r.frames);
+    }
+
+    // Hằng *_SIZE khớp với số byte bộ mã hoá ghi ra
+    @Test
+    public void sizeConstants_matchEncoders() {
+        ByteBuffer out = ByteBuffer.allocate(256);
+        WireProtocol.putHello(out);
+        assertEquals(WireProtocol.HELLO_SIZE, out.position());
+        out.clear();
+        WireProtocol.putResume(out, 1, 1);
+        assertEquals(WireProtocol.RESUME_SIZE, out.position());
+        out.clear();
+        WireProtocol.putMove(out, 1, 1);
+        assertEquals(WireProtocol.MOVE_SIZE, out.position());
+        out.clear();
+        WireProtocol.putClock(out, 1, 1);
+        assertEquals(WireProtocol.CLOCK_SIZE, out.position());
+        out.clear();
+        WireProtocol.putResign(out, 0);
+        assertEquals(WireProtocol.RESIGN_SIZE, out.position());
+        out.clear();
+        WireProtocol.putSync(out, 0, new int[3], 3);
+        assertEquals(WireProtocol.syncSize(3), out.position());
+        out.clear();
+        WireProtocol.putAck(out, 1);
+        assertEquals(WireProtocol.ACK_SIZE, out.position());
+        out.clear();
+        WireProtocol.putError(out, 1, 1);
+        assertEquals(WireProtocol.ERROR_SIZE, out.position());
+        out.clear();
+        WireProtocol.putSession(out, 1, 0);
+        assertEquals(WireProtocol.SESSION_SIZE, out.position());
+        out.clear();
+        WireProtocol.putSnapshot(out, 1, 0, Position.fromFen(FEN));
+        assertEquals(WireProtocol.SNAPSHOT_SIZE, out.position());
+        out.clear();
+        WireProtocol.putWatch(out, 1);
+        assertEquals(WireProtocol.WATCH_SIZE, out.position());
+        out.clear();
+        WireProtocol.putPing(out);
+        assertEquals(WireProtocol.PING_SIZE, out.position());
+    }
+
+    // Phần dữ liệu ngắn hơn mức tối thiểu của loại khung là lỗi giao thức
+    @Test
+    public void truncatedPayload_isRejected() {
+        int[][] frames = {
+                {WireProtocol.HELLO, 0}, {WireProtocol.MOVE, 3}, {WireProtocol.CLOCK, 7},
+                {WireProtocol.RESIGN, 0}, {WireProtocol.SYNC, 2}, {WireProtocol.ACK, 1},
+                {WireProtocol.ERROR, 2}, {WireProtocol.SESSION, 8},
+                {WireProtocol.SNAPSHOT, 2 + Position.COMPACT_SIZE}, {WireProtocol.WATCH, 4},
+        };
+        for (int[] f : frames) {
+            ByteBuffer in = ByteBuffer.allocate(WireProtocol.HEADER_SIZE + f[1]);
+            in.putShort((short) f[1]).put((byte) f[0]);
+            in.position(0);
+            assertDecodeFails("type " + f[0], in);
+        }
+    }
+
+    // SYNC khai báo nhiều nước hơn phần dữ liệu chứa được
+    @Test
+    public void syncCountBeyondPayload_isRejected() {
+        ByteBuffer in = ByteBuffer.allocate(WireProtocol.HEADER_SIZE + 5);
+        in.putShort((short) 5).put((byte) WireProtocol.SYNC).put((byte) 0).putShort((short) 2).putShort((short) 1);
+        in.flip();
+        assertDecodeFails("sync", in);
+    }
+
+    @Test
+    public void oversizedFrame_isRejectedFromHeader() {
+        ByteBuffer in = ByteBuffer.allocate(WireProtocol.HEADER_SIZE);
+        in.putShort((short) (WireProtocol.MAX_PAYLOAD + 1)).put((byte) WireProtocol.MOVE);
+        in.flip();
+        // Bị từ chối ngay từ phần đầu, không chờ nhận đủ dữ liệu
+        assertDecodeFails("oversized", in);
+    }
+
+    @Test
+    public void maxPayload_isAccepted() throws ProtocolException {
+        ByteBuffer out = ByteBuffer.allocate(WireProtocol.syncSize(WireProtocol.MAX_SYNC_MOVES) + 1);
+        WireProtocol.putSync(out, 0, new int[WireProtocol.MAX_SYNC_MOVES], WireProtocol.MAX_SYNC_MOVES);
+        assertTrue(out.position() - WireProtocol.HEADER_SIZE <= WireProtocol.MAX_PAYLOAD);
+        out.flip();
+        Recorder r = new Recorder();
+        assertEquals(1, WireProtocol.decode(out, r));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void putSync_tooManyMoves_throws() {
+        int count = WireProtocol.MAX_SYNC_MOVES + 1;
+        WireProtocol.putSync(ByteBuffer.allocate(WireProtocol.syncSize(count)), 0, new int[count], count);
+    }
+
+    @Test
+    public void unknownFrameType_isSkipped() throws ProtocolException {
+        ByteBuffer in = ByteBuffer.allocate(64);
+        in.putShort((short) 5).put((byte) 200).put(new byte[5]);
+        WireProtocol.putAck(in, 3);
+        in.flip();
+        Recorder r = new Recorder();
+        assertEquals(2, WireProtocol.decode(in, r));
+        assertEquals(Collections.singletonList("ACK 3"), r.frames);
+        assertEquals(0, in.remaining());
+    }
+
+    // Phần dữ liệu dài hơn mức cần thiết (phiên bản mới thêm trường) được bỏ qua phần thừa
+    @Test
+    public void longerPayload_extraBytesSkipped() throws ProtocolException {
+        ByteBuffer in = ByteBuffer.allocate(64);
+        in.putShort((short) 6).put((byte) WireProtocol.ACK).putShort((short) 4).putInt(-1);
+        WireProtocol.putPing(in);
+        in.flip();
+        Recorder r = new Recorder();
+        WireProtocol.decode(in, r);
+        assertEquals(Arrays.asList("ACK 4", "PING"), r.frames);
+    }
+
+    // Khung chưa nhận đủ được giữ lại qua compact() và giải mã khi phần còn lại tới
+    @Test
+    public void partialFrame_survivesCompact() throws ProtocolException {
+        ByteBuffer frames = allFrames();
+        byte[] bytes = new byte[frames.remaining()];
+        frames.get(bytes);
+        int[] cuts = {1, WireProtocol.HEADER_SIZE, WireProtocol.HELLO_SIZE + 5, bytes.length - 2};
+        for (int cut : cuts) {
+            ByteBuffer in = ByteBuffer.allocate(512);
+            Recorder r = new Recorder();
+            in.put(bytes, 0, cut);
+            in.flip();
+            WireProtocol.decode(in, r);
+            int consumed = in.position();
+            assertTrue(consumed <= cut);
+            in.compact();
+            assertEquals(cut - consumed, in.position());
+            in.put(bytes, cut, bytes.length - cut);
+            in.flip();
+            WireProtocol.decode(in, r);
+            assertEquals("cut " + cut, Arrays.asList(EXPECTED), r.frames);
+            assertEquals(0, in.remaining());
+        }
+    }
+
+    // Dòng byte chia thành từng mảnh nhỏ tuỳ ý (như đọc từ socket) cho cùng kết quả
+    @Test
+    public void splitReads_decodeSameFrames() throws ProtocolException {
+        ByteBuffer frames = allFrames();
+        byte[] bytes = new byte[frames.remaining()];
+        frames.get(bytes);
+        for (int chunk = 1; chunk <= 7; chunk++) {
+            ByteBuffer in = ByteBuffer.allocate(128);
+            Recorder r = new Recorder();
+            int total = 0;
+            for (int at = 0; at < bytes.length; at += chunk) {
+                in.put(bytes, at, Math.min(chunk, bytes.length - at));
+                in.flip();
+                total += WireProtocol.decode(in, r);
+                in.compact();
+            }
+            assertEquals(0, in.position());
+            assertEquals(EXPECTED.length, total);
+            assertEquals("chunk " + chunk, Arrays.asList(EXPECTED), r.frames);
+        }
+    }
+
+    // Nhiều lần gửi dồn vào một lần đọc: mọi khung hoàn chỉnh được giải mã trong một lần gọi
+    @Test
+    public void coalescedFrames_decodeInOneCall() throws ProtocolException {
+        ByteBuffer in = ByteBuffer.allocate(256);
+        for (int seq = 1; seq <= 20; seq++) {
+            WireProtocol.putMove(in, seq, seq);
+        }
+        WireProtocol.putMove(in, 21, 21);
+        in.position(in.position() - 1);
+        in.flip();
+        Recorder r = new Recorder();
+        assertEquals(20, WireProtocol.decode(in, r));
+        assertEquals("MOVE 20 20", r.frames.get(19));
+        assertEquals(WireProtocol.MOVE_SIZE - 1, in.remaining());
+    }
+
+    private static void assertDecodeFails(String message, ByteBuffer in) {
+        try {
+            WireProtocol.decode(in, new Recorder());
+            fail(message + ": expected ProtocolException");
+        } catch (ProtocolException expected) {
+            // đúng như mong đợi
+        }
+    }
+}
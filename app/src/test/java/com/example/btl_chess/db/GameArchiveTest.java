@@ -0,0 +1,243 @@
+package com.example.btl_chess.db;
+
+import com.example.btl_chess.MoveGenerator;
+import com.example.btl_chess.Position;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ghi/đọc GameArchive và tra cứu qua PositionIndex, so với kết quả quét thẳng các ván.
+ */
+public class GameArchiveTest {
+    // Bên đen chỉ có một nước hợp lệ: nước đó được lưu bằng 0 bit
+    private static final String FORCED = "Q3k1Q1/8/6N1/1P1B3P/1pn5/1P2N3/8/2K5 b - - 5 88";
+    private static final String SETUP = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    private static final String[] RESULTS = {"1-0", "0-1", "1/2-1/2", PgnGame.UNKNOWN_RESULT};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(11);
+    private final int[] moves = new int[MoveGenerator.MAX_MOVES];
+
+    // Ván ngẫu nhiên plies nửa nước (ít hơn nếu hết nước) từ start
+    private PgnGame randomGame(Position start, int plies) {
+        PgnGame game = new PgnGame(start);
+        Position p = start.copy();
+        for (int i = 0; i < plies; i++) {
+            int count = MoveGenerator.generateLegal(p, moves);
+            if (count == 0) break;
+            int move = moves[random.nextInt(count)];
+            p.makeMove(move);
+            game.addMove(move);
+        }
+        game.setResult(RESULTS[random.nextInt(RESULTS.length)]);
+        return game;
+    }
+
+    private List<PgnGame> sampleGames() {
+        Position standard = new Position();
+        standard.setStartPosition();
+        Position forced = Position.fromFen(FORCED);
+        assertEquals(1, MoveGenerator.generateLegal(forced, moves));
+        List<PgnGame> games = new ArrayList<>();
+        // Ván không có nước nào, ván chỉ một nước 0 bit, ván bắt đầu bằng nước 0 bit
+        games.add(randomGame(standard, 0));
+        games.add(randomGame(forced, 1));
+        games.add(randomGame(forced, 30));
+        for (int i = 0; i < 40; i++) {
+            Position start = i % 4 == 0 ? Position.fromFen(SETUP) : standard;
+            PgnGame game = randomGame(start, random.nextInt(120));
+            game.setTag("Event", "Game " + i);
+            game.setTag("Annotator", "Người chơi " + i);
+            games.add(game);
+        }
+        // Thế chuẩn nhưng số nước khác: vẫn phải lưu thế bắt đầu riêng
+        Position moved = new Position();
+        moved.setStartPosition();
+        moved.setFullmoveNumber(5);
+        games.add(randomGame(moved, 10));
+        return games;
+    }
+
+    private static void assertSameGame(PgnGame expected, PgnGame actual) {
+        assertEquals(expected.getStartPosition().toFen(), actual.getStartPosition().toFen());
+        assertEquals(expected.getResult(), actual.getResult());
+        assertEquals(expected.getTags(), actual.getTags());
+        assertEquals(expected.getMoveCount(), actual.getMoveCount());
+        for (int i = 0; i < expected.getMoveCount(); i++) {
+            assertEquals("move " + i, expected.getMove(i), actual.getMove(i));
+        }
+    }
+
+    @Test
+    public void appendRead_roundTrip() throws IOException {
+        File path = folder.newFile("games.bin");
+        List<PgnGame> games = sampleGames();
+        long[] offsets = new long[games.size()];
+        try (GameArchive archive = GameArchive.open(path)) {
+            assertEquals(archive.firstOffset(), archive.size());
+            for (int i = 0; i < games.size(); i++) {
+                offsets[i] = archive.append(games.get(i));
+            }
+            for (int i = 0; i < games.size(); i++) {
+                assertSameGame(games.get(i), archive.read(offsets[i]));
+            }
+        }
+        // Mở lại từ tệp, đọc theo thứ tự ngược để cửa sổ đọc phải nạp lại
+        try (GameArchive archive = GameArchive.open(path)) {
+            for (int i = games.size() - 1; i >= 0; i--) {
+                assertSameGame(games.get(i), archive.read(offsets[i]));
+            }
+        }
+    }
+
+    // Một ván 0 bit nước đi chỉ có phần đầu bản ghi và thế bắt đầu
+    @Test
+    public void forcedMove_takesNoBits() throws IOException {
+        Position forced = Position.fromFen(FORCED);
+        PgnGame none = new PgnGame(forced);
+        PgnGame one = randomGame(forced, 1);
+        try (GameArchive archive = GameArchive.open(folder.newFile("forced.bin"))) {
+            long a = archive.append(none);
+            long b = archive.append(one);
+            assertEquals(b - a, archive.size() - b);
+            assertSameGame(one, archive.read(b));
+        }
+    }
+
+    @Test
+    public void nextOffset_visitsEveryGameInOrder() throws IOException {
+        List<PgnGame> games = sampleGames();
+        try (GameArchive archive = GameArchive.open(folder.newFile("games.bin"))) {
+            long[] offsets = new long[games.size()];
+            for (int i = 0; i < games.size(); i++) {
+                offsets[i] = archive.append(games.get(i));
+            }
+            int i = 0;
+            for (long offset = archive.firstOffset(); offset < archive.size(); offset = archive.nextOffset(offset)) {
+                assertEquals(offsets[i], offset);
+                assertSameGame(games.get(i), archive.read(offset));
+                i++;
+            }
+            assertEquals(games.size(), i);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void append_illegalMove_throws() throws IOException {
+        Position start = new Position();
+        start.setStartPosition();
+        PgnGame game = new PgnGame(start);
+        game.addMove(MoveGenerator.findLegalMove(start, 12, 28, 1));
+        // Trắng đi hai lần liền
+        game.addMove(MoveGenerator.findLegalMove(start, 11, 27, 1));
+        try (GameArchive archive = GameArchive.open(folder.newFile("bad.bin"))) {
+            archive.append(game);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void open_rejectsOtherFiles() throws IOException {
+        File path = folder.newFile("other.bin");
+        try (FileOutputStream out = new FileOutputStream(path)) {
+            out.write(new byte[]{'P', 'K', 3, 4, 0, 0, 0, 0});
+        }
+        GameArchive.open(path).close();
+    }
+
+    // Kết quả tra qua chỉ mục (kể cả các ván ghi sau khi dựng) khớp với quét thẳng từng ván
+    @Test
+    public void gamesReaching_matchesBruteForce() throws IOException {
+        int maxPly = 12;
+        List<PgnGame> games = sampleGames();
+        List<Long> offsets = new ArrayList<>();
+        File indexPath = folder.newFile("games.idx");
+        try (GameArchive archive = GameArchive.open(folder.newFile("games.bin"))) {
+            int indexed = games.size() / 2;
+            for (int i = 0; i < indexed; i++) {
+                offsets.add(archive.append(games.get(i)));
+            }
+            PositionIndex.build(archive, indexPath, maxPly);
+            for (int i = indexed; i < games.size(); i++) {
+                offsets.add(archive.append(games.get(i)));
+            }
+
+            try (PositionIndex index = PositionIndex.open(indexPath)) {
+                assertEquals(maxPly, index.getMaxPly());
+                assertEquals(offsets.get(indexed).longValue(), index.getArchiveLength());
+                // Các thế cờ của mọi ván, và một khoá không có trong ván nào
+                List<Long> keys = new ArrayList<>();
+                for (PgnGame game : games) {
+                    for (long key : keysOf(game, maxPly + 4)) {
+                        keys.add(key);
+                    }
+                }
+                keys.add(0x123456789L);
+                int hits = 0;
+                for (long key : keys) {
+                    long[] expected = bruteForce(games, offsets, key, maxPly);
+                    assertArrayEquals(expected, archive.gamesReaching(index, key));
+                    long[] indexedOnly = Arrays.copyOf(expected, count(expected, index.getArchiveLength()));
+                    assertArrayEquals(indexedOnly, index.find(key));
+                    assertEquals(indexedOnly.length, index.count(key));
+                    hits += expected.length;
+                }
+                assertTrue(hits > 0);
+                // Không có chỉ mục: quét toàn bộ, không giới hạn số nửa nước
+                long deep = keysOf(games.get(5), 60)[60];
+                assertArrayEquals(bruteForce(games, offsets, deep, GameArchive.MAX_PLIES),
+                        archive.gamesReaching(null, deep));
+            }
+        }
+    }
+
+    // Khoá các thế cờ từ thế bắt đầu tới tối đa maxPly nửa nước; lặp lại nước cuối nếu ván ngắn hơn
+    private static long[] keysOf(PgnGame game, int maxPly) {
+        long[] keys = new long[maxPly + 1];
+        Position p = game.getStartPosition();
+        keys[0] = p.key();
+        for (int i = 1; i <= maxPly; i++) {
+            if (i <= game.getMoveCount()) {
+                p.makeMove(game.getMove(i - 1));
+            }
+            keys[i] = p.key();
+        }
+        return keys;
+    }
+
+    private static long[] bruteForce(List<PgnGame> games, List<Long> offsets, long key, int maxPly) {
+        long[] found = new long[games.size()];
+        int n = 0;
+        for (int g = 0; g < games.size(); g++) {
+            PgnGame game = games.get(g);
+            for (long k : keysOf(game, Math.min(maxPly, game.getMoveCount()))) {
+                if (k == key) {
+                    found[n++] = offsets.get(g);
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    private static int count(long[] offsets, long below) {
+        int n = 0;
+        while (n < offsets.length && offsets[n] < below) n++;
+        return n;
+    }
+}
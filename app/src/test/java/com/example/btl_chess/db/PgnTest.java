@@ -0,0 +1,166 @@
+package com.example.btl_chess.db;
+
+import com.example.btl_chess.MoveGenerator;
+import com.example.btl_chess.Position;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PgnTest {
+    private static PgnReader reader(String pgn) {
+        return new PgnReader(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Ván ngẫu nhiên tối đa plies nửa nước từ start
+    private static PgnGame randomGame(Position start, int plies, Random random) {
+        PgnGame game = new PgnGame(start);
+        Position p = start.copy();
+        int[] moves = new int[MoveGenerator.MAX_MOVES];
+        for (int i = 0; i < plies; i++) {
+            int count = MoveGenerator.generateLegal(p, moves);
+            if (count == 0) break;
+            int move = moves[random.nextInt(count)];
+            p.makeMove(move);
+            game.addMove(move);
+        }
+        return game;
+    }
+
+    private static void assertSameGame(PgnGame expected, PgnGame actual) {
+        assertEquals(expected.getStartPosition().toFen(), actual.getStartPosition().toFen());
+        assertEquals(expected.getResult(), actual.getResult());
+        assertEquals(expected.getMoveCount(), actual.getMoveCount());
+        for (int i = 0; i < expected.getMoveCount(); i++) {
+            assertEquals("move " + i, expected.getMove(i), actual.getMove(i));
+        }
+    }
+
+    // Ghi rồi đọc lại cho đúng các ván ban đầu, kể cả ván bắt đầu từ FEN với bên đen đi trước
+    @Test
+    public void writeRead_roundTrip() throws IOException {
+        Random random = new Random(7);
+        Position standard = new Position();
+        standard.setStartPosition();
+        Position setUp = Position.fromFen("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b KQkq - 3 17");
+        PgnGame[] games = new PgnGame[20];
+        for (int i = 0; i < games.length; i++) {
+            games[i] = randomGame(i % 2 == 0 ? standard : setUp, 1 + random.nextInt(150), random);
+            games[i].setResult(i % 3 == 0 ? "1-0" : i % 3 == 1 ? "1/2-1/2" : PgnGame.UNKNOWN_RESULT);
+            games[i].setTag("White", "Player \"" + i + "\" \\ test");
+            games[i].setTag("ECO", "C" + i);
+        }
+
+        StringWriter text = new StringWriter();
+        try (PgnWriter writer = new PgnWriter(text)) {
+            for (PgnGame game : games) {
+                writer.write(game);
+            }
+        }
+        for (String line : text.toString().split("\n")) {
+            assertTrue(line, line.length() <= 79);
+        }
+
+        try (PgnReader reader = reader(text.toString())) {
+            for (PgnGame expected : games) {
+                PgnGame actual = reader.next();
+                assertSameGame(expected, actual);
+                assertEquals(expected.getTag("White"), actual.getTag("White"));
+                assertEquals(expected.getTag("ECO"), actual.getTag("ECO"));
+                assertEquals("?", actual.getTag("Event"));
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    // Chú thích, biến thể, NAG, số thứ tự dính liền và ký hiệu kiểu cũ đều được chấp nhận
+    @Test
+    public void read_annotatedGame() throws IOException {
+        String pgn = "% dòng thoát\n"
+                + "[Event \"Test\"]\n[Result \"1-0\"]\n\n"
+                + "1.e4 {mở đầu} e5 2. Nf3 $1 (2. f4 exf4 (2... d5)) 2... Nc6 ; chú thích\n"
+                + "3.Bc4!? Nf6?? 4.Ng5 d5 5.exd5 Nxd5 6.Nxf7 Kxf7 7.Qf3+ Ke6 8.Nc3 1-0\n";
+        try (PgnReader reader = reader(pgn)) {
+            PgnGame game = reader.next();
+            assertEquals("Test", game.getTag("Event"));
+            assertEquals("1-0", game.getResult());
+            assertEquals(15, game.getMoveCount());
+            assertEquals("r1bq1b1r/ppp3pp/2n1k3/3np3/2B5/2N2Q2/PPPP1PPP/R1B1K2R b KQ - 3 8",
+                    game.getFinalPosition().toFen());
+            assertNull(reader.next());
+        }
+    }
+
+    // Ván thiếu kết quả ở cuối lấy kết quả từ tag và không nuốt mất ván sau
+    @Test
+    public void read_missingResultToken() throws IOException {
+        String pgn = "[Result \"0-1\"]\n\n1. f3 e5 2. g4 Qh4#\n\n"
+                + "[Result \"*\"]\n\n1. d4 *\n";
+        try (PgnReader reader = reader(pgn)) {
+            PgnGame first = reader.next();
+            assertEquals("0-1", first.getResult());
+            assertEquals(4, first.getMoveCount());
+            PgnGame second = reader.next();
+            assertEquals(1, second.getMoveCount());
+            assertNull(reader.next());
+        }
+    }
+
+    // Ván lỗi ném PgnException kèm số dòng, các ván sau vẫn đọc được
+    @Test
+    public void read_recoversFromMalformedGames() throws IOException {
+        String pgn = "[Event \"ok 1\"]\n\n1. e4 e5 1-0\n\n"
+                + "[Event \"illegal\"]\n\n1. e4 e5\n2. Ke3 Nc6 1-0\n\n"
+                + "[Event \"bad fen\"]\n[FEN \"8/8/8/8 w - - 0 1\"]\n\n1. e4 *\n\n"
+                + "[Event \"unbalanced\"]\n\n1. e4 ) e5 *\n\n"
+                + "[Event \"bad tag\n\n1. d4 *\n\n"
+                + "[Event \"broken\n[Site \"x\"]\n[White \"A\"]\n\n1. e4 e5 1-0\n\n"
+                + "[Event \"unterminated variation\"]\n\n1. e4 (1. d4 d5\n\n"
+                + "[Event \"ok 2\"]\n\n1. d4 d5 1/2-1/2\n";
+        try (PgnReader reader = reader(pgn)) {
+            assertEquals("ok 1", reader.next().getTag("Event"));
+            assertError(reader, 8);
+            // Tag FEN được kiểm tra khi phần tag đã đọc xong
+            assertError(reader, 13);
+            assertError(reader, 17);
+            assertError(reader, 19);
+            // Các tag sau tag lỗi thuộc cùng ván, không tạo thành ván mới
+            assertError(reader, 23);
+            // Biến thể chưa đóng chỉ bị phát hiện khi gặp tag của ván sau
+            assertError(reader, 33);
+            PgnGame last = reader.next();
+            assertEquals("ok 2", last.getTag("Event"));
+            assertEquals(2, last.getMoveCount());
+            assertEquals("1/2-1/2", last.getResult());
+            assertNull(reader.next());
+        }
+    }
+
+    // Nước mơ hồ (hai mã cùng tới d2) bị từ chối thay vì đoán
+    @Test
+    public void read_ambiguousMoveRejected() throws IOException {
+        String pgn = "[SetUp \"1\"]\n[FEN \"4k3/8/8/8/8/5N2/8/1N2K3 w - - 0 1\"]\n\n1. Nd2 *\n";
+        try (PgnReader reader = reader(pgn)) {
+            assertError(reader, 4);
+            assertNull(reader.next());
+        }
+    }
+
+    private static void assertError(PgnReader reader, long line) throws IOException {
+        try {
+            reader.next();
+            fail("expected PgnException at line " + line);
+        } catch (PgnException e) {
+            assertEquals(e.getMessage(), line, e.getLine());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.btl_chess.db;
+
+import com.example.btl_chess.Move;
+import com.example.btl_chess.Position;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SanTest {
+    // Ghi SAN của nước đọc từ san rồi so với chuỗi mong đợi; san cũng phải đọc lại đúng nước đó
+    private static void assertSan(String fen, String san, String expected) {
+        Position p = Position.fromFen(fen);
+        int move = San.parse(p, san);
+        assertEquals(san, true, move != Move.NONE);
+        assertEquals(expected, San.toSan(p, move));
+        assertEquals(move, San.parse(p, expected));
+        // toSan thử nước rồi hoàn tác
+        assertEquals(fen, p.toFen());
+    }
+
+    private static void assertRejected(String fen, String san) {
+        assertEquals(san, Move.NONE, San.parse(Position.fromFen(fen), san));
+    }
+
+    @Test
+    public void pieceAndPawnMoves() {
+        String start = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+        assertSan(start, "e4", "e4");
+        assertSan(start, "e3", "e3");
+        assertSan(start, "Nf3", "Nf3");
+        assertRejected(start, "e5");
+        assertRejected(start, "Ke2");
+        assertRejected(start, "Nd2");
+        assertRejected(start, "");
+    }
+
+    @Test
+    public void captures() {
+        String fen = "rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2";
+        assertSan(fen, "exd5", "exd5");
+        assertSan(fen, "Bb5+", "Bb5+");
+        // Bắt tốt qua đường
+        assertSan("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3", "exf6", "exf6");
+    }
+
+    @Test
+    public void disambiguation() {
+        // Hai mã cùng tới d2: phân biệt bằng cột
+        String files = "4k3/8/8/8/8/5N2/8/1N2K3 w - - 0 1";
+        assertSan(files, "Nbd2", "Nbd2");
+        assertRejected(files, "Nd2");
+        // Hai xe cùng cột: phân biệt bằng hàng
+        String ranks = "4k3/R7/8/8/8/8/8/R3K3 w - - 0 1";
+        assertSan(ranks, "R1a4", "R1a4");
+        assertSan(ranks, "R7a4", "R7a4");
+        // Ba hậu: cần cả ô khi có đối thủ cùng cột và cùng hàng
+        String squares = "8/8/6k1/8/Q6Q/8/8/Q3K3 w - - 0 1";
+        assertSan(squares, "Qa4d4", "Qa4d4");
+        assertSan(squares, "Qh4d4", "Qhd4");
+        assertSan(squares, "Qa1d4", "Q1d4");
+        // Quân bị ghim không tính là ứng viên nên không cần phân biệt
+        String pinned = "4k3/8/8/8/1b6/8/3N4/4K1N1 w - - 0 1";
+        assertSan(pinned, "Nf3", "Nf3");
+        assertSan(pinned, "Ngf3", "Nf3");
+    }
+
+    @Test
+    public void promotion() {
+        String fen = "1n2k3/P7/8/8/8/8/8/4K3 w - - 0 1";
+        // Mã ở b8 chặn đường chiếu của quân mới phong
+        assertSan(fen, "a8=Q", "a8=Q");
+        assertSan(fen, "a8=N", "a8=N");
+        assertSan(fen, "a8R", "a8=R");
+        assertSan(fen, "axb8=B", "axb8=B");
+        assertSan(fen, "axb8=Q+", "axb8=Q+");
+        assertRejected(fen, "a8");
+        assertRejected(fen, "a8=K");
+        assertRejected("4k3/8/8/8/8/8/P7/4K3 w - - 0 1", "a3=Q");
+    }
+
+    @Test
+    public void castling() {
+        String fen = "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1";
+        assertSan(fen, "O-O", "O-O");
+        assertSan(fen, "O-O-O", "O-O-O");
+        assertSan(fen, "0-0", "O-O");
+        assertSan("r3k2r/8/8/8/8/8/8/R3K2R b KQkq - 0 1", "O-O-O", "O-O-O");
+        // Không còn quyền, hoặc ô vua đi qua bị tấn công
+        assertRejected("r3k2r/8/8/8/8/8/8/R3K2R w Qkq - 0 1", "O-O");
+        assertRejected("r3k2r/8/8/8/8/8/5r2/R3K2R w KQkq - 0 1", "O-O");
+        assertRejected(fen, "O-O-O-O");
+    }
+
+    @Test
+    public void checkAndMateSuffixes() {
+        // Hậu chiếu hết kiểu "nước đi của học trò"
+        String mate = "r1bqkbnr/pppp1ppp/2n5/4p3/2B1P3/5Q2/PPPP1PPP/RNB1K1NR w KQkq - 2 3";
+        assertSan(mate, "Qxf7", "Qxf7#");
+        assertSan(mate, "Qxf7#", "Qxf7#");
+        assertSan(mate, "Bxf7+", "Bxf7+");
+        // Chú thích ở cuối bị bỏ qua
+        assertSan(mate, "Qxf7#!?", "Qxf7#");
+        // Nhập thành chiếu
+        assertSan("5k2/8/8/8/8/8/8/4K2R w K - 0 1", "O-O", "O-O+");
+    }
+}
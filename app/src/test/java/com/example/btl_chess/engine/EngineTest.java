@@ -0,0 +1,132 @@
+package com.example.btl_chess.engine;
+
+import com.example.btl_chess.Move;
+import com.example.btl_chess.MoveGenerator;
+import com.example.btl_chess.Piece;
+import com.example.btl_chess.Position;
+import com.example.btl_chess.db.OpeningBook;
+import com.example.btl_chess.db.PgnReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EngineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // stop() gọi sau khi lấy token nhưng trước khi search bắt đầu không được bị mất
+    @Test(timeout = 2000)
+    public void stopBeforeSearch_isNotLost() {
+        Engine engine = new Engine(1);
+        Position p = new Position();
+        p.setStartPosition();
+        int token = engine.stopToken();
+        engine.stop();
+        SearchResult result = engine.search(p, 60_000, Engine.MAX_DEPTH, token);
+        assertNotEquals(Move.NONE, result.getBestMove());
+        assertTrue(result.getDepth() <= 1);
+        engine.shutdown();
+    }
+
+    // Token mới lấy sau stop() thì tìm kiếm chạy bình thường
+    @Test(timeout = 10000)
+    public void freshToken_searches() {
+        Engine engine = new Engine(1);
+        Position p = new Position();
+        p.setStartPosition();
+        engine.stop();
+        SearchResult result = engine.search(p, 5_000, 3, engine.stopToken());
+        assertTrue(result.getDepth() == 3);
+        engine.shutdown();
+    }
+
+    // Thế cờ có trong sách: trả về nước trong sách, được đánh dấu và không tìm kiếm
+    @Test(timeout = 10000)
+    public void bookMove_isMarked() throws IOException {
+        String pgn = "[Result \"1-0\"]\n\n1. e4 e5 1-0\n\n[Result \"1-0\"]\n\n1. e4 c5 1-0\n";
+        File path = folder.newFile("book.bin");
+        try (PgnReader reader = new PgnReader(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.US_ASCII)))) {
+            OpeningBook.build(reader, path, 4, 1);
+        }
+        Engine engine = new Engine(1);
+        try (OpeningBook book = OpeningBook.open(path)) {
+            engine.setBook(book);
+            Position p = new Position();
+            p.setStartPosition();
+            SearchResult result = engine.search(p, 5_000, 3);
+            assertTrue(result.isBookMove());
+            assertEquals("e2e4", Move.toUci(result.getBestMove()));
+            assertEquals(0, result.getNodes());
+
+            // Ra khỏi sách thì tìm kiếm bình thường
+            p.makeMove(result.getBestMove());
+            p.makeMove(MoveGenerator.findLegalMove(p, 51, 43, Piece.QUEEN));
+            SearchResult searched = engine.search(p, 5_000, 2);
+            assertFalse(searched.isBookMove());
+            assertEquals(2, searched.getDepth());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    // Hai luồng tìm ra cùng điểm chiếu hết như một luồng, nước đi hợp lệ, số nút tách theo từng luồng
+    @Test(timeout = 30000)
+    public void helperThreads_findSameMate() {
+        // Chiếu hết sau 2 nước: 1. Kb6 Kb8 2. Rh8#
+        Position p = Position.fromFen("k7/8/2K5/8/8/8/8/7R w - - 0 1");
+        Engine single = new Engine(1);
+        Engine multi = new Engine(1, 2);
+        try {
+            SearchResult expected = single.search(p, 20_000, 6);
+            SearchResult result = multi.search(p, 20_000, 6);
+            assertTrue(expected.isMate());
+            assertTrue(result.isMate());
+            assertEquals(expected.getScore(), result.getScore());
+            assertNotEquals(Move.NONE, MoveGenerator.findLegalMove(p, Move.from(result.getBestMove()),
+                    Move.to(result.getBestMove()), Piece.QUEEN));
+
+            long[] threadNodes = result.getThreadNodes();
+            assertEquals(2, threadNodes.length);
+            assertEquals(result.getNodes(), threadNodes[0] + threadNodes[1]);
+        } finally {
+            single.shutdown();
+            multi.shutdown();
+        }
+    }
+
+    // stop() dừng cả luồng chính lẫn luồng phụ: search trả về sớm và engine dùng lại được
+    @Test(timeout = 10000)
+    public void stop_endsHelperThreads() throws Exception {
+        final Engine engine = new Engine(1, 2);
+        final Position p = new Position();
+        p.setStartPosition();
+        final SearchResult[] result = new SearchResult[1];
+        Thread search = new Thread(() -> result[0] = engine.search(p, 60_000, Engine.MAX_DEPTH));
+        try {
+            search.start();
+            Thread.sleep(200);
+            engine.stop();
+            // search() chỉ trả về sau khi đã chờ xong mọi luồng phụ
+            search.join(5_000);
+            assertFalse(search.isAlive());
+            assertNotEquals(Move.NONE, result[0].getBestMove());
+            assertEquals(2, result[0].getThreadNodes().length);
+
+            assertEquals(3, engine.search(p, 5_000, 3).getDepth());
+        } finally {
+            engine.stop();
+            engine.shutdown();
+        }
+    }
+}
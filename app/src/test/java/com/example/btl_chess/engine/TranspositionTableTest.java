@@ -0,0 +1,87 @@
+package com.example.btl_chess.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TranspositionTableTest {
+    private static final long KEY = 0x9E3779B97F4A7C15L;
+
+    // Khoá khác KEY nhưng cùng nhóm: chỉ số nhóm lấy từ các bit thấp
+    private static long sameBucket(long key, int n) {
+        return key ^ ((long) n << 48);
+    }
+
+    // Ghi rồi đọc lại đủ nước đi, điểm âm, độ sâu và loại cận
+    @Test
+    public void storeProbe_roundTrip() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(KEY, 0x1234, -250, 7, TranspositionTable.BOUND_LOWER);
+        long data = table.probe(KEY);
+        assertNotEquals(0L, data);
+        assertEquals(0x1234, TranspositionTable.move(data));
+        assertEquals(-250, TranspositionTable.score(data));
+        assertEquals(7, TranspositionTable.depth(data));
+        assertEquals(TranspositionTable.BOUND_LOWER, TranspositionTable.bound(data));
+        assertEquals(1, table.getHits());
+
+        // Cùng thế cờ mà không có nước đi thì giữ nước đã lưu
+        table.store(KEY, 0, 10, 8, TranspositionTable.BOUND_UPPER);
+        data = table.probe(KEY);
+        assertEquals(0x1234, TranspositionTable.move(data));
+        assertEquals(10, TranspositionTable.score(data));
+    }
+
+    // Điểm chiếu hết hai phía vẫn nguyên dấu và giá trị trong trường 16 bit
+    @Test
+    public void storeProbe_mateScores() {
+        TranspositionTable table = new TranspositionTable(1);
+        long other = KEY + 1;
+        table.store(KEY, 1, Searcher.MATE - 3, 5, TranspositionTable.BOUND_EXACT);
+        table.store(other, 2, -Searcher.MATE + 4, 5, TranspositionTable.BOUND_EXACT);
+        assertEquals(Searcher.MATE - 3, TranspositionTable.score(table.probe(KEY)));
+        assertEquals(-Searcher.MATE + 4, TranspositionTable.score(table.probe(other)));
+    }
+
+    // Khoá khác cùng nhóm không được trả về mục của KEY
+    @Test
+    public void probe_collisionInBucketMisses() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(KEY, 1, 0, 4, TranspositionTable.BOUND_EXACT);
+        assertEquals(0L, table.probe(sameBucket(KEY, 1)));
+        assertEquals(0L, table.probe(0L));
+        assertNotEquals(0L, table.probe(KEY));
+    }
+
+    // Mục sau luôn bị thay; mục sâu chỉ bị thay bởi kết quả nông hơn khi nó thuộc lần tìm kiếm trước
+    @Test
+    public void store_replacesOlderGenerationFirst() {
+        TranspositionTable table = new TranspositionTable(1);
+        long deep = KEY;
+        long a = sameBucket(KEY, 1);
+        long b = sameBucket(KEY, 2);
+        long c = sameBucket(KEY, 3);
+
+        table.store(deep, 1, 0, 10, TranspositionTable.BOUND_EXACT);
+        table.store(a, 2, 0, 2, TranspositionTable.BOUND_EXACT);
+        table.store(b, 3, 0, 1, TranspositionTable.BOUND_EXACT);
+        assertNotEquals(0L, table.probe(deep));
+        assertEquals(0L, table.probe(a));
+        assertNotEquals(0L, table.probe(b));
+
+        table.newSearch();
+        table.store(c, 4, 0, 1, TranspositionTable.BOUND_EXACT);
+        assertEquals(0L, table.probe(deep));
+        assertNotEquals(0L, table.probe(b));
+        assertEquals(4, TranspositionTable.move(table.probe(c)));
+    }
+
+    @Test
+    public void clear_dropsEntries() {
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(KEY, 1, 0, 4, TranspositionTable.BOUND_EXACT);
+        table.clear();
+        assertEquals(0L, table.probe(KEY));
+    }
+}